@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析合并后的大配置文件：{@link DescriptorParser}对比原来的解析{@link LegacyDescriptorParser}。
+ * <p/>
+ * 用<code>-prof gc</code>运行可以对比每次解析的内存分配：
+ * <pre>java -jar target/benchmarks.jar DescriptorParserBenchmark -prof gc</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorParserBenchmark {
+    @Param({"100", "5000"})
+    int lines;
+
+    private String content;
+
+    @Setup
+    public void setUp() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("# merged extension config\n\n");
+        for (int i = 0; i < lines; i++) {
+            switch (i % 4) {
+                case 0:
+                    buf.append("impl").append(i).append("=com.alibaba.demo.cooma.impl.Impl").append(i).append('\n');
+                    break;
+                case 1:
+                    buf.append("  impl").append(i).append(" , alias").append(i)
+                            .append(" = com.alibaba.demo.cooma.impl.Impl").append(i)
+                            .append(" ( order=").append(i).append(", isProvider, group = rpc )  # comment\n");
+                    break;
+                case 2:
+                    buf.append("+wrapper").append(i).append("=com.alibaba.demo.cooma.impl.Wrapper").append(i).append("\r\n");
+                    break;
+                default:
+                    buf.append("# impl").append(i).append("=com.alibaba.demo.cooma.impl.Disabled\n");
+            }
+        }
+        content = buf.toString();
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) throws IOException {
+        DescriptorParser parser = new DescriptorParser(new StringReader(content));
+        while (parser.nextLine()) {
+            blackhole.consume(parser.parse());
+        }
+    }
+
+    @Benchmark
+    public void singlePassWithLine(Blackhole blackhole) throws IOException {
+        DescriptorParser parser = new DescriptorParser(new StringReader(content));
+        while (parser.nextLine()) {
+            blackhole.consume(parser.parse());
+            blackhole.consume(parser.getLine());
+        }
+    }
+
+    @Benchmark
+    public Object legacy() throws IOException {
+        return LegacyDescriptorParser.parse(new StringReader(content));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 0.4.1之前{@link ExtensionLoader}中的配置文件解析，作为{@link DescriptorParser}的对比基准。
+ */
+final class LegacyDescriptorParser {
+    private static final Pattern NAME_SEPARATOR = Pattern.compile("\\s*,+\\s*");
+
+    static List<ExtensionDefinition> parse(Reader in) throws IOException {
+        List<ExtensionDefinition> definitions = new ArrayList<ExtensionDefinition>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String config = line;
+
+            // delete comments
+            final int ci = config.indexOf('#');
+            if (ci >= 0) config = config.substring(0, ci);
+            config = config.trim();
+            if (config.length() == 0) continue;
+
+            definitions.add(parseDefinition(config));
+        }
+        return definitions;
+    }
+
+    private static ExtensionDefinition parseDefinition(String config) {
+        String name = null;
+        String body = null;
+        String attribute = null;
+        int i = config.indexOf('=');
+        if (i > 0) {
+            name = config.substring(0, i).trim();
+            body = config.substring(i + 1).trim();
+        }
+        if (name == null || name.length() == 0) {
+            throw new IllegalStateException(
+                    "missing extension name, config value: " + config);
+        }
+        int j = config.indexOf("(", i);
+        if (j > 0) {
+            if (config.charAt(config.length() - 1) != ')') {
+                throw new IllegalStateException(
+                        "missing ')' of extension attribute!");
+            }
+            body = config.substring(i + 1, j).trim();
+            attribute = config.substring(j + 1, config.length() - 1);
+        }
+
+        ExtensionDefinition.Kind kind = ExtensionDefinition.Kind.EXTENSION;
+        if (name.startsWith("*")) {
+            kind = ExtensionDefinition.Kind.ADAPTIVE;
+            name = name.substring(1);
+        } else if (name.startsWith("+")) {
+            kind = ExtensionDefinition.Kind.WRAPPER;
+            name = name.substring(1);
+        }
+        return new ExtensionDefinition(kind, NAME_SEPARATOR.split(name), body, parseExtAttribute(attribute));
+    }
+
+    private static Map<String, String> parseExtAttribute(String attribute) {
+        Map<String, String> ret = new HashMap<String, String>();
+        if (attribute == null || attribute.length() == 0) return ret;
+
+        String[] parts = attribute.split(",");
+        for (String part : parts) {
+            part = part.trim();
+            int idx = part.indexOf('=');
+            if (idx > 0) {
+                ret.put(part.substring(0, idx).trim(),
+                        part.substring(idx + 1).trim());
+            } else {
+                ret.put(part, "");
+            }
+        }
+        return ret;
+    }
+
+    private LegacyDescriptorParser() {
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.cooma.benchmark.protocol.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应扩展的分派：依次使用<code>keys</code>个扩展名不同的<code>url</code>调用。
+ * <ul>
+ * <li><code>keys=1</code>单态，总是命中分派的MRU内联缓存；<code>keys=8</code>超过内联缓存大小（4），总是不命中。
+ * <li><code>adaptive</code>通过生成的自适应类调用，<code>lookup</code>每次从<code>url</code>取扩展名再从{@link ExtensionLoader}获取扩展调用，
+ * <code>direct</code>直接调用扩展实例。
+ * </ul>
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdaptiveBenchmark {
+    @Param({"1", "2", "4", "8"})
+    int keys;
+
+    private ExtensionLoader<Protocol> loader;
+    private Protocol adaptive;
+    private Protocol protocol;
+    private List<Map<String, String>> urls;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        loader = ExtensionLoader.getExtensionLoader(Protocol.class);
+        adaptive = loader.getAdaptiveExtension();
+        protocol = loader.getDefaultExtension();
+
+        urls = new ArrayList<Map<String, String>>(keys);
+        for (int i = 0; i < keys; i++) {
+            Map<String, String> url = new HashMap<String, String>();
+            url.put(Protocol.class.getName(), "p" + (i + 1));
+            urls.add(url);
+            if (adaptive.export(url, i) != i) {
+                throw new IllegalStateException("Adaptive extension is not dispatched to p" + (i + 1) + "!");
+            }
+        }
+    }
+
+    private Map<String, String> nextUrl() {
+        int i = next;
+        next = i + 1 == keys ? 0 : i + 1;
+        return urls.get(i);
+    }
+
+    @Benchmark
+    public int adaptive() {
+        return adaptive.export(nextUrl(), 1);
+    }
+
+    @Benchmark
+    public int lookup() {
+        Map<String, String> url = nextUrl();
+        return loader.getExtension(url.get(Protocol.class.getName())).export(url, 1);
+    }
+
+    @Benchmark
+    public int direct() {
+        return protocol.export(nextUrl(), 1);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.cooma.benchmark.car.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冷加载扩展配置：扫描<code>META-INF/extensions/</code>下的配置文件、解析并加载扩展实现类。
+ * <ul>
+ * <li><code>reload</code>：已有的{@link ExtensionLoader}重新加载，不使用编译期生成的扩展索引。
+ * <li><code>releaseAndLoad</code>：释放ClassLoader下的{@link ExtensionLoader}后重新获取，和第一次使用扩展点的路径一样。
+ * </ul>
+ * 实现类已经被JVM加载过，所以结果不包括类加载和初始化的开销。
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColdLoadBenchmark {
+    private ExtensionLoader<Car> loader;
+
+    @Setup
+    public void setUp() {
+        loader = ExtensionLoader.getExtensionLoader(Car.class);
+        loader.getSupportedExtensions();
+    }
+
+    @Benchmark
+    public Set<String> reload() {
+        loader.reload();
+        return loader.getSupportedExtensions();
+    }
+
+    @Benchmark
+    public Set<String> releaseAndLoad() {
+        ExtensionLoader.release(Thread.currentThread().getContextClassLoader());
+        return ExtensionLoader.getExtensionLoader(Car.class).getSupportedExtensions();
+    }
+}
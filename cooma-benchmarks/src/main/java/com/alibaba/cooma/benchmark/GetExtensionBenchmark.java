@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.cooma.benchmark.car.Car;
+import com.alibaba.cooma.benchmark.wheel.Wheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 获取扩展实例：缓存的单例扩展，及指定<code>properties</code>时每次新建并注入关联扩展（Car注入Wheel）。
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetExtensionBenchmark {
+    private ExtensionLoader<Car> loader;
+    private Map<String, String> properties;
+
+    @Setup
+    public void setUp() {
+        loader = ExtensionLoader.getExtensionLoader(Car.class);
+
+        properties = new HashMap<String, String>();
+        properties.put(Car.class.getName(), "racing");
+        properties.put(Wheel.class.getName(), "wood");
+        if (loader.getExtension(properties).run() != 3) {
+            throw new IllegalStateException("Wheel is not injected by properties!");
+        }
+    }
+
+    @Benchmark
+    public Car getExtension() {
+        return loader.getExtension("racing");
+    }
+
+    @Benchmark
+    public Car getDefaultExtension() {
+        return loader.getDefaultExtension();
+    }
+
+    @Benchmark
+    public Car getExtension_Properties() {
+        return loader.getExtension(properties);
+    }
+}
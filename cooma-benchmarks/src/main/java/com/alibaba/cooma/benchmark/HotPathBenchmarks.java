@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行{@link com.alibaba.cooma.ExtensionLoader}热点路径的所有Benchmark，单线程和多线程（CPU核数）各运行一次，并开启内存分配统计（<code>-prof gc</code>）。
+ * <p/>
+ * 其它的JMH命令行参数（如<code>-f</code>、<code>-wi</code>、<code>-rf json</code>）照常传入：
+ * <pre>java -cp target/benchmarks.jar com.alibaba.cooma.benchmark.HotPathBenchmarks -rf json</pre>
+ *
+ * @since 0.4.1
+ */
+public class HotPathBenchmarks {
+    static final Class<?>[] SUITES = {
+            LookupBenchmark.class,
+            GetExtensionBenchmark.class,
+            WrapperChainBenchmark.class,
+            AdaptiveBenchmark.class,
+            ColdLoadBenchmark.class,
+    };
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        int[] threads = {1, Runtime.getRuntime().availableProcessors()};
+        for (int t : threads) {
+            OptionsBuilder builder = new OptionsBuilder();
+            for (Class<?> suite : SUITES) {
+                builder.include(suite.getName() + "\\.");
+            }
+            Options options = builder.parent(commandLine)
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
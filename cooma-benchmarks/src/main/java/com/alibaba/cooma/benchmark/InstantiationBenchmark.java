@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.benchmark.car.Car;
+import com.alibaba.cooma.benchmark.car.impl.CarWrapper;
+import com.alibaba.cooma.benchmark.car.impl.RacingCar;
+import com.alibaba.cooma.internal.instantiation.InstantiationStrategy;
+import com.alibaba.cooma.internal.instantiation.LambdaInstantiationStrategy;
+import com.alibaba.cooma.internal.instantiation.MethodHandleInstantiationStrategy;
+import com.alibaba.cooma.internal.instantiation.ReflectionInstantiationStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 扩展实现类和Wrapper类的实例化：各{@link InstantiationStrategy}绑定好的构造函数，
+ * 对比之前每次调用<code>Class.newInstance()</code>、<code>getConstructor(type).newInstance(...)</code>的方式（<code>strategy=class</code>）。
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstantiationBenchmark {
+    @Param({"class", "lambda", "method_handle", "reflection"})
+    String strategy;
+
+    private Supplier<RacingCar> constructor;
+    private Function<Car, Car> wrapperConstructor;
+    private Car car;
+
+    @Setup
+    public void setUp() throws Exception {
+        car = new RacingCar();
+        if ("class".equals(strategy)) return;
+
+        InstantiationStrategy instantiationStrategy;
+        if ("lambda".equals(strategy)) {
+            instantiationStrategy = new LambdaInstantiationStrategy();
+        } else if ("method_handle".equals(strategy)) {
+            instantiationStrategy = new MethodHandleInstantiationStrategy();
+        } else if ("reflection".equals(strategy)) {
+            instantiationStrategy = new ReflectionInstantiationStrategy();
+        } else {
+            throw new IllegalArgumentException("Unsupported instantiation strategy " + strategy);
+        }
+        constructor = instantiationStrategy.bindConstructor(RacingCar.class);
+        wrapperConstructor = instantiationStrategy.bindWrapperConstructor(CarWrapper.class, Car.class);
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public Car extension() throws Exception {
+        if (constructor == null) return RacingCar.class.newInstance();
+        return constructor.get();
+    }
+
+    @Benchmark
+    public Car wrapper() throws Exception {
+        if (wrapperConstructor == null) return CarWrapper.class.getConstructor(Car.class).newInstance(car);
+        return wrapperConstructor.apply(car);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.cooma.benchmark.car.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExtensionLoader}的查找：{@link ExtensionLoader#getExtensionLoader(Class)}，
+ * {@link ExtensionLoader#hasExtension(String)}和{@link ExtensionLoader#getSupportedExtensions()}。
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+    private ExtensionLoader<Car> loader;
+
+    @Setup
+    public void setUp() {
+        loader = ExtensionLoader.getExtensionLoader(Car.class);
+        loader.getSupportedExtensions();
+    }
+
+    @Benchmark
+    public ExtensionLoader<Car> getExtensionLoader() {
+        return ExtensionLoader.getExtensionLoader(Car.class);
+    }
+
+    @Benchmark
+    public boolean hasExtension() {
+        return loader.hasExtension("racing");
+    }
+
+    @Benchmark
+    public boolean hasExtension_Missing() {
+        return loader.hasExtension("absent");
+    }
+
+    @Benchmark
+    public Set<String> getSupportedExtensions() {
+        return loader.getSupportedExtensions();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.cooma.benchmark.car.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指定Wrapper获取扩展：每次新建<code>depth</code>层Wrapper包装到缓存的扩展实例上；
+ * <code>invoke</code>再加上经过整个Wrapper链的调用。
+ *
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperChainBenchmark {
+    @Param({"1", "2", "4", "8"})
+    int depth;
+
+    private ExtensionLoader<Car> loader;
+    private List<String> wrappers;
+
+    @Setup
+    public void setUp() {
+        loader = ExtensionLoader.getExtensionLoader(Car.class);
+
+        wrappers = new ArrayList<String>();
+        for (int i = 1; i <= depth; i++) {
+            wrappers.add("w" + i);
+        }
+        if (loader.getExtension("racing", wrappers).run() != 2 + depth) {
+            throw new IllegalStateException("Wrapper chain is not of depth " + depth + "!");
+        }
+    }
+
+    @Benchmark
+    public Car getExtension() {
+        return loader.getExtension("racing", wrappers);
+    }
+
+    @Benchmark
+    public int invoke() {
+        return loader.getExtension("racing", wrappers).run();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark.car.impl;
+
+import com.alibaba.cooma.benchmark.car.Car;
+
+/**
+ * 配置成多个Wrapper名，用于构造不同深度的Wrapper链。
+ */
+public class CarWrapper implements Car {
+    private final Car car;
+
+    public CarWrapper(Car car) {
+        this.car = car;
+    }
+
+    public int run() {
+        return car.run() + 1;
+    }
+}
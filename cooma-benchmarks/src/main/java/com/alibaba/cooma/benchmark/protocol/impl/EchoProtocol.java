@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark.protocol.impl;
+
+import com.alibaba.cooma.benchmark.protocol.Protocol;
+
+import java.util.Map;
+
+/**
+ * 配置成多个扩展名，用于构造不同个数的分派目标。
+ */
+public class EchoProtocol implements Protocol {
+    public int export(Map<String, String> url, int port) {
+        return port;
+    }
+}
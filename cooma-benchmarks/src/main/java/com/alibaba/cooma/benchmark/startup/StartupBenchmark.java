@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark.startup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合成扩展点的冷启动Benchmark：扩展点数<code>N</code>从10增加到10000，
+ * 每个规模生成扩展点（{@link SyntheticExtensionGenerator}）后，多次启动新的JVM运行{@link StartupProbe}，输出中位数。
+ * <pre>
+ * java -cp target/benchmarks.jar com.alibaba.cooma.benchmark.startup.StartupBenchmark \
+ *     -n 10,100,1000,10000 -m 3 -k 2 -j 100 -runs 5 -binaryIndex
+ * </pre>
+ * <ul>
+ * <li><code>-n</code>：扩展点数，逗号分隔；<code>-m</code>：每个扩展点的实现数；<code>-k</code>：每个扩展点的Wrapper数。
+ * <li><code>-j</code>：扩展点分散到的Jar数；<code>-runs</code>：每个规模启动JVM的次数。
+ * <li><code>-dir</code>：生成目录，缺省<code>target/synthetic</code>；<code>-jvmArgs</code>：传给JVM的参数，空格分隔。
+ * <li><code>-binaryIndex</code>：同时测量使用二进制扩展索引（<code>cooma.index.file</code>）的再次启动。
+ * </ul>
+ *
+ * @since 0.4.1
+ */
+public class StartupBenchmark {
+    private static final String[] COLUMNS = {"firstLookup", "discovery", "instantiate", "heap", "metaspace", "classes"};
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = Arrays.asList(10, 100, 1000, 10000);
+        int impls = 3;
+        int wrappers = 2;
+        int jars = 100;
+        int runs = 3;
+        File dir = new File("target/synthetic");
+        List<String> jvmArgs = Collections.emptyList();
+        boolean binaryIndex = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-binaryIndex".equals(arg)) {
+                binaryIndex = true;
+                continue;
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("No value of option " + arg);
+            String value = args[++i];
+            if ("-n".equals(arg)) {
+                sizes = new ArrayList<Integer>();
+                for (String n : value.split(",")) {
+                    sizes.add(Integer.parseInt(n.trim()));
+                }
+            } else if ("-m".equals(arg)) impls = Integer.parseInt(value);
+            else if ("-k".equals(arg)) wrappers = Integer.parseInt(value);
+            else if ("-j".equals(arg)) jars = Integer.parseInt(value);
+            else if ("-runs".equals(arg)) runs = Integer.parseInt(value);
+            else if ("-dir".equals(arg)) dir = new File(value);
+            else if ("-jvmArgs".equals(arg)) jvmArgs = Arrays.asList(value.trim().split("\\s+"));
+            else throw new IllegalArgumentException("Unknown option " + arg);
+        }
+
+        System.out.printf("%-8s %-12s %14s %14s %14s %10s %14s %10s%n", "N", "mode",
+                "firstLookup ms", "discovery ms", "instantiate ms", "heap MB", "metaspace MB", "classes");
+        for (int n : sizes) {
+            long start = System.nanoTime();
+            List<File> jarFiles = new SyntheticExtensionGenerator(n, impls, wrappers, jars).generate(dir);
+            System.err.println("Generated " + n + " extension points in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+            print(n, "scan", measure(n, jarFiles, jvmArgs, runs));
+            if (binaryIndex) {
+                File index = new File(dir, "cooma-" + n + ".idx");
+                index.delete();
+                List<String> indexArgs = new ArrayList<String>(jvmArgs);
+                indexArgs.add("-Dcooma.index.file=" + index.getAbsolutePath());
+                // 第一次启动加载扩展点后写入索引
+                probe(n, jarFiles, indexArgs);
+                print(n, "binaryIndex", measure(n, jarFiles, indexArgs, runs));
+            }
+        }
+    }
+
+    private static Map<String, Long> measure(int n, List<File> jarFiles, List<String> jvmArgs, int runs) throws IOException, InterruptedException {
+        Map<String, List<Long>> samples = new HashMap<String, List<Long>>();
+        for (int r = 0; r < runs; r++) {
+            for (Map.Entry<String, Long> entry : probe(n, jarFiles, jvmArgs).entrySet()) {
+                List<Long> values = samples.get(entry.getKey());
+                if (values == null) {
+                    values = new ArrayList<Long>();
+                    samples.put(entry.getKey(), values);
+                }
+                values.add(entry.getValue());
+            }
+        }
+        Map<String, Long> medians = new HashMap<String, Long>();
+        for (Map.Entry<String, List<Long>> entry : samples.entrySet()) {
+            List<Long> values = entry.getValue();
+            Collections.sort(values);
+            medians.put(entry.getKey(), values.get(values.size() / 2));
+        }
+        return medians;
+    }
+
+    private static Map<String, Long> probe(int n, List<File> jarFiles, List<String> jvmArgs) throws IOException, InterruptedException {
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path"));
+        for (File jar : jarFiles) {
+            classPath.append(File.pathSeparatorChar).append(jar.getAbsolutePath());
+        }
+
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classPath.toString());
+        command.add(StartupProbe.class.getName());
+        command.add(String.valueOf(n));
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Map<String, Long> result = new HashMap<String, Long>();
+        List<String> output = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                int i = line.indexOf('=');
+                if (i > 0) {
+                    try {
+                        result.put(line.substring(0, i), Long.parseLong(line.substring(i + 1)));
+                    } catch (NumberFormatException e) {
+                        // 不是测量结果的输出行
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || !result.keySet().containsAll(Arrays.asList(COLUMNS))) {
+            throw new IllegalStateException("Startup probe of " + n + " extension points failed(exit code " + exitCode + "):\n" + output);
+        }
+        return result;
+    }
+
+    private static void print(int n, String mode, Map<String, Long> result) {
+        System.out.printf("%-8d %-12s %14.2f %14.2f %14.2f %10.1f %14.1f %10d%n", n, mode,
+                result.get("firstLookup") / 1e6, result.get("discovery") / 1e6, result.get("instantiate") / 1e6,
+                result.get("heap") / 1048576.0, result.get("metaspace") / 1048576.0, result.get("classes"));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark.startup;
+
+import com.alibaba.cooma.ExtensionLoader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在新启动的JVM中测量合成扩展点的冷启动，由{@link StartupBenchmark}启动，结果以<code>key=value</code>行输出。
+ * <ul>
+ * <li><code>firstLookup</code>：第一个扩展点第一次获取缺省扩展，包括Cooma自身的初始化。
+ * <li><code>discovery</code>：其余扩展点的查找、解析扩展配置和加载实现类。
+ * <li><code>instantiate</code>：所有扩展点第一次创建缺省扩展实例。
+ * <li><code>heap</code>/<code>metaspace</code>/<code>classes</code>：之后Full GC后的堆、Metaspace占用和加载的类数。
+ * </ul>
+ * 扩展点接口在计时前加载，时间只包括Cooma的开销。
+ *
+ * @since 0.4.1
+ */
+public class StartupProbe {
+    public static void main(String[] args) throws Exception {
+        int points = Integer.parseInt(args[0]);
+
+        List<Class<Object>> types = new ArrayList<Class<Object>>(points);
+        for (int i = 0; i < points; i++) {
+            @SuppressWarnings("unchecked")
+            Class<Object> type = (Class<Object>) Class.forName(SyntheticExtensionGenerator.typeName(i));
+            types.add(type);
+        }
+
+        long start = System.nanoTime();
+        Object first = ExtensionLoader.getExtensionLoader(types.get(0)).getDefaultExtension();
+        long firstLookup = System.nanoTime() - start;
+        if (first == null) throw new IllegalStateException("No default extension of " + types.get(0));
+
+        start = System.nanoTime();
+        int extensions = 0;
+        for (int i = 1; i < points; i++) {
+            extensions += ExtensionLoader.getExtensionLoader(types.get(i)).getSupportedExtensions().size();
+        }
+        long discovery = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Object> instances = new ArrayList<Object>(points);
+        for (Class<Object> type : types) {
+            instances.add(ExtensionLoader.getExtensionLoader(type).getDefaultExtension());
+        }
+        long instantiate = System.nanoTime() - start;
+
+        System.gc();
+        System.gc();
+        long metaspace = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) metaspace = pool.getUsage().getUsed();
+        }
+
+        System.out.println("firstLookup=" + firstLookup);
+        System.out.println("discovery=" + discovery);
+        System.out.println("instantiate=" + instantiate);
+        System.out.println("heap=" + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        System.out.println("metaspace=" + metaspace);
+        System.out.println("classes=" + ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        System.out.println("extensions=" + (extensions + instances.size()));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.benchmark.startup;
+
+import com.alibaba.cooma.Extension;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 生成合成的扩展点：<code>points</code>个扩展点，每个扩展点<code>impls</code>个实现和<code>wrappers</code>个Wrapper，
+ * 编译后连同扩展配置文件分散打包到<code>jars</code>个Jar中。
+ * <p/>
+ * 扩展点<code>i</code>放在第<code>i % jars</code>个Jar中；扩展点比Jar少时，多出的Jar不包含扩展点，只用来加长ClassPath。
+ * <pre>
+ * synthetic.p{i}.Ext{i}           &#64;Extension("impl0")
+ * synthetic.p{i}.Ext{i}Impl{j}    impl{j}
+ * synthetic.p{i}.Ext{i}Wrapper{k} +wrapper{k}
+ * </pre>
+ * 生成结果按参数放在各自的目录下，已经生成过的直接复用。
+ * 编译使用{@link ToolProvider#getSystemJavaCompiler()}，需要在JDK上运行。
+ *
+ * @since 0.4.1
+ */
+public class SyntheticExtensionGenerator {
+    static final String PACKAGE_PREFIX = "synthetic.p";
+    static final String EXTENSION_CONF_DIRECTORY = "META-INF/extensions/";
+
+    private static final String DONE_MARKER = ".done";
+
+    private final int points;
+    private final int impls;
+    private final int wrappers;
+    private final int jars;
+
+    public SyntheticExtensionGenerator(int points, int impls, int wrappers, int jars) {
+        if (points < 1 || impls < 1 || wrappers < 0 || jars < 1) {
+            throw new IllegalArgumentException("Illegal synthetic extension size: points " + points + ", impls " + impls
+                    + ", wrappers " + wrappers + ", jars " + jars);
+        }
+        this.points = points;
+        this.impls = impls;
+        this.wrappers = wrappers;
+        this.jars = jars;
+    }
+
+    public static String typeName(int point) {
+        return PACKAGE_PREFIX + point + ".Ext" + point;
+    }
+
+    /**
+     * @param baseDir 生成目录的父目录
+     * @return 生成的Jar
+     */
+    public List<File> generate(File baseDir) throws IOException {
+        File dir = new File(baseDir, "n" + points + "-m" + impls + "-k" + wrappers + "-j" + jars);
+        List<File> jarFiles = new ArrayList<File>();
+        for (int j = 0; j < jars; j++) {
+            jarFiles.add(new File(dir, "synthetic-" + j + ".jar"));
+        }
+        File done = new File(dir, DONE_MARKER);
+        if (done.isFile()) return jarFiles;
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system java compiler, run the generator on a JDK!");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Fail to create directory " + dir);
+        }
+
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            fileManager.setLocation(StandardLocation.CLASS_PATH,
+                    Collections.singletonList(new File(Extension.class.getProtectionDomain().getCodeSource().getLocation().toURI())));
+            for (int j = 0; j < jars; j++) {
+                File classes = new File(dir, "classes-" + j);
+                deleteRecursively(classes);
+                if (!classes.mkdirs()) throw new IOException("Fail to create directory " + classes);
+
+                List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+                for (int i = j; i < points; i += jars) {
+                    addSources(sources, i);
+                }
+                if (!sources.isEmpty()) {
+                    fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classes));
+                    List<String> options = Arrays.asList("-source", "8", "-target", "8", "-nowarn", "-Xlint:-options");
+                    if (!compiler.getTask(null, fileManager, null, options, null, sources).call()) {
+                        throw new IllegalStateException("Fail to compile synthetic extensions of jar " + j);
+                    }
+                }
+                writeJar(jarFiles.get(j), classes, j);
+                deleteRecursively(classes);
+            }
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Fail to locate cooma classes, cause: " + e.getMessage(), e);
+        } finally {
+            fileManager.close();
+        }
+
+        new FileOutputStream(done).close();
+        return jarFiles;
+    }
+
+    private void addSources(List<JavaFileObject> sources, int i) {
+        String pkg = PACKAGE_PREFIX + i;
+        String ext = "Ext" + i;
+        sources.add(new Source(pkg, ext, "@com.alibaba.cooma.Extension(\"impl0\")\n" +
+                "public interface " + ext + " {\n" +
+                "    int call();\n" +
+                "}\n"));
+        for (int m = 0; m < impls; m++) {
+            String impl = ext + "Impl" + m;
+            sources.add(new Source(pkg, impl, "public class " + impl + " implements " + ext + " {\n" +
+                    "    public int call() { return " + m + "; }\n" +
+                    "}\n"));
+        }
+        for (int k = 0; k < wrappers; k++) {
+            String wrapper = ext + "Wrapper" + k;
+            sources.add(new Source(pkg, wrapper, "public class " + wrapper + " implements " + ext + " {\n" +
+                    "    private final " + ext + " ext;\n" +
+                    "    public " + wrapper + "(" + ext + " ext) { this.ext = ext; }\n" +
+                    "    public int call() { return ext.call() + 1; }\n" +
+                    "}\n"));
+        }
+    }
+
+    private String descriptor(int i) {
+        StringBuilder buf = new StringBuilder();
+        String pkg = PACKAGE_PREFIX + i;
+        for (int m = 0; m < impls; m++) {
+            buf.append("impl").append(m).append('=').append(pkg).append(".Ext").append(i).append("Impl").append(m)
+                    .append("(order=").append(m).append(")\n");
+        }
+        for (int k = 0; k < wrappers; k++) {
+            buf.append("+wrapper").append(k).append('=').append(pkg).append(".Ext").append(i).append("Wrapper").append(k).append('\n');
+        }
+        return buf.toString();
+    }
+
+    private void writeJar(File jar, File classes, int j) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            addEntries(out, classes, "");
+            for (int i = j; i < points; i += jars) {
+                out.putNextEntry(new JarEntry(EXTENSION_CONF_DIRECTORY + typeName(i)));
+                out.write(descriptor(i).getBytes("UTF-8"));
+                out.closeEntry();
+            }
+            // 不包含扩展点的Jar也要有内容，和真实应用ClassPath中的普通Jar一样
+            out.putNextEntry(new JarEntry("synthetic/jar-" + j + ".properties"));
+            out.write(("jar=" + j + "\n").getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void addEntries(JarOutputStream out, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                out.putNextEntry(new JarEntry(name + "/"));
+                out.closeEntry();
+                addEntries(out, file, name + "/");
+            } else {
+                out.putNextEntry(new JarEntry(name));
+                copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void copy(File file, OutputStream out) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteRecursively(f);
+            }
+        }
+        file.delete();
+    }
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String pkg, String simpleName, String body) {
+            super(URI.create("string:///" + pkg.replace('.', '/') + "/" + simpleName + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = "package " + pkg + ";\n\n" + body;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * 从标注了{@code @com.alibaba.cooma.ExtensionImpl}的类生成{@code com.alibaba.cooma.ExtensionIndex}，
+ * 并注册到<code>META-INF/services/com.alibaba.cooma.ExtensionIndex</code>中。
+ * <p/>
+ * 生成的索引类的类名可以通过处理器选项<code>-Acooma.index.class=com.foo.FooExtensionIndex</code>设置；
+ * 缺省的类名中包含索引的类的Hash，不同Jar包的索引不会冲突。
+ *
+ * @since 0.4.1
+ */
+@SupportedAnnotationTypes(ExtensionIndexProcessor.EXTENSION_IMPL)
+@SupportedOptions(ExtensionIndexProcessor.OPTION_INDEX_CLASS)
+public class ExtensionIndexProcessor extends AbstractProcessor {
+    static final String EXTENSION = "com.alibaba.cooma.Extension";
+    static final String EXTENSION_IMPL = "com.alibaba.cooma.ExtensionImpl";
+    static final String EXTENSION_INDEX = "com.alibaba.cooma.ExtensionIndex";
+    static final String OPTION_INDEX_CLASS = "cooma.index.class";
+
+    private static final String SERVICE_FILE = "META-INF/services/" + EXTENSION_INDEX;
+    private static final String DEFAULT_INDEX_CLASS_NAME = "CoomaExtensionIndex";
+
+    private static final Pattern NAME_SEPARATOR = Pattern.compile("\\s*,+\\s*");
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
+
+    private final Set<String> generatedIndexes = new LinkedHashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!generatedIndexes.isEmpty()) writeServiceFile();
+            return false;
+        }
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(EXTENSION_IMPL);
+        if (annotation == null) return false;
+
+        // Map<extension-point, code of ExtensionDefinition>，排序保证生成的代码稳定
+        Map<String, List<String>> definitions = new TreeMap<String, List<String>>();
+        List<TypeElement> originatingElements = new ArrayList<TypeElement>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@ExtensionImpl can only be annotated on class");
+                continue;
+            }
+            TypeElement impl = (TypeElement) element;
+            if (!impl.getModifiers().contains(Modifier.PUBLIC) || impl.getModifiers().contains(Modifier.ABSTRACT)) {
+                error(impl, "class annotated with @ExtensionImpl should be public and not abstract");
+                continue;
+            }
+            Set<TypeElement> extensionPoints = new LinkedHashSet<TypeElement>();
+            collectExtensionPoints(impl.asType(), extensionPoints);
+            if (extensionPoints.isEmpty()) {
+                error(impl, "class annotated with @ExtensionImpl implements NO interface annotated with @Extension");
+                continue;
+            }
+
+            String code = toDefinitionCode(impl, getAnnotationMirror(impl, annotation));
+            if (code == null) continue;
+            for (TypeElement extensionPoint : extensionPoints) {
+                String name = binaryName(extensionPoint);
+                List<String> list = definitions.get(name);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    definitions.put(name, list);
+                }
+                list.add(code);
+            }
+            originatingElements.add(impl);
+        }
+
+        if (!definitions.isEmpty()) {
+            writeIndex(indexClassName(originatingElements), definitions, originatingElements);
+        }
+        return true;
+    }
+
+    private void collectExtensionPoints(TypeMirror type, Set<TypeElement> extensionPoints) {
+        if (type.getKind() != TypeKind.DECLARED) return;
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.INTERFACE && hasAnnotation(element, EXTENSION)) {
+            extensionPoints.add(element);
+        }
+        for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            collectExtensionPoints(supertype, extensionPoints);
+        }
+    }
+
+    /**
+     * @return <code>new ExtensionDefinition(...)</code>的代码，注解不合法时返回<code>null</code>。
+     */
+    private String toDefinitionCode(TypeElement impl, AnnotationMirror mirror) {
+        String value = "";
+        String kind = "EXTENSION";
+        List<String> attributes = new ArrayList<String>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            String key = entry.getKey().getSimpleName().toString();
+            Object v = entry.getValue().getValue();
+            if ("value".equals(key)) {
+                value = v.toString().trim();
+            } else if ("kind".equals(key)) {
+                kind = v.toString();
+            } else if ("attributes".equals(key)) {
+                for (Object attribute : (List<?>) v) {
+                    attributes.add(((AnnotationValue) attribute).getValue().toString());
+                }
+            }
+        }
+
+        String[] names = NAME_SEPARATOR.split(value);
+        StringBuilder code = new StringBuilder();
+        code.append("new ExtensionDefinition(ExtensionDefinition.Kind.").append(kind).append(", new String[]{");
+        for (int i = 0; i < names.length; i++) {
+            if (!NAME_PATTERN.matcher(names[i]).matches()) {
+                error(impl, "name(" + names[i] + ") of @ExtensionImpl is invalid!");
+                return null;
+            }
+            if (i > 0) code.append(", ");
+            code.append(literal(names[i]));
+        }
+        code.append("},\n                        ").append(literal(binaryName(impl)));
+        code.append(", ExtensionDefinition.attributes(");
+        for (int i = 0; i < attributes.size(); i++) {
+            String part = attributes.get(i).trim();
+            int idx = part.indexOf('=');
+            String k = idx > 0 ? part.substring(0, idx).trim() : part;
+            String v = idx > 0 ? part.substring(idx + 1).trim() : "";
+            if (k.length() == 0) {
+                error(impl, "attribute(" + attributes.get(i) + ") of @ExtensionImpl is invalid!");
+                return null;
+            }
+            if (i > 0) code.append(", ");
+            code.append(literal(k)).append(", ").append(literal(v));
+        }
+        code.append("))");
+        return code.toString();
+    }
+
+    private String indexClassName(List<TypeElement> originatingElements) {
+        String className = processingEnv.getOptions().get(OPTION_INDEX_CLASS);
+        if (className == null || className.trim().length() == 0) {
+            Set<String> names = new TreeSet<String>();
+            for (TypeElement element : originatingElements) {
+                names.add(binaryName(element));
+            }
+            String first = names.iterator().next();
+            String pkg = first.lastIndexOf('.') > 0 ? first.substring(0, first.lastIndexOf('.') + 1) : "";
+            className = pkg + DEFAULT_INDEX_CLASS_NAME + "_" + Integer.toHexString(names.hashCode());
+        }
+        className = className.trim();
+        // 后续的处理轮次中又有新的实现类（如其它处理器生成的代码），生成另一个索引类
+        if (!generatedIndexes.isEmpty()) {
+            className = className + "_" + generatedIndexes.size();
+        }
+        return className;
+    }
+
+    private void writeIndex(String className, Map<String, List<String>> definitions, List<TypeElement> originatingElements) {
+        int idx = className.lastIndexOf('.');
+        String pkg = idx > 0 ? className.substring(0, idx) : null;
+        String simpleName = className.substring(idx + 1);
+
+        StringBuilder code = new StringBuilder();
+        code.append("// Generated by ").append(ExtensionIndexProcessor.class.getName()).append(", DO NOT EDIT!\n");
+        if (pkg != null) code.append("package ").append(pkg).append(";\n");
+        code.append("\n");
+        code.append("import com.alibaba.cooma.ExtensionDefinition;\n");
+        code.append("import com.alibaba.cooma.ExtensionIndex;\n");
+        code.append("\n");
+        code.append("import java.util.Arrays;\n");
+        code.append("import java.util.HashMap;\n");
+        code.append("import java.util.List;\n");
+        code.append("import java.util.Map;\n");
+        code.append("\n");
+        code.append("public final class ").append(simpleName).append(" implements ExtensionIndex {\n");
+        code.append("    public Map<String, List<ExtensionDefinition>> getDefinitions() {\n");
+        code.append("        Map<String, List<ExtensionDefinition>> definitions = new HashMap<String, List<ExtensionDefinition>>();\n");
+        for (Map.Entry<String, List<String>> entry : definitions.entrySet()) {
+            code.append("        definitions.put(").append(literal(entry.getKey())).append(", Arrays.asList(");
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                code.append(i > 0 ? ",\n" : "\n");
+                code.append("                ").append(entry.getValue().get(i));
+            }
+            code.append("));\n");
+        }
+        code.append("        return definitions;\n");
+        code.append("    }\n");
+        code.append("}\n");
+
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(className,
+                    originatingElements.toArray(new Element[originatingElements.size()])).openWriter();
+            try {
+                writer.write(code.toString());
+            } finally {
+                writer.close();
+            }
+            generatedIndexes.add(className);
+        } catch (IOException e) {
+            error(null, "Fail to write extension index " + className + ", cause: " + e.getMessage());
+        }
+    }
+
+    private void writeServiceFile() {
+        Set<String> services = new LinkedHashSet<String>();
+        // 合并已有的（如工程资源目录中手写的）注册
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), "utf-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int ci = line.indexOf('#');
+                    if (ci >= 0) line = line.substring(0, ci);
+                    line = line.trim();
+                    if (line.length() > 0) services.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // 还没有注册文件
+        }
+        services.addAll(generatedIndexes);
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            Writer writer = new OutputStreamWriter(file.openOutputStream(), "utf-8");
+            try {
+                for (String service : services) {
+                    writer.write(service);
+                    writer.write("\n");
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(null, "Fail to write " + SERVICE_FILE + ", cause: " + e.getMessage());
+        }
+    }
+
+    private AnnotationMirror getAnnotationMirror(Element element, TypeElement annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().asElement().equals(annotation)) return mirror;
+        }
+        throw new IllegalStateException("No @" + annotation + " on " + element);
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation))
+                return true;
+        }
+        return false;
+    }
+
+    private String binaryName(TypeElement element) {
+        return processingEnv.getElementUtils().getBinaryName(element).toString();
+    }
+
+    private void error(Element element, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element);
+    }
+
+    static String literal(String s) {
+        StringBuilder buf = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        buf.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        buf.append(c);
+                    }
+            }
+        }
+        return buf.append('"').toString();
+    }
+}
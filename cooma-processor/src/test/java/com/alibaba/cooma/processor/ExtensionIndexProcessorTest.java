@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.processor;
+
+import com.alibaba.cooma.ExtensionDefinition;
+import com.alibaba.cooma.ExtensionIndex;
+import com.alibaba.cooma.ExtensionLoader;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class ExtensionIndexProcessorTest {
+    private File sourceDir;
+    private File outputDir;
+
+    @Before
+    public void setUp() throws Exception {
+        File baseDir = new File("target/processor-test/" + System.nanoTime());
+        sourceDir = new File(baseDir, "src");
+        outputDir = new File(baseDir, "classes");
+        assertTrue(sourceDir.mkdirs());
+        assertTrue(outputDir.mkdirs());
+    }
+
+    @Test
+    public void test_generateIndex() throws Exception {
+        source("com.foo.Car", "package com.foo;\n" +
+                "@com.alibaba.cooma.Extension(\"racing\")\n" +
+                "public interface Car { String run(); }");
+        source("com.foo.RacingCar", "package com.foo;\n" +
+                "@com.alibaba.cooma.ExtensionImpl(value = \"racing, fast\", attributes = {\"order=1\", \" isProvider \"})\n" +
+                "public class RacingCar implements Car { public String run() { return \"racing\"; } }");
+        source("com.foo.CountedCar", "package com.foo;\n" +
+                "@com.alibaba.cooma.ExtensionImpl(value = \"counter\", kind = com.alibaba.cooma.ExtensionDefinition.Kind.WRAPPER)\n" +
+                "public class CountedCar implements Car {\n" +
+                "    private final Car car;\n" +
+                "    public CountedCar(Car car) { this.car = car; }\n" +
+                "    public String run() { return \"counted-\" + car.run(); }\n" +
+                "}");
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("-Acooma.index.class=com.foo.FooIndex");
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, getClass().getClassLoader());
+        assertEquals("com.foo.FooIndex", new String(readAll(new File(outputDir, "META-INF/services/com.alibaba.cooma.ExtensionIndex"))).trim());
+
+        ExtensionIndex index = (ExtensionIndex) classLoader.loadClass("com.foo.FooIndex").newInstance();
+        Map<String, List<ExtensionDefinition>> definitions = index.getDefinitions();
+        assertEquals(1, definitions.size());
+        assertEquals("[+counter=com.foo.CountedCar, racing,fast=com.foo.RacingCar(order=1,isProvider)]",
+                definitions.get("com.foo.Car").toString());
+
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            Class<?> type = classLoader.loadClass("com.foo.Car");
+            ExtensionLoader<?> extensionLoader = ExtensionLoader.getExtensionLoader(type);
+            Object car = extensionLoader.getExtension("fast", Arrays.asList("counter"));
+            assertEquals("counted-racing", type.getMethod("run").invoke(car));
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @Test
+    public void test_generateIndex_DefaultClassName() throws Exception {
+        source("com.foo.Wheel", "package com.foo;\n" +
+                "@com.alibaba.cooma.Extension\n" +
+                "public interface Wheel {}");
+        source("com.foo.impl.WoodWheel", "package com.foo.impl;\n" +
+                "@com.alibaba.cooma.ExtensionImpl(\"wood\")\n" +
+                "public class WoodWheel implements com.foo.Wheel {}");
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile();
+        assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        String service = new String(readAll(new File(outputDir, "META-INF/services/com.alibaba.cooma.ExtensionIndex"))).trim();
+        assertTrue(service, service.startsWith("com.foo.impl.CoomaExtensionIndex_"));
+    }
+
+    @Test
+    public void test_error_NoExtensionInterface() throws Exception {
+        source("com.foo.Bar", "package com.foo;\n" +
+                "@com.alibaba.cooma.ExtensionImpl(\"bar\")\n" +
+                "public class Bar implements Runnable { public void run() {} }");
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile();
+        assertFalse(diagnostics.isEmpty());
+        assertThat(diagnostics.get(0).getMessage(null), containsString("implements NO interface annotated with @Extension"));
+    }
+
+    @Test
+    public void test_error_InvalidName() throws Exception {
+        source("com.foo.Car", "package com.foo;\n" +
+                "@com.alibaba.cooma.Extension\n" +
+                "public interface Car {}");
+        source("com.foo.BadCar", "package com.foo;\n" +
+                "@com.alibaba.cooma.ExtensionImpl(\"bad-name\")\n" +
+                "public class BadCar implements Car {}");
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile();
+        assertFalse(diagnostics.isEmpty());
+        assertThat(diagnostics.get(0).getMessage(null), containsString("name(bad-name) of @ExtensionImpl is invalid!"));
+    }
+
+    @Test
+    public void test_literal() throws Exception {
+        assertEquals("\"a\\\"b\\\\c\\n\\u00e9\"", ExtensionIndexProcessor.literal("a\"b\\c\né"));
+    }
+
+    private void source(String className, String code) throws Exception {
+        File file = new File(sourceDir, className.replace('.', '/') + ".java");
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        try {
+            writer.write(code);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(String... options) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            List<File> sources = new ArrayList<File>();
+            collectSources(sourceDir, sources);
+
+            List<String> args = new ArrayList<String>(Arrays.asList(options));
+            args.add("-classpath");
+            args.add(new File(ExtensionLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+            args.add("-d");
+            args.add(outputDir.getPath());
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, args, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Arrays.asList(new ExtensionIndexProcessor()));
+            task.call();
+        } finally {
+            fileManager.close();
+        }
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) errors.add(diagnostic);
+        }
+        return errors;
+    }
+
+    private static void collectSources(File dir, List<File> sources) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) collectSources(file, sources);
+            else sources.add(file);
+        }
+    }
+
+    private static byte[] readAll(File file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
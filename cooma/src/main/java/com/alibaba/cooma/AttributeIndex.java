@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 扩展属性的倒排索引：属性名 -> 属性值 -> 扩展名的{@link BitSet}。
+ * <p/>
+ * 在扩展点加载时建立一次，之后不再修改。单个属性的查询结果预先计算好，查询只需要Map查找；
+ * 多个属性的查询对{@link BitSet}求交集。返回的扩展名按配置的顺序排列，是不可修改的。
+ *
+ * @since 0.4.1
+ */
+final class AttributeIndex {
+    private final String[] names;
+    // Map<attribute, Map<value, ext-names>>
+    private final Map<String, Map<String, BitSet>> valueIndex = new HashMap<String, Map<String, BitSet>>();
+    // Map<attribute, ext-names>
+    private final Map<String, BitSet> presenceIndex = new HashMap<String, BitSet>();
+
+    private final Map<String, Map<String, Set<String>>> valueResults = new HashMap<String, Map<String, Set<String>>>();
+    private final Map<String, Set<String>> presenceResults = new HashMap<String, Set<String>>();
+
+    AttributeIndex(Map<String, Map<String, String>> name2Attributes) {
+        names = name2Attributes.keySet().toArray(new String[name2Attributes.size()]);
+        for (int i = 0; i < names.length; i++) {
+            for (Map.Entry<String, String> entry : name2Attributes.get(names[i]).entrySet()) {
+                Map<String, BitSet> values = valueIndex.get(entry.getKey());
+                if (values == null) {
+                    values = new HashMap<String, BitSet>();
+                    valueIndex.put(entry.getKey(), values);
+                }
+                bits(values, entry.getValue()).set(i);
+                bits(presenceIndex, entry.getKey()).set(i);
+            }
+        }
+
+        for (Map.Entry<String, Map<String, BitSet>> entry : valueIndex.entrySet()) {
+            Map<String, Set<String>> results = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, BitSet> value : entry.getValue().entrySet()) {
+                results.put(value.getKey(), toNames(value.getValue()));
+            }
+            valueResults.put(entry.getKey(), results);
+        }
+        for (Map.Entry<String, BitSet> entry : presenceIndex.entrySet()) {
+            presenceResults.put(entry.getKey(), toNames(entry.getValue()));
+        }
+    }
+
+    private static BitSet bits(Map<String, BitSet> index, String key) {
+        BitSet bits = index.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            index.put(key, bits);
+        }
+        return bits;
+    }
+
+    private Set<String> toNames(BitSet bits) {
+        Set<String> ret = new LinkedHashSet<String>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ret.add(names[i]);
+        }
+        return Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * @return 属性值是<code>value</code>的扩展名
+     */
+    Set<String> find(String attribute, String value) {
+        Map<String, Set<String>> results = valueResults.get(attribute);
+        Set<String> ret = results == null ? null : results.get(value);
+        return ret == null ? Collections.<String>emptySet() : ret;
+    }
+
+    /**
+     * @return 有属性<code>attribute</code>的扩展名
+     */
+    Set<String> find(String attribute) {
+        Set<String> ret = presenceResults.get(attribute);
+        return ret == null ? Collections.<String>emptySet() : ret;
+    }
+
+    /**
+     * @return 条件中的属性和值是否都在索引中；否则没有满足条件的扩展
+     */
+    boolean isIndexed(Map<String, String> attributes) {
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            if (entry.getValue() == null) {
+                if (!presenceIndex.containsKey(entry.getKey())) return false;
+            } else {
+                Map<String, BitSet> values = valueIndex.get(entry.getKey());
+                if (values == null || !values.containsKey(entry.getValue())) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param attributes 所有属性都要满足；值为<code>null</code>的只要求有这个属性
+     */
+    Set<String> find(Map<String, String> attributes) {
+        if (attributes.size() == 1) {
+            Map.Entry<String, String> entry = attributes.entrySet().iterator().next();
+            return entry.getValue() == null ? find(entry.getKey()) : find(entry.getKey(), entry.getValue());
+        }
+
+        BitSet result = new BitSet();
+        result.set(0, names.length);
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            BitSet bits;
+            if (entry.getValue() == null) {
+                bits = presenceIndex.get(entry.getKey());
+            } else {
+                Map<String, BitSet> values = valueIndex.get(entry.getKey());
+                bits = values == null ? null : values.get(entry.getValue());
+            }
+            if (bits == null) return Collections.emptySet();
+            result.and(bits);
+        }
+        return toNames(result);
+    }
+}
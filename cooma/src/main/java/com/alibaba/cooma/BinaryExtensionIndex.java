@@ -0,0 +1,437 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * 持久化在磁盘上的二进制扩展索引，用于加快JVM的再次启动。
+ * <p/>
+ * 设置系统属性<code>-Dcooma.index.file=/path/to/cooma.idx</code>开启：
+ * <ul>
+ * <li>扩展点第一次从扩展配置文件完整加载后，在后台线程中异步写入索引文件；
+ * 启动时连续加载的多个扩展点合并成一次写入。JVM退出时再把还没有写入的扩展点写入索引文件。
+ * <li>之后启动时通过{@link MappedByteBuffer}打开索引文件，索引中的扩展点不再查找和解析扩展配置文件。
+ * <li>索引文件记录了ClassPath中Jar的大小和修改时间，ClassPath有变化时索引失效，加载扩展点后重建。
+ * <li>索引文件损坏（如被截断）时丢弃整个索引，扩展点改为解析扩展配置文件，之后重写索引文件。
+ * </ul>
+ * 只用于从SystemClassLoader加载的扩展点。
+ *
+ * @since 0.4.1
+ */
+final class BinaryExtensionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryExtensionIndex.class);
+
+    static final String FILE_PROPERTY = "cooma.index.file";
+
+    private static final int MAGIC = 0x434F4F4D; // "COOM"
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ExtensionDefinition.Kind[] KINDS = ExtensionDefinition.Kind.values();
+
+    // 启动时扩展点一个接一个地加载，等一会儿再写，合并成一次写入
+    static final long SAVE_DELAY_MILLIS = 1000;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "cooma-binary-index-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final BinaryExtensionIndex INSTANCE = createInstance();
+
+    private static BinaryExtensionIndex createInstance() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null || file.trim().length() == 0) return null;
+
+        final BinaryExtensionIndex index = new BinaryExtensionIndex(new File(file.trim()), classPathFingerprint());
+        index.open();
+        // 后台线程是daemon线程，JVM退出时可能还没有写；只用于写入最后还没有写入的扩展点
+        Runtime.getRuntime().addShutdownHook(new Thread("cooma-binary-index-flusher") {
+            @Override
+            public void run() {
+                index.save();
+            }
+        });
+        return index;
+    }
+
+    /**
+     * @return 索引中扩展点的扩展定义；没有开启索引、扩展点不在索引中返回<code>null</code>。
+     */
+    static List<ExtensionDefinition> find(ClassLoader classLoader, String type) {
+        if (INSTANCE == null || classLoader != ClassLoader.getSystemClassLoader()) return null;
+        return INSTANCE.get(type);
+    }
+
+    /**
+     * 记录从扩展配置文件加载的扩展点，异步写入索引。
+     */
+    static void record(ClassLoader classLoader, String type, List<ExtensionDefinition> definitions) {
+        if (INSTANCE == null || classLoader != ClassLoader.getSystemClassLoader()) return;
+        INSTANCE.put(type, definitions);
+        INSTANCE.saveLater(SAVE_DELAY_MILLIS);
+    }
+
+    // ==============================
+    // index instance
+    // ==============================
+
+    private final File file;
+    private final long fingerprint;
+
+    private volatile ByteBuffer buffer;
+    // Map<extension-point-name, offset of definitions in buffer>
+    private volatile Map<String, Integer> offsets = Collections.emptyMap();
+
+    // 本次启动新加载的扩展点
+    private final Map<String, List<ExtensionDefinition>> recorded = new LinkedHashMap<String, List<ExtensionDefinition>>();
+    // 有还没有写入索引文件的变化：新加载的扩展点，或是索引文件损坏，即使没有新加载的扩展点也要重写
+    private boolean dirty;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    BinaryExtensionIndex(File file, long fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 打开索引文件，索引文件不存在或失效返回<code>false</code>。
+     */
+    boolean open() {
+        if (!file.isFile()) return false;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            MappedByteBuffer mapped;
+            try {
+                mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close(); // 关闭文件后，映射仍然有效
+            }
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                logger.warn("Ignore binary extension index " + file + ", invalid format.");
+                return false;
+            }
+            if (mapped.getLong() != fingerprint) {
+                logger.info("Binary extension index " + file + " is stale, will be rebuilt.");
+                return false;
+            }
+            int count = mapped.getInt();
+            Map<String, Integer> tmpOffsets = new HashMap<String, Integer>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String type = readString(mapped);
+                tmpOffsets.put(type, mapped.getInt());
+            }
+            for (Map.Entry<String, Integer> entry : tmpOffsets.entrySet()) {
+                int offset = entry.getValue();
+                if (offset < mapped.position() || offset + 4 > mapped.limit()) {
+                    throw new IllegalStateException("offset(" + offset + ") of " + entry.getKey() +
+                            " is out of range, the file may be truncated");
+                }
+            }
+            buffer = mapped;
+            offsets = tmpOffsets;
+            return true;
+        } catch (Throwable t) {
+            synchronized (recorded) {
+                dirty = true;
+            }
+            logger.warn("Ignore binary extension index " + file + ", will be rebuilt, cause: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    /**
+     * @return 扩展点的扩展定义；不在索引中，或索引文件损坏时返回<code>null</code>
+     */
+    List<ExtensionDefinition> get(String type) {
+        Integer offset = offsets.get(type);
+        if (offset == null) {
+            synchronized (recorded) {
+                return recorded.get(type);
+            }
+        }
+
+        try {
+            return decode(buffer.duplicate(), offset); // duplicate有独立的position，线程安全
+        } catch (RuntimeException e) {
+            discard(type, e);
+            return null;
+        }
+    }
+
+    private static List<ExtensionDefinition> decode(ByteBuffer buf, int offset) {
+        buf.position(offset);
+        int count = buf.getInt();
+        checkLength(buf, count);
+        List<ExtensionDefinition> definitions = new ArrayList<ExtensionDefinition>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = buf.get();
+            if (kind < 0 || kind >= KINDS.length) throw new IllegalStateException("invalid kind " + kind);
+            String[] names = new String[checkLength(buf, buf.getShort())];
+            for (int j = 0; j < names.length; j++) {
+                names[j] = readString(buf);
+            }
+            String className = readString(buf);
+            int attributeCount = checkLength(buf, buf.getShort());
+            Map<String, String> attributes = new LinkedHashMap<String, String>(attributeCount * 2);
+            for (int j = 0; j < attributeCount; j++) {
+                attributes.put(readString(buf), readString(buf));
+            }
+            definitions.add(new ExtensionDefinition(KINDS[kind], names, className, attributes));
+        }
+        return definitions;
+    }
+
+    /**
+     * 解码出错时丢弃整个映射的索引：之后所有扩展点都解析扩展配置文件，并重写索引文件。
+     */
+    private void discard(String type, Throwable t) {
+        synchronized (recorded) {
+            if (buffer == null) return;
+            dirty = true;
+            buffer = null;
+            offsets = Collections.emptyMap();
+        }
+        logger.warn("Binary extension index " + file + " is corrupted when read extension point " + type +
+                ", discarded and will be rebuilt, cause: " + t, t);
+    }
+
+    void put(String type, List<ExtensionDefinition> definitions) {
+        synchronized (recorded) {
+            recorded.put(type, new ArrayList<ExtensionDefinition>(definitions));
+            dirty = true;
+        }
+    }
+
+    /**
+     * 在后台线程中延迟写入索引文件，已经安排了的写入还没有执行时不再重复安排。
+     */
+    void saveLater(long delayMillis) {
+        if (!saveScheduled.compareAndSet(false, true)) return;
+        WRITER.schedule(new Runnable() {
+            public void run() {
+                saveScheduled.set(false);
+                save();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 有还没有写入的变化时，把索引中已有的和新加载的扩展点一起写入索引文件。
+     * <p/>
+     * 后台线程和JVM退出时的写入互斥，不会同时写临时文件。
+     */
+    synchronized void save() {
+        Map<String, List<ExtensionDefinition>> all = new LinkedHashMap<String, List<ExtensionDefinition>>();
+        synchronized (recorded) {
+            if (!dirty) return;
+            dirty = false;
+            for (String type : offsets.keySet()) {
+                List<ExtensionDefinition> definitions = get(type);
+                if (definitions != null) all.put(type, definitions);
+            }
+            all.putAll(recorded);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(all.size());
+
+            // 先写目录，再写扩展定义；目录中的偏移量先算出来
+            List<byte[]> blocks = new ArrayList<byte[]>(all.size());
+            int directorySize = 0;
+            for (Map.Entry<String, List<ExtensionDefinition>> entry : all.entrySet()) {
+                directorySize += 4 + entry.getKey().getBytes(UTF_8).length + 4;
+                blocks.add(encode(entry.getValue()));
+            }
+            int offset = out.size() + directorySize;
+            int i = 0;
+            for (String type : all.keySet()) {
+                writeString(out, type);
+                out.writeInt(offset);
+                offset += blocks.get(i++).length;
+            }
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+            out.flush();
+
+            // 先写临时文件再改名，其它JVM不会读到写了一半的索引
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Fail to create directory " + parent);
+            }
+            File tmp = new File(parent, file.getName() + ".tmp");
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                bytes.writeTo(fos);
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Fail to rename " + tmp + " to " + file);
+            }
+            logger.info("Saved " + all.size() + " extension points to binary extension index " + file);
+        } catch (Throwable t) {
+            synchronized (recorded) {
+                dirty = true; // JVM退出时再试一次
+            }
+            logger.warn("Fail to save binary extension index " + file + ", cause: " + t.getMessage(), t);
+        }
+    }
+
+    private static byte[] encode(List<ExtensionDefinition> definitions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(definitions.size());
+        for (ExtensionDefinition definition : definitions) {
+            out.writeByte(definition.getKind().ordinal());
+            out.writeShort(definition.names().length);
+            for (String name : definition.names()) {
+                writeString(out, name);
+            }
+            writeString(out, definition.getClassName());
+            out.writeShort(definition.getAttributes().size());
+            for (Map.Entry<String, String> entry : definition.getAttributes().entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 每一项至少1个字节，长度超过剩余的字节数的一定是损坏的数据。
+     */
+    private static int checkLength(ByteBuffer buf, int length) {
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalStateException("invalid length " + length + " at position " + buf.position());
+        }
+        return length;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[checkLength(buf, buf.getInt())];
+        buf.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // ==============================
+    // class path fingerprint
+    // ==============================
+
+    /**
+     * ClassPath中所有Jar（包括Jar的Manifest中Class-Path引用的Jar）的路径、大小和修改时间，
+     * 以及目录中扩展配置文件的大小和修改时间的Hash。
+     */
+    static long classPathFingerprint() {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        String classPath = System.getProperty("java.class.path", "");
+        List<File> entries = new ArrayList<File>();
+        for (String path : classPath.split(File.pathSeparator)) {
+            if (path.length() > 0) collectClassPathEntry(new File(path), entries);
+        }
+        for (File entry : entries) {
+            hash = fnv(hash, entry.getAbsolutePath());
+            if (entry.isDirectory()) {
+                for (String dir : new String[]{"META-INF/extensions", "META-INF/services"}) {
+                    File[] files = new File(entry, dir).listFiles();
+                    if (files == null) continue;
+                    for (File f : files) {
+                        hash = fnv(hash, f.getName() + ":" + f.length() + ":" + f.lastModified());
+                    }
+                }
+            } else {
+                hash = fnv(hash, entry.length() + ":" + entry.lastModified());
+            }
+        }
+        return hash;
+    }
+
+    private static void collectClassPathEntry(File file, List<File> entries) {
+        if (entries.contains(file)) return;
+        entries.add(file);
+        if (!file.isFile()) return;
+        try {
+            JarFile jar = new JarFile(file);
+            try {
+                Manifest manifest = jar.getManifest();
+                String classPath = manifest == null ? null : manifest.getMainAttributes().getValue("Class-Path");
+                if (classPath == null) return;
+                for (String path : classPath.trim().split("\\s+")) {
+                    if (path.length() == 0) continue;
+                    // Class-Path中是相对Jar所在目录的URL
+                    File f = path.startsWith("file:") ? new File(URI.create(path)) : new File(file.getParentFile(), path);
+                    collectClassPathEntry(f, entries);
+                }
+            } finally {
+                jar.close();
+            }
+        } catch (Throwable t) {
+            // 不是Jar包，只使用文件大小和修改时间
+        }
+    }
+
+    private static long fnv(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
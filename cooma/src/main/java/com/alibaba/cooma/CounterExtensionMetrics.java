@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按扩展点累加次数和耗时的{@link ExtensionMetrics}，扩展名<code>counter</code>。
+ * <p/>
+ * 计数用{@link LongAdder}，多个线程同时获取扩展时不会争用同一个计数。
+ * 计数通过{@link ClassValue}挂在扩展点接口上，不影响扩展点所在ClassLoader的回收。
+ * 通过{@link ExtensionLoader}获取这个扩展读取统计：
+ * <pre>
+ * CounterExtensionMetrics metrics = (CounterExtensionMetrics) ExtensionLoader.getExtensionLoader(ExtensionMetrics.class).getExtension("counter");
+ * metrics.getCounters(Car.class).getInstantiations();
+ * </pre>
+ *
+ * @since 0.4.1
+ */
+public class CounterExtensionMetrics implements ExtensionMetrics {
+    private final ClassValue<Counters> counters = new ClassValue<Counters>() {
+        @Override
+        protected Counters computeValue(Class<?> type) {
+            Counters c = new Counters();
+            synchronized (types) {
+                types.put(type, c);
+            }
+            return c;
+        }
+    };
+    // 统计过的扩展点，用于列出所有的计数
+    private final Map<Class<?>, Counters> types = new WeakHashMap<Class<?>, Counters>();
+
+    /**
+     * 一个扩展点的计数，各个值是读取时的累加结果，不是一个原子的快照。
+     */
+    public static final class Counters {
+        final LongAdder loads = new LongAdder();
+        final LongAdder loadNanos = new LongAdder();
+        final LongAdder classInits = new LongAdder();
+        final LongAdder classInitNanos = new LongAdder();
+        final LongAdder instantiations = new LongAdder();
+        final LongAdder instantiationNanos = new LongAdder();
+        final LongAdder injections = new LongAdder();
+        final LongAdder injectionNanos = new LongAdder();
+        final LongAdder wraps = new LongAdder();
+        final LongAdder wrapNanos = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder cacheMisses = new LongAdder();
+        final LongAdder poolHits = new LongAdder();
+        final LongAdder poolMisses = new LongAdder();
+        final LongAdder poolEvictions = new LongAdder();
+
+        Counters() {
+        }
+
+        public long getLoads() {
+            return loads.sum();
+        }
+
+        public long getLoadNanos() {
+            return loadNanos.sum();
+        }
+
+        public long getClassInits() {
+            return classInits.sum();
+        }
+
+        public long getClassInitNanos() {
+            return classInitNanos.sum();
+        }
+
+        public long getInstantiations() {
+            return instantiations.sum();
+        }
+
+        public long getInstantiationNanos() {
+            return instantiationNanos.sum();
+        }
+
+        public long getInjections() {
+            return injections.sum();
+        }
+
+        public long getInjectionNanos() {
+            return injectionNanos.sum();
+        }
+
+        public long getWraps() {
+            return wraps.sum();
+        }
+
+        public long getWrapNanos() {
+            return wrapNanos.sum();
+        }
+
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        public long getPoolHits() {
+            return poolHits.sum();
+        }
+
+        public long getPoolMisses() {
+            return poolMisses.sum();
+        }
+
+        public long getPoolEvictions() {
+            return poolEvictions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Counters(loads: " + getLoads() + ", loadNanos: " + getLoadNanos() +
+                    ", classInits: " + getClassInits() + ", classInitNanos: " + getClassInitNanos() +
+                    ", instantiations: " + getInstantiations() + ", instantiationNanos: " + getInstantiationNanos() +
+                    ", injections: " + getInjections() + ", injectionNanos: " + getInjectionNanos() +
+                    ", wraps: " + getWraps() + ", wrapNanos: " + getWrapNanos() +
+                    ", cacheHits: " + getCacheHits() + ", cacheMisses: " + getCacheMisses() +
+                    ", poolHits: " + getPoolHits() + ", poolMisses: " + getPoolMisses() +
+                    ", poolEvictions: " + getPoolEvictions() + ")";
+        }
+    }
+
+    /**
+     * @return 扩展点的计数，没有统计过返回<code>null</code>
+     */
+    public Counters getCounters(Class<?> type) {
+        synchronized (types) {
+            return types.get(type);
+        }
+    }
+
+    /**
+     * @return 所有统计过的扩展点的计数
+     */
+    public Map<Class<?>, Counters> getCounters() {
+        synchronized (types) {
+            return Collections.unmodifiableMap(new HashMap<Class<?>, Counters>(types));
+        }
+    }
+
+    private Counters counters(Class<?> type) {
+        return counters.get(type);
+    }
+
+    public void onLoad(Class<?> type, long nanos) {
+        Counters c = counters(type);
+        c.loads.increment();
+        c.loadNanos.add(nanos);
+    }
+
+    public void onClassInit(Class<?> type, Class<?> clazz, long nanos) {
+        Counters c = counters(type);
+        c.classInits.increment();
+        c.classInitNanos.add(nanos);
+    }
+
+    public void onInstantiate(Class<?> type, String name, long nanos) {
+        Counters c = counters(type);
+        c.instantiations.increment();
+        c.instantiationNanos.add(nanos);
+    }
+
+    public void onInject(Class<?> type, Class<?> clazz, long nanos) {
+        Counters c = counters(type);
+        c.injections.increment();
+        c.injectionNanos.add(nanos);
+    }
+
+    public void onWrap(Class<?> type, List<String> wrappers, long nanos) {
+        Counters c = counters(type);
+        c.wraps.increment();
+        c.wrapNanos.add(nanos);
+    }
+
+    public void onCacheHit(Class<?> type, String name) {
+        counters(type).cacheHits.increment();
+    }
+
+    public void onCacheMiss(Class<?> type, String name) {
+        counters(type).cacheMisses.increment();
+    }
+
+    public void onPoolHit(Class<?> type, String name) {
+        counters(type).poolHits.increment();
+    }
+
+    public void onPoolMiss(Class<?> type, String name) {
+        counters(type).poolMisses.increment();
+    }
+
+    public void onPoolEvict(Class<?> type, String name) {
+        counters(type).poolEvictions.increment();
+    }
+}
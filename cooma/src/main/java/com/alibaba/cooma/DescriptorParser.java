@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 扩展配置文件的解析器，一遍扫描复用的字符缓冲区，不使用正则表达式和中间的子串。
+ * <p/>
+ * 配置行的格式如<code>+name1,name2=com.foo.FooImpl(k1=v1,k2)</code>，<code>#</code>之后是注释。
+ * 语义和原来基于<code>String.indexOf</code>、<code>trim</code>、<code>split</code>的解析完全一致：
+ * <ul>
+ * <li>去掉注释后首尾的空白（<code>&lt;= ' '</code>的字符），空行忽略。
+ * <li>扩展名之间用<code>\s*,+\s*</code>分隔，末尾的空扩展名忽略。
+ * <li>扩展属性之间用<code>,</code>分隔，末尾的空属性忽略；每个属性去掉首尾空白，没有<code>=</code>的属性值是空字符串。
+ * </ul>
+ * 只在一个线程中使用。
+ *
+ * @since 0.4.1
+ */
+final class DescriptorParser {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    // 当前行在缓冲区中的位置，及去掉注释和首尾空白后的配置
+    private int lineStart;
+    private int lineEnd;
+    private int configStart;
+    private int configEnd;
+    private String line;
+
+    DescriptorParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读到下一个去掉注释后不是空行的配置行。
+     *
+     * @return 没有更多的配置行，返回<code>false</code>
+     */
+    boolean nextLine() throws IOException {
+        while (true) {
+            int scan = pos;
+            while (true) {
+                while (scan < limit && buf[scan] != '\n' && buf[scan] != '\r') scan++;
+                if (scan < limit || eof) break;
+                scan -= pos;
+                fill();
+                scan += pos;
+            }
+            if (scan == pos && scan == limit) return false;
+
+            int start = pos;
+            // 跳过行结束符；\r\n之间是一个空行，会被忽略
+            pos = scan < limit ? scan + 1 : scan;
+            if (trimConfig(start, scan)) {
+                lineStart = start;
+                lineEnd = scan;
+                line = null;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 把未处理的字符移到缓冲区开头，再读入更多字符。
+     */
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n < 0) eof = true;
+        else limit += n;
+    }
+
+    private boolean trimConfig(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == '#') {
+                end = i;
+                break;
+            }
+        }
+        while (start < end && buf[start] <= ' ') start++;
+        while (end > start && buf[end - 1] <= ' ') end--;
+        configStart = start;
+        configEnd = end;
+        return end > start;
+    }
+
+    /**
+     * @return 当前的配置行，包含注释
+     */
+    String getLine() {
+        if (line == null) line = new String(buf, lineStart, lineEnd - lineStart);
+        return line;
+    }
+
+    /**
+     * 解析当前的配置行。
+     *
+     * @throws IllegalStateException    配置行的格式不对
+     * @throws IllegalArgumentException 没有扩展名或实现类名
+     */
+    ExtensionDefinition parse() {
+        return parse(buf, configStart, configEnd);
+    }
+
+    /**
+     * 解析去掉了注释和首尾空白的配置。
+     */
+    static ExtensionDefinition parse(char[] cs, int start, int end) {
+        int eq = indexOf(cs, '=', start, end);
+        // 没有配置文件中没有扩展名，从实现类的Extension注解上读取。
+        if (eq <= start) {
+            throw new IllegalStateException(
+                    "missing extension name, config value: " + new String(cs, start, end - start));
+        }
+        int nameEnd = eq;
+        while (nameEnd > start && cs[nameEnd - 1] <= ' ') nameEnd--;
+
+        int bodyStart = eq + 1;
+        int bodyEnd = end;
+        int attributeStart = -1;
+        int attributeEnd = -1;
+        int paren = indexOf(cs, '(', eq + 1, end);
+        if (paren >= 0) {
+            if (cs[end - 1] != ')') {
+                throw new IllegalStateException(
+                        "missing ')' of extension attribute!");
+            }
+            bodyEnd = paren;
+            attributeStart = paren + 1;
+            attributeEnd = end - 1;
+        }
+        while (bodyStart < bodyEnd && cs[bodyStart] <= ' ') bodyStart++;
+        while (bodyEnd > bodyStart && cs[bodyEnd - 1] <= ' ') bodyEnd--;
+
+        ExtensionDefinition.Kind kind = ExtensionDefinition.Kind.EXTENSION;
+        int nameStart = start;
+        if (cs[start] == '*') {
+            kind = ExtensionDefinition.Kind.ADAPTIVE;
+            nameStart++;
+        } else if (cs[start] == '+') {
+            kind = ExtensionDefinition.Kind.WRAPPER;
+            nameStart++;
+        }
+
+        Map<String, String> attributes = attributeStart < 0 ? new HashMap<String, String>() :
+                parseAttributes(cs, attributeStart, attributeEnd);
+        return new ExtensionDefinition(kind, splitNames(cs, nameStart, nameEnd),
+                new String(cs, bodyStart, bodyEnd - bodyStart), attributes);
+    }
+
+    private static int indexOf(char[] cs, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (cs[i] == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 同<code>\s*,+\s*</code>的<code>Pattern.split</code>：分隔符前后的空白属于分隔符，保留开头的空扩展名，去掉末尾的空扩展名。
+     */
+    private static String[] splitNames(char[] cs, int start, int end) {
+        int count = 0;
+        int lastNonEmpty = 0;
+        for (int tokenStart = start; ; ) {
+            int sep = nextSeparator(cs, tokenStart, end);
+            int tokenEnd = sep < 0 ? end : separatorStart(cs, tokenStart, sep);
+            count++;
+            if (tokenEnd > tokenStart) lastNonEmpty = count;
+            if (sep < 0) break;
+            tokenStart = separatorEnd(cs, sep, end);
+        }
+        // 没有分隔符时是整个输入，即使是空的
+        if (count == 1) return new String[]{new String(cs, start, end - start)};
+
+        String[] names = new String[lastNonEmpty];
+        int i = 0;
+        for (int tokenStart = start; i < names.length; ) {
+            int sep = nextSeparator(cs, tokenStart, end);
+            int tokenEnd = sep < 0 ? end : separatorStart(cs, tokenStart, sep);
+            names[i++] = new String(cs, tokenStart, tokenEnd - tokenStart);
+            if (sep < 0) break;
+            tokenStart = separatorEnd(cs, sep, end);
+        }
+        return names;
+    }
+
+    private static int nextSeparator(char[] cs, int start, int end) {
+        return indexOf(cs, ',', start, end);
+    }
+
+    private static int separatorStart(char[] cs, int tokenStart, int comma) {
+        while (comma > tokenStart && isRegexSpace(cs[comma - 1])) comma--;
+        return comma;
+    }
+
+    private static int separatorEnd(char[] cs, int comma, int end) {
+        while (comma < end && cs[comma] == ',') comma++;
+        while (comma < end && isRegexSpace(cs[comma])) comma++;
+        return comma;
+    }
+
+    /**
+     * 正则表达式中的<code>\s</code>
+     */
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * <code>"attrib1=value1,attrib2=value2,isProvider,order=3"</code>的解析，同{@link ExtensionLoader#parseExtAttribute(String)}。
+     */
+    static Map<String, String> parseAttributes(char[] cs, int start, int end) {
+        Map<String, String> ret = new HashMap<String, String>();
+        if (end <= start) return ret;
+
+        // 同String.split：去掉末尾的空属性
+        while (end > start && cs[end - 1] == ',') end--;
+        if (end == start) return ret;
+
+        for (int partStart = start; ; ) {
+            int comma = indexOf(cs, ',', partStart, end);
+            int partEnd = comma < 0 ? end : comma;
+            putAttribute(ret, cs, partStart, partEnd);
+            if (comma < 0) break;
+            partStart = comma + 1;
+        }
+        return ret;
+    }
+
+    private static void putAttribute(Map<String, String> attributes, char[] cs, int start, int end) {
+        while (start < end && cs[start] <= ' ') start++;
+        while (end > start && cs[end - 1] <= ' ') end--;
+        int eq = indexOf(cs, '=', start, end);
+        if (eq > start) {
+            int keyEnd = eq;
+            while (keyEnd > start && cs[keyEnd - 1] <= ' ') keyEnd--;
+            int valueStart = eq + 1;
+            while (valueStart < end && cs[valueStart] <= ' ') valueStart++;
+            attributes.put(new String(cs, start, keyEnd - start), new String(cs, valueStart, end - valueStart));
+        } else {
+            attributes.put(new String(cs, start, end - start), "");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监视目录中的扩展配置文件，文件修改后重新加载对应的{@link ExtensionLoader}。
+ * <p/>
+ * 只在系统属性<code>cooma.watch</code>设置为<code>true</code>时启用；只监视<code>file:</code>的配置文件，Jar包中的配置文件不监视。
+ * 所有目录共用一个{@link WatchService}和一个守护线程，重新加载在这个线程上进行，获取扩展的线程不会阻塞。
+ * 文件可能还没有写完就收到修改事件，等到{@value #QUIET_MILLIS}ms内没有新的事件后才重新加载。
+ * 弱引用{@link ExtensionLoader}，不阻止其ClassLoader的回收。
+ *
+ * @since 0.4.1
+ */
+final class DescriptorWatcher implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(DescriptorWatcher.class);
+
+    static final String ENABLED_PROPERTY = "cooma.watch";
+
+    static final long QUIET_MILLIS = 200;
+
+    private static WatchService watchService;
+    private static final Set<Path> WATCHED_DIRECTORIES = new HashSet<Path>();
+    // Map<descriptor-file, loaders>
+    private static final Map<Path, List<WeakReference<ExtensionLoader<?>>>> LOADERS =
+            new HashMap<Path, List<WeakReference<ExtensionLoader<?>>>>();
+
+    /**
+     * 登记从配置文件加载的{@link ExtensionLoader}，没有启用监视或不是目录中的配置文件时忽略。
+     */
+    static void watch(ExtensionLoader<?> loader, URL url) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY) || !"file".equals(url.getProtocol())) return;
+        try {
+            watch(loader, Paths.get(url.toURI()).toAbsolutePath());
+        } catch (Throwable t) {
+            logger.warn("Fail to watch extension config file " + url + ", ignored, cause: " + t.getMessage(), t);
+        }
+    }
+
+    private static synchronized void watch(ExtensionLoader<?> loader, Path file) throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(new DescriptorWatcher(), "cooma-descriptor-watcher");
+            thread.setDaemon(true);
+            // 不挂住启动监视的线程的上下文ClassLoader
+            thread.setContextClassLoader(DescriptorWatcher.class.getClassLoader());
+            thread.start();
+        }
+        Path directory = file.getParent();
+        if (WATCHED_DIRECTORIES.add(directory)) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        List<WeakReference<ExtensionLoader<?>>> loaders = LOADERS.get(file);
+        if (loaders == null) {
+            loaders = new ArrayList<WeakReference<ExtensionLoader<?>>>();
+            LOADERS.put(file, loaders);
+        }
+        for (Iterator<WeakReference<ExtensionLoader<?>>> it = loaders.iterator(); it.hasNext(); ) {
+            ExtensionLoader<?> l = it.next().get();
+            if (l == null) it.remove();
+            else if (l == loader) return;
+        }
+        loaders.add(new WeakReference<ExtensionLoader<?>>(loader));
+    }
+
+    /**
+     * @return 配置文件对应的{@link ExtensionLoader}，同时清理已经回收的
+     */
+    private static synchronized List<ExtensionLoader<?>> getLoaders(Path file) {
+        List<ExtensionLoader<?>> ret = new ArrayList<ExtensionLoader<?>>();
+        List<WeakReference<ExtensionLoader<?>>> loaders = LOADERS.get(file);
+        if (loaders == null) return ret;
+        for (Iterator<WeakReference<ExtensionLoader<?>>> it = loaders.iterator(); it.hasNext(); ) {
+            ExtensionLoader<?> loader = it.next().get();
+            if (loader == null) it.remove();
+            else ret.add(loader);
+        }
+        if (loaders.isEmpty()) LOADERS.remove(file);
+        return ret;
+    }
+
+    /**
+     * 一批事件中修改了的配置文件。事件溢出（{@link StandardWatchEventKinds#OVERFLOW}）时丢失了事件，不知道哪些文件修改了，
+     * 返回这个目录中所有登记了的配置文件。
+     */
+    static synchronized Set<Path> getChangedFiles(Path directory, List<WatchEvent<?>> events) {
+        Set<Path> changed = new HashSet<Path>();
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (Path file : LOADERS.keySet()) {
+                    if (directory.equals(file.getParent())) changed.add(file);
+                }
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        return changed;
+    }
+
+    public void run() {
+        while (true) {
+            // 编辑器保存一个文件可能产生多个事件，一直到事件停下来，期间修改的文件只重新加载一次
+            Set<Path> changed = new HashSet<Path>();
+            try {
+                WatchKey key = watchService.take();
+                do {
+                    Path directory = (Path) key.watchable();
+                    changed.addAll(getChangedFiles(directory, key.pollEvents()));
+                    if (!key.reset()) {
+                        synchronized (DescriptorWatcher.class) {
+                            WATCHED_DIRECTORIES.remove(directory);
+                        }
+                    }
+                } while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            for (Path file : changed) {
+                for (ExtensionLoader<?> loader : getLoaders(file)) {
+                    try {
+                        loader.reload();
+                    } catch (Throwable t) {
+                        logger.error("Fail to reload " + loader + " after " + file + " changed, cause: " + t.getMessage(), t);
+                    }
+                }
+            }
+        }
+    }
+
+    private DescriptorWatcher() {
+    }
+}
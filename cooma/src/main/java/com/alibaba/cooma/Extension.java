@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把一个接口标识成扩展点。
+ * <p/>
+ * 没有此注释的接口{@link ExtensionLoader}会拒绝接管。
+ *
+ * @see ExtensionLoader
+ * @since 0.1.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Extension {
+
+    /**
+     * the default extension name.
+     *
+     * @since 0.1.0
+     */
+    String value() default "";
+
+    /**
+     * 是否延迟加载扩展实现类。
+     * <p/>
+     * 延迟加载时，只在第一次获取某个扩展时才加载和初始化这个扩展的实现类，
+     * 配置了但没有使用的实现类不会被加载。
+     * 也可以通过系统属性<code>-Dcooma.lazy=true</code>让所有扩展点延迟加载。
+     *
+     * @since 0.4.1
+     */
+    boolean lazy() default false;
+
+    /**
+     * 扩展属性中没有配置<code>scope</code>的扩展实例的作用域：
+     * <ul>
+     * <li><code>singleton</code>：单例，缺省值。
+     * <li><code>prototype</code>：每次获取新建实例。
+     * <li><code>thread</code>：每个线程一个实例。
+     * <li><code>striped</code>：按CPU数分成多个实例，线程分散到各个实例上，适合有状态、并发竞争激烈的扩展。
+     * <li><code>pool</code>：对象池，通过{@link ExtensionLoader#borrowExtension(String)}借出和归还。
+     * </ul>
+     * 扩展配置中的<code>scope</code>属性优先，如<code>impl=com.foo.Impl(scope=striped)</code>。
+     *
+     * @since 0.4.1
+     */
+    String scope() default "singleton";
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 一个扩展的扩展属性，属性值在扩展点加载时解析一次。
+ * <p/>
+ * 属性按属性名排序存放在数组中，整数、布尔值和时长在加载时解析好，读取时不再解析字符串：
+ * <ul>
+ * <li>整数：如<code>order=3</code>，用{@link #getInt}、{@link #getLong}读取。
+ * <li>布尔值：<code>true</code>、<code>false</code>（不区分大小写），没有值的属性（如<code>isProvider</code>）是<code>true</code>。
+ * <li>时长：整数加单位<code>ns</code>、<code>us</code>、<code>ms</code>、<code>s</code>、<code>m</code>、<code>h</code>、<code>d</code>，
+ * 如<code>timeout=500ms</code>；没有单位的整数是毫秒。
+ * </ul>
+ * 读取的属性值不是要求的类型时抛出{@link IllegalStateException}。
+ *
+ * @see ExtensionLoader#getExtensionAttributes(String)
+ * @since 0.4.1
+ */
+public final class ExtensionAttributes {
+    private static final Pattern LONG_PATTERN = Pattern.compile("[-+]?\\d+");
+    private static final Pattern DURATION_PATTERN = Pattern.compile("([-+]?\\d+)\\s*(ns|us|ms|s|m|h|d)");
+
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte DURATION = 2;
+    private static final byte TRUE = 3;
+    private static final byte FALSE = 4;
+
+    private final String[] keys;
+    private final String[] values;
+    private final byte[] kinds;
+    // 整数值，或是时长的纳秒数
+    private final long[] numbers;
+
+    ExtensionAttributes(Map<String, String> attributes) {
+        keys = attributes.keySet().toArray(new String[attributes.size()]);
+        Arrays.sort(keys);
+        values = new String[keys.length];
+        kinds = new byte[keys.length];
+        numbers = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            String value = attributes.get(keys[i]);
+            values[i] = value;
+            parse(i, value.trim());
+        }
+    }
+
+    private void parse(int i, String value) {
+        if (value.length() == 0 || "true".equalsIgnoreCase(value)) {
+            kinds[i] = TRUE;
+        } else if ("false".equalsIgnoreCase(value)) {
+            kinds[i] = FALSE;
+        } else if (LONG_PATTERN.matcher(value).matches()) {
+            try {
+                numbers[i] = Long.parseLong(value);
+                kinds[i] = LONG;
+            } catch (NumberFormatException e) {
+                kinds[i] = STRING; // 超出long的范围
+            }
+        } else {
+            Matcher matcher = DURATION_PATTERN.matcher(value);
+            if (matcher.matches()) {
+                try {
+                    numbers[i] = toUnit(matcher.group(2)).toNanos(Long.parseLong(matcher.group(1)));
+                    kinds[i] = DURATION;
+                } catch (NumberFormatException e) {
+                    kinds[i] = STRING;
+                }
+            }
+        }
+    }
+
+    private static TimeUnit toUnit(String unit) {
+        if ("ns".equals(unit)) return TimeUnit.NANOSECONDS;
+        if ("us".equals(unit)) return TimeUnit.MICROSECONDS;
+        if ("ms".equals(unit)) return TimeUnit.MILLISECONDS;
+        if ("s".equals(unit)) return TimeUnit.SECONDS;
+        if ("m".equals(unit)) return TimeUnit.MINUTES;
+        if ("h".equals(unit)) return TimeUnit.HOURS;
+        return TimeUnit.DAYS;
+    }
+
+    private int indexOf(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("key == null");
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * 是否有指定的属性。
+     */
+    public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return 属性的原始值，没有这个属性返回<code>null</code>
+     */
+    public String getString(String key) {
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    /**
+     * @return 属性的整数值，没有这个属性返回<code>defaultValue</code>
+     * @throws IllegalStateException 属性值不是<code>int</code>范围内的整数
+     */
+    public int getInt(String key, int defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) return defaultValue;
+        if (kinds[i] != LONG || numbers[i] != (int) numbers[i]) throw typeMismatch(i, "an int");
+        return (int) numbers[i];
+    }
+
+    /**
+     * @return 属性的整数值，没有这个属性返回<code>defaultValue</code>
+     * @throws IllegalStateException 属性值不是整数
+     */
+    public long getLong(String key, long defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) return defaultValue;
+        if (kinds[i] != LONG) throw typeMismatch(i, "a long");
+        return numbers[i];
+    }
+
+    /**
+     * @return 属性的布尔值，没有这个属性返回<code>defaultValue</code>；有属性但没有值返回<code>true</code>
+     * @throws IllegalStateException 属性值不是布尔值
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) return defaultValue;
+        if (kinds[i] == TRUE) return true;
+        if (kinds[i] == FALSE) return false;
+        throw typeMismatch(i, "a boolean");
+    }
+
+    /**
+     * @param unit 返回的时长的单位
+     * @return 属性的时长，没有这个属性返回<code>defaultValue</code>
+     * @throws IllegalStateException 属性值不是时长
+     */
+    public long getDuration(String key, TimeUnit unit, long defaultValue) {
+        if (unit == null)
+            throw new IllegalArgumentException("unit == null");
+        int i = indexOf(key);
+        if (i < 0) return defaultValue;
+        if (kinds[i] == LONG) return unit.convert(numbers[i], TimeUnit.MILLISECONDS);
+        if (kinds[i] == DURATION) return unit.convert(numbers[i], TimeUnit.NANOSECONDS);
+        throw typeMismatch(i, "a duration");
+    }
+
+    /**
+     * 按枚举常量的名字读取属性值，不区分大小写。
+     *
+     * @return 属性的枚举值，没有这个属性返回<code>defaultValue</code>
+     * @throws IllegalStateException 属性值不是枚举常量的名字
+     */
+    public <E extends Enum<E>> E getEnum(String key, Class<E> enumType, E defaultValue) {
+        if (enumType == null)
+            throw new IllegalArgumentException("enumType == null");
+        int i = indexOf(key);
+        if (i < 0) return defaultValue;
+        String value = values[i].trim();
+        for (E e : enumType.getEnumConstants()) {
+            if (e.name().equalsIgnoreCase(value)) return e;
+        }
+        throw typeMismatch(i, "one of " + Arrays.toString(enumType.getEnumConstants()));
+    }
+
+    /**
+     * @return 属性名到属性原始值的不可修改的Map
+     */
+    public Map<String, String> asMap() {
+        Map<String, String> ret = new LinkedHashMap<String, String>();
+        for (int i = 0; i < keys.length; i++) {
+            ret.put(keys[i], values[i]);
+        }
+        return Collections.unmodifiableMap(ret);
+    }
+
+    private IllegalStateException typeMismatch(int i, String type) {
+        return new IllegalStateException("attribute " + keys[i] + "(" + values[i] + ") is not " + type + "!");
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一个扩展的定义，即扩展配置文件中的一行：扩展名、实现类名和扩展属性。
+ * <p/>
+ * 扩展配置文件和{@link ExtensionIndex}都被解析成扩展定义，再由{@link ExtensionLoader}加载。
+ *
+ * @see ExtensionIndex
+ * @since 0.4.1
+ */
+public final class ExtensionDefinition {
+    /**
+     * 扩展定义的种类。
+     *
+     * @since 0.4.1
+     */
+    public enum Kind {
+        /**
+         * 扩展，配置行<code>name=class</code>。
+         */
+        EXTENSION,
+        /**
+         * Wrapper，配置行<code>+name=class</code>。
+         */
+        WRAPPER,
+        /**
+         * Adaptive类，配置行<code>*name=class</code>。
+         */
+        ADAPTIVE
+    }
+
+    private final Kind kind;
+    private final String[] names;
+    private final String className;
+    private final Map<String, String> attributes;
+
+    /**
+     * @param kind       扩展定义的种类
+     * @param names      扩展名，一个实现类可以有多个扩展名
+     * @param className  实现类的类名
+     * @param attributes 扩展属性
+     */
+    public ExtensionDefinition(Kind kind, String[] names, String className, Map<String, String> attributes) {
+        if (kind == null)
+            throw new IllegalArgumentException("kind == null");
+        if (names == null || names.length == 0)
+            throw new IllegalArgumentException("names is empty");
+        if (className == null || className.length() == 0)
+            throw new IllegalArgumentException("className is empty");
+
+        this.kind = kind;
+        this.names = names.clone();
+        this.className = className;
+        this.attributes = attributes == null ? Collections.<String, String>emptyMap() :
+                Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+    }
+
+    /**
+     * <code>attributes("k1", "v1", "k2", "")</code> => <code>{"k1"="v1", "k2"=""}</code>，方便生成的{@link ExtensionIndex}代码使用。
+     */
+    public static Map<String, String> attributes(String... keyValues) {
+        if (keyValues.length % 2 != 0)
+            throw new IllegalArgumentException("keyValues should be key-value pairs: " + Arrays.toString(keyValues));
+
+        Map<String, String> ret = new LinkedHashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            ret.put(keyValues[i], keyValues[i + 1]);
+        }
+        return ret;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    String[] names() {
+        return names;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 返回对应的配置行，如<code>+name1,name2=com.foo.FooImpl(k1=v1,k2)</code>。
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        if (kind == Kind.WRAPPER) buf.append('+');
+        else if (kind == Kind.ADAPTIVE) buf.append('*');
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) buf.append(',');
+            buf.append(names[i]);
+        }
+        buf.append('=').append(className);
+        if (!attributes.isEmpty()) {
+            buf.append('(');
+            boolean first = true;
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                if (!first) buf.append(',');
+                first = false;
+                buf.append(entry.getKey());
+                if (entry.getValue().length() > 0) buf.append('=').append(entry.getValue());
+            }
+            buf.append(')');
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把一个类标识成扩展点实现，等价于扩展配置文件中的一行。
+ * <p/>
+ * 只在编译期由<code>cooma-processor</code>读取，生成{@link ExtensionIndex}；
+ * 实现类实现的所有有{@link Extension}注解的接口，都会注册这个实现。
+ *
+ * @see ExtensionIndex
+ * @since 0.4.1
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE})
+public @interface ExtensionImpl {
+
+    /**
+     * 扩展名，多个扩展名用逗号分隔。
+     *
+     * @since 0.4.1
+     */
+    String value();
+
+    /**
+     * 扩展定义的种类。
+     *
+     * @since 0.4.1
+     */
+    ExtensionDefinition.Kind kind() default ExtensionDefinition.Kind.EXTENSION;
+
+    /**
+     * 扩展属性，每一项为<code>key=value</code>或<code>key</code>。
+     *
+     * @since 0.4.1
+     */
+    String[] attributes() default {};
+
+}
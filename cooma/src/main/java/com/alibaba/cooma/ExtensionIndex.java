@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译期生成的扩展索引，由<code>cooma-processor</code>根据{@link ExtensionImpl}注解生成。
+ * <p/>
+ * 通过<code>META-INF/services/com.alibaba.cooma.ExtensionIndex</code>注册，
+ * 启动时一次性读取所有索引；在索引中的扩展点，{@link ExtensionLoader}不再查找和解析扩展配置文件，
+ * 不在索引中的扩展点仍然从<code>META-INF/extensions/</code>下的配置文件加载。
+ * <p/>
+ * 设置系统属性<code>-Dcooma.index.enabled=false</code>可以忽略索引。
+ *
+ * @see ExtensionImpl
+ * @since 0.4.1
+ */
+public interface ExtensionIndex {
+    /**
+     * 返回索引中的扩展定义。
+     *
+     * @return Map&lt;扩展点接口名, 扩展定义列表&gt;
+     */
+    Map<String, List<ExtensionDefinition>> getDefinitions();
+}
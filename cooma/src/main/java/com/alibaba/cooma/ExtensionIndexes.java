@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 读取并合并ClassLoader上所有的{@link ExtensionIndex}。
+ * <p/>
+ * 每个ClassLoader只读取一次；缓存的只是扩展定义，不引用索引实现类，不会阻止ClassLoader的回收。
+ * <p/>
+ * 索引只代替所在的Jar包（或目录）中的扩展配置文件：同一个扩展点在没有索引的Jar包中的配置文件仍然要读取，
+ * 如没有用<code>cooma-processor</code>编译的Jar包、手写的配置文件。
+ *
+ * @since 0.4.1
+ */
+final class ExtensionIndexes {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionIndexes.class);
+
+    static final String ENABLED_PROPERTY = "cooma.index.enabled";
+
+    static final String SERVICE_FILE = "META-INF/services/" + ExtensionIndex.class.getName();
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+    private static final Map<ClassLoader, Index> INDEXES = new WeakHashMap<ClassLoader, Index>();
+
+    /**
+     * 一个ClassLoader上合并后的索引。
+     */
+    private static final class Index {
+        // Map<extension-point-name, definitions>
+        final Map<String, List<ExtensionDefinition>> definitions = new HashMap<String, List<ExtensionDefinition>>();
+        // Map<extension-point-name, 提供了这个扩展点的索引的Jar包（或目录）的URL>
+        final Map<String, Set<String>> roots = new HashMap<String, Set<String>>();
+    }
+
+    /**
+     * @return 索引中扩展点的扩展定义，扩展点不在索引中返回<code>null</code>。
+     */
+    static List<ExtensionDefinition> find(ClassLoader classLoader, String type) {
+        if (!ENABLED) return null;
+        return getIndex(classLoader).definitions.get(type);
+    }
+
+    /**
+     * @param descriptor 扩展点的配置文件
+     * @param fileName   配置文件在ClassLoader中的资源名
+     * @return 配置文件所在的Jar包（或目录）有这个扩展点的索引，不用再读取配置文件
+     */
+    static boolean covers(ClassLoader classLoader, String type, URL descriptor, String fileName) {
+        if (!ENABLED) return false;
+        Set<String> roots = getIndex(classLoader).roots.get(type);
+        return roots != null && roots.contains(root(descriptor, fileName));
+    }
+
+    /**
+     * @return 索引中所有扩展点的类名
+     */
+    static Set<String> types(ClassLoader classLoader) {
+        if (!ENABLED) return Collections.emptySet();
+        return getIndex(classLoader).definitions.keySet();
+    }
+
+    private static synchronized Index getIndex(ClassLoader classLoader) {
+        Index index = INDEXES.get(classLoader);
+        if (index == null) {
+            index = loadIndex(classLoader);
+            INDEXES.put(classLoader, index);
+        }
+        return index;
+    }
+
+    private static Index loadIndex(ClassLoader classLoader) {
+        Index index = new Index();
+        Iterator<ExtensionIndex> iterator = ServiceLoader.load(ExtensionIndex.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) break;
+            } catch (ServiceConfigurationError e) {
+                logger.error("Fail to find extension index, ignored, cause: " + e.getMessage(), e);
+                break;
+            }
+            try {
+                ExtensionIndex extensionIndex = iterator.next();
+                String root = root(extensionIndex.getClass());
+                for (Map.Entry<String, List<ExtensionDefinition>> entry : extensionIndex.getDefinitions().entrySet()) {
+                    List<ExtensionDefinition> definitions = index.definitions.get(entry.getKey());
+                    if (definitions == null) {
+                        definitions = new ArrayList<ExtensionDefinition>();
+                        index.definitions.put(entry.getKey(), definitions);
+                        index.roots.put(entry.getKey(), new HashSet<String>());
+                    }
+                    definitions.addAll(entry.getValue());
+                    if (root != null) index.roots.get(entry.getKey()).add(root);
+                }
+                logger.debug("Loaded extension index " + extensionIndex.getClass().getName());
+            } catch (Throwable t) {
+                logger.error("Fail to load extension index, ignored, cause: " + t.getMessage(), t);
+            }
+        }
+        for (Map.Entry<String, List<ExtensionDefinition>> entry : index.definitions.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return index;
+    }
+
+    /**
+     * @return 索引类所在的Jar包（或目录）的URL，找不到返回<code>null</code>，这时不跳过任何配置文件
+     */
+    private static String root(Class<?> indexClass) {
+        String resource = indexClass.getName().replace('.', '/') + ".class";
+        ClassLoader classLoader = indexClass.getClassLoader();
+        URL url = classLoader == null ? ClassLoader.getSystemResource(resource) : classLoader.getResource(resource);
+        return url == null ? null : root(url, resource);
+    }
+
+    private static String root(URL url, String resource) {
+        String s = url.toString();
+        return s.endsWith(resource) ? s.substring(0, s.length() - resource.length()) : null;
+    }
+
+    static synchronized void release(ClassLoader classLoader) {
+        INDEXES.remove(classLoader);
+    }
+
+    private ExtensionIndexes() {
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+/**
+ * 借出的扩展实例，用完后关闭归还，配合<code>try-with-resources</code>使用：
+ * <pre>
+ * try (ExtensionLease&lt;Parser&gt; lease = loader.borrowExtension("json")) {
+ *     lease.get().parse(text);
+ * }
+ * </pre>
+ * <code>scope=pool</code>的扩展关闭时把实例放回池中；其它作用域的扩展关闭时什么也不做。
+ * <p/>
+ * 不是线程安全的，只在借出的线程上使用；关闭之后不能再使用借出的实例。
+ *
+ * @see ExtensionLoader#borrowExtension(String)
+ * @since 0.4.1
+ */
+public final class ExtensionLease<T> implements AutoCloseable {
+    private final T extension;
+    // 不是pool作用域时为null
+    private final InstanceScope.Pooled<T> pool;
+    private boolean closed;
+
+    ExtensionLease(T extension, InstanceScope.Pooled<T> pool) {
+        this.extension = extension;
+        this.pool = pool;
+    }
+
+    /**
+     * @throws IllegalStateException 已经关闭
+     */
+    public T get() {
+        if (closed) throw new IllegalStateException("Extension lease is closed!");
+        return extension;
+    }
+
+    /**
+     * 归还实例，重复关闭时什么也不做。
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (pool != null) pool.release(extension);
+    }
+}
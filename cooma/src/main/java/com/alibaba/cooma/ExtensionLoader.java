@@ -0,0 +1,1684 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.internal.adaptive.AdaptiveDispatcher;
+import com.alibaba.cooma.internal.adaptive.AdaptiveExtensions;
+import com.alibaba.cooma.internal.instantiation.Instantiators;
+import com.alibaba.cooma.internal.jfr.ExtensionEvents;
+import com.alibaba.cooma.internal.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 加载和管理扩展。
+ * <p/>
+ * <ul>
+ * <li>管理的扩展实例缺省是<b>单例</b>；扩展属性<code>scope</code>或{@link Extension#scope()}可以选择其它作用域：
+ * <code>prototype</code>每次获得时新建实例，<code>thread</code>每个线程一个实例，<code>striped</code>按CPU数分片，
+ * <code>pool</code>通过{@link #borrowExtension(String)}从对象池借出。
+ * <li>Wrapper实例每次获得扩展实例重新创建，并Wrap到扩展实例上。
+ * </ul>
+ *
+ * @see Extension
+ * @see <a href="http://java.sun.com/j2se/1.5.0/docs/guide/jar/jar.html#Service%20Provider">Service implementation of JDK5</a>
+ * @since 0.1.0
+ */
+public class ExtensionLoader<T> {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionLoader.class);
+
+    static final String EXTENSION_CONF_DIRECTORY = "META-INF/extensions/";
+
+    private static final String PREFIX_ADAPTIVE_CLASS = "*";
+
+    // 自适应扩展实例在实例缓存中的Key，不是合法的扩展名
+    private static final String ADAPTIVE_INSTANCE_KEY = PREFIX_ADAPTIVE_CLASS;
+
+    private static final String ATTRIBUTE_SCOPE = "scope";
+
+    private static final String ATTRIBUTE_ORDER = "order";
+
+    // 缓存的getActivatedExtensions条件个数的上限，超过后不再缓存新的条件
+    private static final int MAX_CACHED_ACTIVATIONS = 64;
+
+    private static final Pattern NAME_SEPARATOR = Pattern.compile("\\s*,+\\s*");
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
+
+    // JFR事件，没有JFR的JVM上不做任何事；有JFR但没有开启记录时不创建事件
+    private static final ExtensionEvents events = ExtensionEvents.get();
+
+    /**
+     * 系统属性，设置为<code>true</code>时所有扩展点都延迟加载扩展实现类。
+     *
+     * @see Extension#lazy()
+     */
+    static final String LAZY_PROPERTY = "cooma.lazy";
+
+    /**
+     * 系统属性，设置成{@link ExtensionMetrics}的扩展名时开启统计，如<code>-Dcooma.metrics=counter</code>。
+     *
+     * @see ExtensionMetrics
+     */
+    static final String METRICS_PROPERTY = "cooma.metrics";
+
+    // 没有开启统计时为null，各统计点只多一个判断。
+    // 最后初始化：加载统计扩展时用到的静态字段都已经初始化，加载期间这里还是null，统计扩展自身的加载不统计
+    private static final ExtensionMetrics metrics = loadMetrics();
+
+    private static ExtensionMetrics loadMetrics() {
+        String name = System.getProperty(METRICS_PROPERTY);
+        if (name == null || name.trim().length() == 0) return null;
+        try {
+            return ExtensionLoaderRegistry.get(ExtensionMetrics.class, ExtensionMetrics.class.getClassLoader()).getExtension(name.trim());
+        } catch (Throwable t) {
+            logger.error("Fail to load extension metrics(" + name + "), metrics is disabled.", t);
+            return null;
+        }
+    }
+
+    /**
+     * {@link ExtensionLoader}的工厂方法。
+     * <p/>
+     * 返回当前线程上下文ClassLoader下的{@link ExtensionLoader}，从这个ClassLoader查找扩展配置和加载扩展实现类。
+     *
+     * @param type 扩展点接口类型
+     * @param <T>  扩展点类型
+     * @return {@link ExtensionLoader}实例
+     * @throws IllegalArgumentException 参数为<code>null</code>；
+     *                                  或是扩展点接口上没有{@link Extension}注解。
+     * @since 0.1.0
+     */
+    public static <T> ExtensionLoader<T> getExtensionLoader(Class<T> type) {
+        if (type == null)
+            throw new IllegalArgumentException("Extension type == null");
+
+        // 没有线程上下文ClassLoader时（如JNI attach的线程），使用扩展点自己的ClassLoader
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return ExtensionLoaderRegistry.get(type, classLoader == null ? type.getClassLoader() : classLoader);
+    }
+
+    /**
+     * 释放指定ClassLoader下的所有{@link ExtensionLoader}，及其缓存的扩展实例。
+     * <p/>
+     * 扩展点在每个ClassLoader（线程上下文ClassLoader）下有各自的{@link ExtensionLoader}。
+     * ClassLoader不再使用后，其下的{@link ExtensionLoader}会随ClassLoader一起回收；
+     * 如重新部署插件时，可以调用这个方法确定性的释放，之后再获取会创建新的{@link ExtensionLoader}。
+     *
+     * @param classLoader 要释放的ClassLoader
+     * @since 0.4.1
+     */
+    public static void release(ClassLoader classLoader) {
+        ExtensionLoaderRegistry.release(classLoader);
+    }
+
+    /**
+     * 并行预加载扩展点，加载扩展配置和扩展实现类。
+     * <p/>
+     * 用于在启动时预热用到的扩展点，避免在第一次使用时（如第一个请求的处理线程上）串行加载大量扩展点。
+     * 延迟加载的扩展点（{@link Extension#lazy()}）只加载扩展配置。
+     * 加载失败的扩展点只记录日志，在使用时报错。
+     *
+     * @param types              扩展点接口类型
+     * @param instantiateDefault 是否同时创建有缺省扩展的扩展点的缺省扩展实例
+     * @return 预加载成功的扩展点
+     * @since 0.4.1
+     */
+    public static Set<Class<?>> preload(Collection<Class<?>> types, boolean instantiateDefault) {
+        if (types == null)
+            throw new IllegalArgumentException("types == null");
+        return ExtensionPreloader.preload(types, instantiateDefault);
+    }
+
+    /**
+     * 并行预加载ClassPath上所有的扩展点：扩展索引中的扩展点，及<code>META-INF/extensions/</code>目录下有配置文件的扩展点。
+     *
+     * @param instantiateDefault 是否同时创建有缺省扩展的扩展点的缺省扩展实例
+     * @return 预加载成功的扩展点
+     * @see #preload(Collection, boolean)
+     * @since 0.4.1
+     */
+    public static Set<Class<?>> preloadAll(boolean instantiateDefault) {
+        return preload(ExtensionPreloader.findExtensionTypes(getClassLoader()), instantiateDefault);
+    }
+
+    public T getExtension(String name) {
+        if (StringUtils.isEmpty(name))
+            throw new IllegalArgumentException("Extension name == null");
+        return getCachedExtension(getSnapshot(), name);
+    }
+
+    public T getExtension(String name, Map<String, String> properties) {
+        if (StringUtils.isEmpty(name))
+            throw new IllegalArgumentException("Extension name == null");
+        return getExtension(name, properties, Collections.<String>emptyList());
+    }
+
+    public T getExtension(Map<String, String> properties) {
+        String name = properties == null ? null : properties.get(type.getName()); // FIXME 使用类名作为Key，这里Hard Code了逻辑！
+        if (StringUtils.isEmpty(name)) {
+            name = defaultExtension;
+        }
+        return getExtension(name, properties, Collections.<String>emptyList());
+    }
+
+    public T getExtension(String name, List<String> wrappers) {
+        if (wrappers == null) {
+            throw new IllegalArgumentException("wrappers == null");
+        }
+        return getExtension(name, Collections.<String, String>emptyMap(), wrappers);
+    }
+
+    /**
+     * 返回指定名字的扩展。
+     * <p/>
+     * 没有指定<code>properties</code>（空或<code>null</code>）时返回扩展的作用域内缓存的实例，缺省是单例；
+     * 扩展属性中配置了<code>scope=prototype</code>的扩展每次都会新建实例；
+     * 指定了<code>properties</code>时，注入的关联扩展依赖这些属性，所以每次新建扩展实例。
+     * <p/>
+     * Wrapper实例每次重新创建，并Wrap到扩展实例上。
+     *
+     * @since 0.1.0
+     */
+    public T getExtension(String name, Map<String, String> properties, List<String> wrappers) {
+        if (StringUtils.isEmpty(name))
+            throw new IllegalArgumentException("Extension name == null");
+        if (properties == null) properties = Collections.emptyMap();
+        final Snapshot snapshot = getSnapshot();
+        T extension = properties.isEmpty() ? getCachedExtension(snapshot, name) : createExtension(snapshot, name, properties, false);
+        return createWrapper(snapshot, extension, properties, wrappers);
+    }
+
+    /**
+     * 借出指定名字的扩展，用完后关闭返回的{@link ExtensionLease}归还。
+     * <p/>
+     * 扩展属性中配置了<code>scope=pool</code>的扩展从对象池借出，池空时新建实例；
+     * 池中最多保留<code>poolSize</code>（缺省CPU数的2倍）个空闲实例，空闲超过<code>poolIdle</code>（缺省60s）的实例被回收，
+     * 如<code>json=com.foo.JsonParser(scope=pool, poolSize=16, poolIdle=5m)</code>。
+     * 其它作用域的扩展按作用域获取实例，关闭时什么也不做。
+     *
+     * @throws IllegalArgumentException 参数为<code>null</code>或是空字符串。
+     * @throws IllegalStateException    没有这个扩展，或创建扩展失败
+     * @since 0.4.1
+     */
+    public ExtensionLease<T> borrowExtension(String name) {
+        if (StringUtils.isEmpty(name))
+            throw new IllegalArgumentException("Extension name == null");
+        final Snapshot snapshot = getSnapshot();
+        InstanceScope<T> instances = snapshot.instances.get(name);
+        if (instances == null) instances = getInstances(snapshot, name);
+        return instances.lease();
+    }
+
+    /**
+     * 返回缺省的扩展。
+     *
+     * @throws IllegalStateException 指定的扩展没有设置缺省扩展点
+     * @since 0.1.0
+     */
+    public T getDefaultExtension() {
+        if (null == defaultExtension || defaultExtension.length() == 0) {
+            throw new IllegalStateException("No default extension on extension " + type.getName());
+        }
+        return getExtension(defaultExtension);
+    }
+
+    /**
+     * 返回缺省的扩展。
+     *
+     * @param wrappers 返回的实例上，要启用的Wrapper。
+     * @throws IllegalStateException 指定的扩展没有设置缺省扩展点
+     * @since 0.2.1
+     */
+    public T getDefaultExtension(List<String> wrappers) {
+        if (null == defaultExtension || defaultExtension.length() == 0) {
+            throw new IllegalStateException("No default extension on extension " + type.getName());
+        }
+        return getExtension(defaultExtension, wrappers);
+    }
+
+    /**
+     * 返回自适应扩展，自适应扩展在每次调用时选择实际调用的扩展。
+     * <p/>
+     * 扩展配置文件中配置了自适应扩展类（<code>*</code>开头的配置行）时，返回这个类的实例；
+     * 否则返回运行时生成的自适应扩展，按方法的<code>Map</code>参数中扩展点接口类名对应的值选择扩展，
+     * 没有指定时使用缺省扩展。生成的自适应扩展调用没有<code>Map</code>参数的方法会抛出{@link UnsupportedOperationException}。
+     * <p/>
+     * 自适应扩展是单例。
+     *
+     * @throws IllegalStateException 创建自适应扩展失败
+     * @since 0.4.1
+     */
+    public T getAdaptiveExtension() {
+        final Snapshot snapshot = getSnapshot();
+        InstanceScope<T> instances = snapshot.instances.get(ADAPTIVE_INSTANCE_KEY);
+        if (instances == null) {
+            instances = putInstances(snapshot, ADAPTIVE_INSTANCE_KEY, new InstanceScope.Singleton<T>(type, ADAPTIVE_INSTANCE_KEY, new Supplier<T>() {
+                public T get() {
+                    return createAdaptiveExtension(snapshot);
+                }
+            }, null));
+        }
+        return instances.get();
+    }
+
+    /**
+     * 检查是否有指定名字的扩展。
+     *
+     * @param name 扩展名
+     * @return 有指定名字的扩展，则<code>true</code>，否则<code>false</code>。
+     * @throws IllegalArgumentException 参数为<code>null</code>或是空字符串。
+     * @since 0.1.0
+     */
+    public boolean hasExtension(String name) {
+        if (name == null || name.length() == 0)
+            throw new IllegalArgumentException("Extension name == null");
+        return findExtensionClass(getSnapshot(), name) != null;
+    }
+
+    /**
+     * 检查是否有指定缺省的扩展。
+     *
+     * @return 有指定缺省的扩展，则<code>true</code>，否则<code>false</code>。
+     * @since 0.1.0
+     */
+    public boolean hasDefaultExtension() {
+        return !(null == defaultExtension || defaultExtension.length() == 0);
+
+    }
+
+    /**
+     * 获取扩展点实现的所有扩展点名。
+     * <p/>
+     * 延迟加载的扩展点返回配置的所有扩展点名，不会加载实现类；
+     * 实现类加载失败的扩展在获取时才报错。
+     *
+     * @since 0.1.0
+     */
+    public Set<String> getSupportedExtensions() {
+        return Collections.unmodifiableSet(supportedExtensions(getSnapshot()));
+    }
+
+    private Set<String> supportedExtensions(Snapshot snapshot) {
+        if (lazy) return new HashSet<String>(snapshot.name2LazyClass.keySet());
+
+        Set<String> names = new HashSet<String>(snapshot.name2Class.keySet());
+        if (!snapshot.uninitialized.isEmpty()) {
+            // 去掉初始化失败的实现类
+            for (Map.Entry<String, Class<?>> entry : snapshot.name2Class.entrySet()) {
+                LazyClass pending = snapshot.uninitialized.get(entry.getValue());
+                if (pending != null && pending.failed) names.remove(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 返回缺省的扩展点名，如果没有设置缺省则返回<code>null</code>。
+     *
+     * @since 0.1.0
+     */
+    public String getDefaultExtensionName() {
+        return defaultExtension;
+    }
+
+    public Map<String, Map<String, String>> getExtensionAttribute() {
+        return Collections.unmodifiableMap(getSnapshot().name2Attributes);
+    }
+
+    public Map<String, String> getExtensionAttribute(String name) {
+        if (name == null || name.length() == 0)
+            throw new IllegalArgumentException("Extension name == null");
+
+        // 先一下加载扩展点类，如果没有这个名字的扩展点类，会抛异常，
+        // 这样不用创建不必要的Holder。
+        final Snapshot snapshot = getSnapshot();
+        getExtensionClass(snapshot, name);
+
+        return snapshot.name2Attributes.get(name);
+    }
+
+    /**
+     * 返回指定扩展的扩展属性，属性值在扩展点加载时已经解析好。
+     *
+     * @param name 扩展名
+     * @throws IllegalArgumentException 参数为<code>null</code>或是空字符串。
+     * @throws IllegalStateException    没有这个名字的扩展
+     * @see ExtensionAttributes
+     * @since 0.4.1
+     */
+    public ExtensionAttributes getExtensionAttributes(String name) {
+        if (name == null || name.length() == 0)
+            throw new IllegalArgumentException("Extension name == null");
+
+        final Snapshot snapshot = getSnapshot();
+        getExtensionClass(snapshot, name);
+
+        return snapshot.name2ExtensionAttributes.get(name);
+    }
+
+    /**
+     * 返回属性<code>attribute</code>的值是<code>value</code>的扩展名，按扩展配置的顺序排列。
+     * <p/>
+     * 查询使用扩展点加载时建立的属性索引，返回预先计算好的不可修改的结果，不用遍历所有扩展的属性。
+     * 没有值的属性（如<code>isProvider</code>）的值是空字符串。
+     *
+     * @throws IllegalArgumentException 参数为<code>null</code>。
+     * @since 0.4.1
+     */
+    public Set<String> findExtensions(String attribute, String value) {
+        if (attribute == null || value == null)
+            throw new IllegalArgumentException("attribute == null || value == null");
+        return getSnapshot().attributeIndex.find(attribute, value);
+    }
+
+    /**
+     * 返回有属性<code>attribute</code>的扩展名，按扩展配置的顺序排列。
+     *
+     * @throws IllegalArgumentException 参数为<code>null</code>。
+     * @see #findExtensions(String, String)
+     * @since 0.4.1
+     */
+    public Set<String> findExtensions(String attribute) {
+        if (attribute == null)
+            throw new IllegalArgumentException("attribute == null");
+        return getSnapshot().attributeIndex.find(attribute);
+    }
+
+    /**
+     * 返回满足所有属性条件的扩展名，按扩展配置的顺序排列。
+     *
+     * @param attributes 属性名到属性值，值为<code>null</code>的条件只要求有这个属性
+     * @throws IllegalArgumentException 参数为<code>null</code>。
+     * @see #findExtensions(String, String)
+     * @since 0.4.1
+     */
+    public Set<String> findExtensions(Map<String, String> attributes) {
+        if (attributes == null)
+            throw new IllegalArgumentException("attributes == null");
+        return getSnapshot().attributeIndex.find(attributes);
+    }
+
+    /**
+     * 返回满足属性条件的扩展实例，按扩展属性<code>order</code>的值从小到大排列；
+     * 没有<code>order</code>属性的排在最后，<code>order</code>相同的按扩展配置的顺序。
+     * <p/>
+     * 每个不同的条件只在第一次调用时查询、排序和获取实例，之后返回缓存的同一个列表，
+     * 适合在每次调用时遍历，如组装拦截器链。
+     * 不是单例的扩展每次都要按作用域获取实例，结果中有这样的扩展时只缓存排好序的扩展名。
+     * 只缓存扩展配置中有的属性和值组成的条件，最多{@value #MAX_CACHED_ACTIVATIONS}个；其它条件没有匹配的扩展，不缓存。
+     *
+     * @param filter 属性条件，同{@link #findExtensions(Map)}；空的条件返回所有扩展
+     * @return 不可修改的列表
+     * @throws IllegalArgumentException 参数为<code>null</code>。
+     * @throws IllegalStateException    获取扩展实例失败
+     * @since 0.4.1
+     */
+    public List<T> getActivatedExtensions(Map<String, String> filter) {
+        if (filter == null)
+            throw new IllegalArgumentException("filter == null");
+
+        final Snapshot snapshot = getSnapshot();
+        Activation activation = snapshot.activations.get(filter);
+        if (activation == null) {
+            // 调用方传入的任意条件不会撑大缓存
+            if (!snapshot.attributeIndex.isIndexed(filter)) return Collections.emptyList();
+
+            final int invalidations = snapshot.invalidations.get();
+            activation = activate(snapshot, filter);
+            // 计算期间有实例失效时不缓存，避免缓存住失效的实例
+            if (snapshot.invalidations.get() == invalidations && snapshot.activations.size() < MAX_CACHED_ACTIVATIONS) {
+                Activation old = snapshot.activations.putIfAbsent(new HashMap<String, String>(filter), activation);
+                if (old != null) activation = old;
+            }
+        }
+        if (activation.instances != null) return activation.instances;
+
+        List<T> instances = new ArrayList<T>(activation.names.length);
+        for (String name : activation.names) {
+            instances.add(getCachedExtension(snapshot, name));
+        }
+        return Collections.unmodifiableList(instances);
+    }
+
+    /**
+     * 重新加载扩展配置和扩展实现类。
+     * <p/>
+     * 在调用线程上加载出新的扩展快照后整体替换，加载期间获取扩展不会阻塞，继续使用之前的快照；
+     * 替换后扩展实例、Wrapper链和自适应扩展都重新创建；注入了这个扩展点的缓存实例，只在注入的扩展的实现类变化时重新创建。
+     * 重新加载时直接读取扩展配置文件，不使用二进制索引。
+     * 已经加载的类不会被重新定义，重新加载反映的是扩展配置的修改。
+     * 读取配置文件失败、出现了新的出错配置行，或是之前有扩展而重新加载出一个也没有时（如配置文件正在被写入），
+     * 保留之前的快照。
+     * <p/>
+     * 系统属性<code>cooma.watch</code>设置为<code>true</code>时，会监视目录（不是Jar包）中的扩展配置文件，
+     * 文件修改后自动重新加载。
+     *
+     * @since 0.4.1
+     */
+    public void reload() {
+        Snapshot s;
+        Snapshot previous;
+        synchronized (loadLock) {
+            previous = snapshot;
+            s = loadSnapshot(true);
+            if (previous != null && keepsPrevious(previous, s)) return;
+            snapshot = s;
+        }
+        initializeClasses(s);
+        invalidateDependents(previous, s);
+        logger.info("Reloaded extension " + type.getName());
+    }
+
+    private boolean keepsPrevious(Snapshot previous, Snapshot reloaded) {
+        String cause = null;
+        if (!reloaded.complete) {
+            cause = "fail to read config file";
+        } else if (!previous.loadExceptions.keySet().containsAll(reloaded.loadExceptions.keySet())) {
+            Set<String> lines = new HashSet<String>(reloaded.loadExceptions.keySet());
+            lines.removeAll(previous.loadExceptions.keySet());
+            cause = "new broken config lines " + lines;
+        } else if (reloaded.isEmpty() && !previous.isEmpty()) {
+            cause = "no extension in config file";
+        }
+        if (cause == null) return false;
+        logger.error("Ignore reloaded config of extension " + type.getName() + ", keep the loaded extensions, cause: " + cause);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getName() + "<" + type.getName() + ">";
+    }
+
+    // ==============================
+    // internal methods
+    // ==============================
+
+    private final Class<T> type;
+    private final String defaultExtension;
+    // 扩展属性中没有配置scope的扩展的作用域
+    private final String defaultScope;
+    private final boolean lazy;
+    // 查找扩展配置和加载扩展实现类的ClassLoader，弱引用，不阻止ClassLoader的回收
+    private final ExtensionLoaderRegistry.ScopeReference scope;
+    // 挂住这个ExtensionLoader的类，见ExtensionLoaderRegistry
+    volatile Class<?> pinned;
+
+    ExtensionLoader(Class<T> type, ClassLoader scope) {
+        this.type = type;
+        this.scope = new ExtensionLoaderRegistry.ScopeReference(scope, this);
+
+        String defaultExt = null;
+        final Extension annotation = type.getAnnotation(Extension.class);
+        lazy = Boolean.getBoolean(LAZY_PROPERTY) || (annotation != null && annotation.lazy());
+        if (annotation != null) {
+            String value = annotation.value();
+            if (value != null && (value = value.trim()).length() > 0) {
+                String[] names = NAME_SEPARATOR.split(value);
+                if (names.length > 1) {
+                    throw new IllegalStateException("more than 1 default extension name on extension " +
+                            type.getName() + ": " + Arrays.toString(names));
+                }
+                if (names.length == 1 && names[0].trim().length() > 0) {
+                    defaultExt = names[0].trim();
+                }
+                if (!isValidExtName(defaultExt)) {
+                    throw new IllegalStateException("default name(" + defaultExt +
+                            ") of extension " + type.getName() + " is invalid!");
+                }
+            }
+        }
+        defaultExtension = defaultExt;
+
+        String scopeName = annotation == null ? InstanceScope.SINGLETON : annotation.scope().trim();
+        if (!InstanceScope.isValid(scopeName)) {
+            throw new IllegalStateException("default scope(" + scopeName +
+                    ") of extension " + type.getName() + " is invalid!");
+        }
+        defaultScope = scopeName;
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    ClassLoader getScope() {
+        return scope.get();
+    }
+
+    /**
+     * 丢弃缓存的扩展实例和Wrapper链，保留加载出的扩展实现类。
+     * 实现类没有变化，注入了这个扩展点的缓存实例不失效。
+     */
+    void release() {
+        synchronized (loadLock) {
+            Snapshot s = snapshot;
+            if (s != null) snapshot = new Snapshot(s);
+        }
+    }
+
+    void preload(boolean instantiateDefault) {
+        getSnapshot();
+        if (instantiateDefault && hasDefaultExtension()) {
+            getDefaultExtension();
+        }
+    }
+
+    /**
+     * Thread-safe. 第一次获取时按扩展的作用域创建{@link InstanceScope}并缓存，之后的获取只需要一次Map查找。
+     */
+    private T getCachedExtension(Snapshot snapshot, String name) {
+        InstanceScope<T> instances = snapshot.instances.get(name);
+        if (instances == null) instances = getInstances(snapshot, name);
+        return instances.get();
+    }
+
+    private InstanceScope<T> getInstances(final Snapshot snapshot, final String name) {
+        InstanceScope<T> instances = snapshot.instances.get(name);
+        if (instances != null) return instances;
+
+        getExtensionClass(snapshot, name); // 没有这个名字的扩展点类，会抛异常
+        final ExtensionAttributes attributes = snapshot.name2ExtensionAttributes.get(name);
+        String scope = attributes.getString(ATTRIBUTE_SCOPE);
+        if (scope == null) scope = defaultScope;
+        // 除了prototype，都是缓存的实例，注入的扩展变化时失效
+        final boolean cached = !InstanceScope.PROTOTYPE.equals(scope);
+        return putInstances(snapshot, name, InstanceScope.create(scope, attributes, type, name, new Supplier<T>() {
+            public T get() {
+                return createExtension(snapshot, name, Collections.<String, String>emptyMap(), cached);
+            }
+        }, metrics));
+    }
+
+    /**
+     * 失效的实例缓存会从Map中删除，所以不能在<code>putIfAbsent</code>之后再<code>get</code>一次。
+     */
+    private InstanceScope<T> putInstances(Snapshot snapshot, String key, InstanceScope<T> instances) {
+        InstanceScope<T> old = snapshot.instances.putIfAbsent(key, instances);
+        return old == null ? instances : old;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T createExtension(Snapshot snapshot, String name, Map<String, String> properties, boolean cached) {
+        Class<T> clazz = (Class<T>) getExtensionClass(snapshot, name);
+        if (!initializeClass(snapshot, clazz)) throw findExtensionClassLoadException(snapshot, name);
+        final long start = metrics == null ? 0 : System.nanoTime();
+        final Object event = events.beginInstantiate();
+        try {
+            T instance = inject(Instantiators.constructor(clazz).get(), properties, cached ? name : null);
+            instantiations.increment();
+            events.endInstantiate(event, type, name, clazz);
+            if (metrics != null) metrics.onInstantiate(type, name, System.nanoTime() - start);
+            return instance;
+        } catch (Throwable t) {
+            String msg = "Fail to create extension " + name +
+                    " of extension point " + type.getName() + ", cause: " + t.getMessage();
+            logger.warn(msg);
+            throw new IllegalStateException(msg, t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T createAdaptiveExtension(Snapshot snapshot) {
+        try {
+            Class<T> clazz = (Class<T>) getAdaptiveClass(snapshot);
+            if (clazz == null) {
+                return AdaptiveExtensions.create(type, new AdaptiveDispatcher(type, defaultExtension, new AdaptiveDispatcher.Resolver() {
+                    public Object getExtension(String name) {
+                        return ExtensionLoader.this.getExtension(name);
+                    }
+
+                    public boolean isCacheable(String name) {
+                        return getInstances(getSnapshot(), name).isShared();
+                    }
+
+                    public Object getVersion() {
+                        return getSnapshot().version;
+                    }
+                }));
+            }
+            return inject(Instantiators.constructor(clazz).get(), Collections.<String, String>emptyMap(), ADAPTIVE_INSTANCE_KEY);
+        } catch (Throwable t) {
+            String msg = "Fail to create adaptive extension of extension point " + type.getName() +
+                    ", cause: " + t.getMessage();
+            logger.warn(msg);
+            throw new IllegalStateException(msg, t);
+        }
+    }
+
+    private T createWrapper(Snapshot snapshot, T instance, Map<String, String> properties, List<String> wrappers) {
+        if (wrappers == null || wrappers.isEmpty()) return instance;
+
+        final long start = metrics == null ? 0 : System.nanoTime();
+        final Object event = events.beginWrap();
+        List<Function<T, T>> chain = getWrapperChain(snapshot, wrappers);
+        for (int i = 0; i < chain.size(); i++) {
+            try {
+                instance = inject(chain.get(i).apply(instance), properties, null);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Fail to create wrapper(" + wrappers.get(i) + ") for extension point " + type, e);
+            }
+        }
+        events.endWrap(event, type, wrappers);
+        if (metrics != null) metrics.onWrap(type, wrappers, System.nanoTime() - start);
+        return instance;
+    }
+
+    /**
+     * Thread-safe. 相同的Wrapper列表共享同一个编译好的Wrapper链，获取时只需要一次Map查找。
+     */
+    private List<Function<T, T>> getWrapperChain(Snapshot snapshot, List<String> wrappers) {
+        List<Function<T, T>> chain = snapshot.wrapperChains.get(wrappers);
+        if (chain == null) {
+            chain = compileWrapperChain(snapshot, wrappers);
+            // 复制一份作为Key，避免调用者之后修改列表
+            List<Function<T, T>> old = snapshot.wrapperChains.putIfAbsent(
+                    Collections.unmodifiableList(new ArrayList<String>(wrappers)), chain);
+            if (old != null) chain = old;
+        }
+        return chain;
+    }
+
+    private List<Function<T, T>> compileWrapperChain(Snapshot snapshot, List<String> wrappers) {
+        List<Function<T, T>> chain = new ArrayList<Function<T, T>>(wrappers.size());
+        for (String name : wrappers) {
+            Function<T, T> wrapper = findWrapper(snapshot, name);
+            if (wrapper == null) {
+                throw new IllegalStateException("Fail to create wrapper(" + name + ") for extension point " + type +
+                        ", cause: no such wrapper");
+            }
+            chain.add(wrapper);
+        }
+        return Collections.unmodifiableList(chain);
+    }
+
+    /**
+     * @param cachedAs 注入的是缓存的实例时，实例在缓存中的Key；注入的扩展变化时这个实例失效。
+     *                 不缓存的实例为<code>null</code>。
+     */
+    private T inject(T instance, Map<String, String> properties, String cachedAs) {
+        final InjectionPlan plan = InjectionPlan.of(instance.getClass());
+        final MethodHandle[] setters = plan.setters;
+        if (setters.length == 0) return instance;
+
+        final long start = metrics == null ? 0 : System.nanoTime();
+        final Object event = events.beginInject();
+        final Class<?>[] types = plan.types;
+        final ClassLoader classLoader = getScope();
+        for (int i = 0; i < setters.length; i++) {
+            if (types[i] == type) { // avoid obvious dead loop TODO avoid complex nested loop setting?
+                logger.warn("Ignore self set(" + plan.methods[i] + ") for class(" + instance.getClass() + ") when inject.");
+                continue;
+            }
+            try {
+                // 注入同一个ClassLoader下的扩展
+                ExtensionLoader<?> loader = ExtensionLoaderRegistry.get(types[i], classLoader);
+                // 缓存的实例没有properties，注入的是缺省扩展；在获取之前登记，获取期间的变化也会使这个实例失效
+                if (cachedAs != null) loader.addDependent(loader.defaultExtension, this, cachedAs);
+                Object prototype = loader.getExtension(properties);
+                setters[i].invokeExact((Object) instance, prototype);
+                // FIXME 要注入属性到Extension和Wrapper！
+            } catch (Throwable t) {
+                String errMsg = "Fail to inject via method " + plan.methods[i].getName()
+                        + " of interface to extension implementation " + instance.getClass() +
+                        " for extension point " + type.getName() + ", cause: " + t.getMessage();
+                logger.warn(errMsg, t);
+                throw new IllegalStateException(errMsg, t);
+            }
+        }
+        events.endInject(event, type, instance.getClass());
+        if (metrics != null) metrics.onInject(type, instance.getClass(), System.nanoTime() - start);
+        return instance;
+    }
+
+    /**
+     * 一个条件激活的扩展：排好序的扩展名，及其实例。
+     */
+    private final class Activation {
+        final String[] names;
+        // 有不是单例的扩展时为null，每次重新获取实例
+        final List<T> instances;
+
+        Activation(String[] names, List<T> instances) {
+            this.names = names;
+            this.instances = instances;
+        }
+    }
+
+    private Activation activate(Snapshot snapshot, Map<String, String> filter) {
+        final Set<String> found = snapshot.attributeIndex.find(filter);
+        final Map<String, Integer> orders = new HashMap<String, Integer>();
+        for (String name : found) {
+            // order在加载时已经检查过是整数
+            orders.put(name, snapshot.name2ExtensionAttributes.get(name).getInt(ATTRIBUTE_ORDER, Integer.MAX_VALUE));
+        }
+
+        List<String> names = new ArrayList<String>(found);
+        // 稳定排序，order相同的保持扩展配置的顺序
+        Collections.sort(names, new Comparator<String>() {
+            public int compare(String n1, String n2) {
+                return orders.get(n1).compareTo(orders.get(n2));
+            }
+        });
+
+        String[] activated = names.toArray(new String[names.size()]);
+        for (String name : activated) {
+            if (!getInstances(snapshot, name).isShared()) return new Activation(activated, null);
+        }
+        List<T> instances = new ArrayList<T>(activated.length);
+        for (String name : activated) {
+            instances.add(getCachedExtension(snapshot, name));
+        }
+        return new Activation(activated, Collections.unmodifiableList(instances));
+    }
+
+    // ====================================
+    // dependencies of cached instances
+    // ====================================
+
+    // 注入了这个扩展点的扩展的缓存实例：Map<ext-name, Map<dependent-loader, cache-keys>>
+    // 弱引用注入方的ExtensionLoader，不阻止其ClassLoader的回收
+    private final Map<String, Map<ExtensionLoader<?>, Set<String>>> dependents =
+            new HashMap<String, Map<ExtensionLoader<?>, Set<String>>>();
+
+    private void addDependent(String name, ExtensionLoader<?> loader, String cachedAs) {
+        if (name == null) return;
+        synchronized (dependents) {
+            Map<ExtensionLoader<?>, Set<String>> loaders = dependents.get(name);
+            if (loaders == null) {
+                loaders = new WeakHashMap<ExtensionLoader<?>, Set<String>>();
+                dependents.put(name, loaders);
+            }
+            Set<String> keys = loaders.get(loader);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                loaders.put(loader, keys);
+            }
+            keys.add(cachedAs);
+        }
+    }
+
+    /**
+     * 重新加载后，使注入了实现类变化的扩展的缓存实例失效；实现类没有变化的，继续使用注入的实例。
+     *
+     * @param previous 之前的快照，没有时所有的缓存实例都失效
+     */
+    private void invalidateDependents(Snapshot previous, Snapshot current) {
+        List<Map<ExtensionLoader<?>, Set<String>>> invalidated = new ArrayList<Map<ExtensionLoader<?>, Set<String>>>();
+        synchronized (dependents) {
+            for (Iterator<Map.Entry<String, Map<ExtensionLoader<?>, Set<String>>>> it = dependents.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Map<ExtensionLoader<?>, Set<String>>> entry = it.next();
+                String name = entry.getKey();
+                String className = previous == null ? null : previous.getClassName(name);
+                if (className == null || !className.equals(current.getClassName(name))) {
+                    invalidated.add(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+        for (Map<ExtensionLoader<?>, Set<String>> loaders : invalidated) {
+            invalidate(loaders);
+        }
+    }
+
+    /**
+     * 使缓存的实例失效，并传递给注入了这个实例的缓存实例；只删除缓存，在下次获取时重新创建。
+     */
+    private void invalidate(String cachedAs) {
+        Snapshot s = snapshot;
+        if (s != null) {
+            s.invalidations.incrementAndGet();
+            // 只删除包含这个实例的结果
+            for (Iterator<Activation> it = s.activations.values().iterator(); it.hasNext(); ) {
+                if (Arrays.asList(it.next().names).contains(cachedAs)) it.remove();
+            }
+            if (s.instances.remove(cachedAs) != null) {
+                logger.debug("Invalidated cached instance " + cachedAs + " of extension " + type.getName());
+            }
+            // 删除实例之后再替换版本：分派时在新版本下只会取到重新创建的实例
+            s.version = new Object();
+        }
+
+        Map<ExtensionLoader<?>, Set<String>> loaders;
+        synchronized (dependents) {
+            loaders = dependents.remove(cachedAs);
+        }
+        if (loaders != null) invalidate(loaders);
+    }
+
+    /**
+     * @param loaders 已经从<code>dependents</code>中取下的，不会再被修改
+     */
+    private static void invalidate(Map<ExtensionLoader<?>, Set<String>> loaders) {
+        for (Map.Entry<ExtensionLoader<?>, Set<String>> entry : loaders.entrySet()) {
+            ExtensionLoader<?> loader = entry.getKey();
+            if (loader == null) continue; // 已经回收
+            for (String cachedAs : entry.getValue()) {
+                loader.invalidate(cachedAs);
+            }
+        }
+    }
+
+    // ====================================
+    // get & load Extension Class
+    // ====================================
+
+    // 当前发布的扩展快照，加载和重新加载时整体替换
+    private volatile Snapshot snapshot;
+    // 串行化加载和重新加载；获取扩展只在第一次加载时等待
+    private final Object loadLock = new Object();
+    // 已经初始化的实现类，重新加载时不再初始化
+    private final Set<Class<?>> initializedClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+    /**
+     * 扩展点的一次加载结果：扩展名到实现类、扩展属性、Wrapper，及用这些类创建的实例的缓存。
+     * <p/>
+     * 加载完成后整体发布，发布后不再修改，只有延迟加载的实现类和Wrapper在第一次使用时登记进来；
+     * 读取时只需要读一次volatile字段，不会看到不同次加载混在一起的结果。
+     */
+    private final class Snapshot {
+        // Map<ext-name, ext-class>
+        final Map<String, Class<?>> name2Class;
+        final Map<String, Map<String, String>> name2Attributes;
+        final Map<String, ExtensionAttributes> name2ExtensionAttributes;
+        // Map<wrapper-name, bound copy constructor of wrapper-class>
+        final Map<String, Function<T, T>> name2Wrapper;
+        volatile Class<?> adaptiveClass;
+
+        // 延迟加载时，还没有加载的实现类的配置：Map<ext-name, LazyClass>、Map<wrapper-name, LazyClass>
+        final Map<String, LazyClass> name2LazyClass;
+        final Map<String, LazyClass> name2LazyWrapper;
+        LazyClass lazyAdaptiveClass;
+
+        // 非延迟加载时，已经加载还没有初始化的实现类：Map<class, 配置行>
+        final ConcurrentMap<Class<?>, LazyClass> uninitialized;
+        // Map<config-line, exception>
+        final Map<String, IllegalStateException> loadExceptions;
+        // 加载完成后、发布之前建立
+        AttributeIndex attributeIndex;
+        // 所有配置文件都读取、解析成功
+        boolean complete = true;
+
+        // Map<ext-name, 按作用域缓存的ext-instance>
+        final ConcurrentMap<String, InstanceScope<T>> instances = new ConcurrentHashMap<String, InstanceScope<T>>();
+        // Map<wrapper-names, bound copy constructors of the wrappers in order>
+        final ConcurrentMap<List<String>, List<Function<T, T>>> wrapperChains = new ConcurrentHashMap<List<String>, List<Function<T, T>>>();
+        // Map<filter, activated extensions>
+        final ConcurrentMap<Map<String, String>, Activation> activations = new ConcurrentHashMap<Map<String, String>, Activation>();
+        // 缓存的实例失效的次数
+        final AtomicInteger invalidations = new AtomicInteger();
+        // 自适应扩展的分派缓存的版本，缓存的实例失效时替换；快照替换时自然是新的版本
+        volatile Object version = new Object();
+
+        Snapshot() {
+            if (lazy) {
+                // 延迟加载的类在发布之后并发的登记进来
+                name2Class = new ConcurrentHashMap<String, Class<?>>();
+                name2Wrapper = new ConcurrentHashMap<String, Function<T, T>>();
+            } else {
+                name2Class = new HashMap<String, Class<?>>();
+                name2Wrapper = new LinkedHashMap<String, Function<T, T>>();
+            }
+            name2Attributes = new LinkedHashMap<String, Map<String, String>>();
+            name2ExtensionAttributes = new HashMap<String, ExtensionAttributes>();
+            name2LazyClass = new LinkedHashMap<String, LazyClass>();
+            name2LazyWrapper = new HashMap<String, LazyClass>();
+            uninitialized = new ConcurrentHashMap<Class<?>, LazyClass>();
+            loadExceptions = new ConcurrentHashMap<String, IllegalStateException>();
+        }
+
+        /**
+         * 使用同样的扩展实现类，不带缓存的实例。
+         */
+        Snapshot(Snapshot from) {
+            name2Class = from.name2Class;
+            name2Attributes = from.name2Attributes;
+            name2ExtensionAttributes = from.name2ExtensionAttributes;
+            name2Wrapper = from.name2Wrapper;
+            adaptiveClass = from.adaptiveClass;
+            name2LazyClass = from.name2LazyClass;
+            name2LazyWrapper = from.name2LazyWrapper;
+            lazyAdaptiveClass = from.lazyAdaptiveClass;
+            uninitialized = from.uninitialized;
+            loadExceptions = from.loadExceptions;
+            attributeIndex = from.attributeIndex;
+            complete = from.complete;
+        }
+
+        /**
+         * @return 扩展的实现类名，延迟加载还没有加载的从配置中取；没有这个扩展时返回<code>null</code>
+         */
+        String getClassName(String name) {
+            Class<?> clazz = name2Class.get(name);
+            if (clazz != null) return clazz.getName();
+            LazyClass lazyClass = name2LazyClass.get(name);
+            return lazyClass == null ? null : lazyClass.definition.getClassName();
+        }
+
+        boolean isEmpty() {
+            return name2Attributes.isEmpty() && name2Wrapper.isEmpty() && name2LazyWrapper.isEmpty()
+                    && adaptiveClass == null && lazyAdaptiveClass == null;
+        }
+    }
+
+    /**
+     * 延迟加载模式下一个配置行的实现类，在第一次使用时才加载；
+     * 非延迟加载时是已经加载、还没有初始化的实现类的配置行。
+     */
+    private static final class LazyClass {
+        final ExtensionDefinition definition;
+        final String line;
+        final String source;
+        // 加载失败的不再重试，类的静态初始化失败后再次加载只会得到NoClassDefFoundError
+        volatile boolean failed;
+
+        LazyClass(ExtensionDefinition definition, String line, String source) {
+            this.definition = definition;
+            this.line = line;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Thread-safe. 第一次调用时加载扩展点；之后只读一次volatile字段，重新加载时也不会阻塞。
+     * <p/>
+     * 实现类在发布快照之后、加载锁之外才初始化，类的静态初始化中获取其它扩展点不会和加载那个扩展点的线程互相等待。
+     */
+    private Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            boolean loaded = false;
+            synchronized (loadLock) {
+                s = snapshot;
+                if (s == null) { // double check
+                    s = loadSnapshot(false);
+                    snapshot = s;
+                    loaded = true;
+                }
+            }
+            if (loaded) initializeClasses(s);
+        }
+        return s;
+    }
+
+    private Class<?> getExtensionClass(Snapshot snapshot, String name) {
+        if (name == null)
+            throw new IllegalArgumentException("Extension name == null");
+
+        Class<?> clazz = findExtensionClass(snapshot, name);
+        if (clazz == null)
+            throw findExtensionClassLoadException(snapshot, name);
+        return clazz;
+    }
+
+    /**
+     * @return 没有这个名字的扩展，或是扩展实现类加载失败，返回<code>null</code>
+     */
+    private Class<?> findExtensionClass(Snapshot snapshot, String name) {
+        Class<?> clazz = snapshot.name2Class.get(name);
+        if (clazz == null && lazy) {
+            clazz = loadLazyExtensionClass(snapshot, name);
+        } else if (clazz != null && !snapshot.uninitialized.isEmpty()) {
+            LazyClass pending = snapshot.uninitialized.get(clazz);
+            if (pending != null && pending.failed) return null;
+        }
+        return clazz;
+    }
+
+    /**
+     * Thread-safe. 初始化非延迟加载的实现类，同一个类只初始化一次，初始化失败的记录成配置行的加载异常。
+     * <p/>
+     * 在加载锁之外调用：静态初始化中获取扩展（包括这个扩展点自己的）时只等待JVM的类初始化，不等待加载锁。
+     *
+     * @return 初始化失败，返回<code>false</code>
+     */
+    private boolean initializeClass(Snapshot snapshot, Class<?> clazz) {
+        LazyClass pending = snapshot.uninitialized.get(clazz);
+        if (pending == null) return true;
+        synchronized (pending) {
+            if (pending.failed) return false;
+            if (snapshot.uninitialized.get(clazz) == null) return true;
+            final long start = metrics == null ? 0 : System.nanoTime();
+            try {
+                Class.forName(clazz.getName(), true, clazz.getClassLoader());
+            } catch (Throwable t) {
+                pending.failed = true;
+                recordLoadException(snapshot, pending.line, pending.source, t);
+                return false;
+            }
+            if (metrics != null) metrics.onClassInit(type, clazz, System.nanoTime() - start);
+            initializedClasses.add(clazz);
+            snapshot.uninitialized.remove(clazz);
+            return true;
+        }
+    }
+
+    /**
+     * 加载扩展点的线程在发布快照后初始化所有的实现类，初始化出错在加载后就能发现。
+     */
+    private void initializeClasses(Snapshot snapshot) {
+        for (Class<?> clazz : new ArrayList<Class<?>>(snapshot.uninitialized.keySet())) {
+            initializeClass(snapshot, clazz);
+        }
+    }
+
+    /**
+     * Thread-safe. 同一个配置行的实现类只加载一次，加载出的类登记到这个配置行的所有扩展名上。
+     */
+    private Class<?> loadLazyExtensionClass(Snapshot snapshot, String name) {
+        LazyClass lazyClass = snapshot.name2LazyClass.get(name);
+        if (lazyClass == null) return null;
+
+        Map<String, Class<?>> classes = snapshot.name2Class;
+        synchronized (lazyClass) {
+            Class<?> clazz = classes.get(name);
+            if (clazz != null || lazyClass.failed) return clazz;
+            try {
+                clazz = loadClass(lazyClass.definition, getScope(), true);
+            } catch (Throwable t) {
+                lazyClass.failed = true;
+                recordLoadException(snapshot, lazyClass.line, lazyClass.source, t);
+                return null;
+            }
+            for (String n : lazyClass.definition.names()) {
+                if (snapshot.name2LazyClass.get(n) == lazyClass) classes.put(n, clazz);
+            }
+            return clazz;
+        }
+    }
+
+    /**
+     * @return 配置的自适应扩展类，没有配置或加载失败返回<code>null</code>
+     */
+    private Class<?> getAdaptiveClass(Snapshot snapshot) {
+        final LazyClass lazyClass = snapshot.lazyAdaptiveClass;
+        if (snapshot.adaptiveClass == null && lazy && lazyClass != null) {
+            synchronized (lazyClass) {
+                if (snapshot.adaptiveClass == null && !lazyClass.failed) {
+                    try {
+                        snapshot.adaptiveClass = loadClass(lazyClass.definition, getScope(), true);
+                    } catch (Throwable t) {
+                        lazyClass.failed = true;
+                        recordLoadException(snapshot, lazyClass.line, lazyClass.source, t);
+                    }
+                }
+            }
+        }
+        final Class<?> adaptiveClass = snapshot.adaptiveClass;
+        // 初始化失败时和加载失败一样，使用生成的自适应扩展
+        if (adaptiveClass != null && !initializeClass(snapshot, adaptiveClass)) return null;
+        return adaptiveClass;
+    }
+
+    private Function<T, T> findWrapper(Snapshot snapshot, String name) {
+        Function<T, T> wrapper = snapshot.name2Wrapper.get(name);
+        if (wrapper == null && lazy) {
+            LazyClass lazyClass = snapshot.name2LazyWrapper.get(name);
+            if (lazyClass == null) return null;
+            synchronized (lazyClass) {
+                wrapper = snapshot.name2Wrapper.get(name);
+                if (wrapper != null || lazyClass.failed) return wrapper;
+                try {
+                    Class<? extends T> clazz = loadClass(lazyClass.definition, getScope(), true);
+                    wrapper = Instantiators.wrapperConstructor(clazz, type);
+                } catch (Throwable t) {
+                    lazyClass.failed = true;
+                    recordLoadException(snapshot, lazyClass.line, lazyClass.source, t);
+                    throw new IllegalStateException("Fail to create wrapper(" + name + ") for extension point " + type +
+                            ", cause: " + t.getMessage(), t);
+                }
+                for (String n : lazyClass.definition.names()) {
+                    if (snapshot.name2LazyWrapper.get(n) == lazyClass) snapshot.name2Wrapper.put(n, wrapper);
+                }
+            }
+        }
+        return wrapper;
+    }
+
+    private IllegalStateException findExtensionClassLoadException(Snapshot snapshot, String name) {
+        String msg = "No such extension " + type.getName() + " by name " + name;
+
+        for (Map.Entry<String, IllegalStateException> entry : snapshot.loadExceptions.entrySet()) {
+            if (entry.getKey().toLowerCase().contains(name.toLowerCase())) {
+                IllegalStateException e = entry.getValue();
+                return new IllegalStateException(msg + ", cause: " + e.getMessage(), e);
+            }
+        }
+
+        StringBuilder buf = new StringBuilder(msg);
+        if (!snapshot.loadExceptions.isEmpty()) {
+            buf.append(", possible causes: ");
+            int i = 1;
+            for (Map.Entry<String, IllegalStateException> entry : snapshot.loadExceptions.entrySet()) {
+                buf.append("\r\n(");
+                buf.append(i++);
+                buf.append(") ");
+                buf.append(entry.getKey());
+                buf.append(":\r\n");
+                buf.append(StringUtils.toString(entry.getValue()));
+            }
+        }
+        return new IllegalStateException(buf.toString());
+    }
+
+    /**
+     * @param reload 重新加载时配置文件可能已经修改，不使用二进制索引
+     */
+    private Snapshot loadSnapshot(boolean reload) {
+        final long start = System.nanoTime();
+        final Object event = events.beginLoad();
+        final Snapshot snapshot = new Snapshot();
+        String fileName = null;
+        try {
+            ClassLoader classLoader = getScope();
+
+            // 编译期生成的索引中的扩展点，不用再解析提供了索引的Jar包中的配置文件，其它Jar包中的配置文件仍然读取
+            List<ExtensionDefinition> indexed = ExtensionIndexes.find(classLoader, type.getName());
+            if (indexed != null) loadDefinitions(snapshot, classLoader, indexed, "extension index");
+
+            // 二进制索引记录的是所有配置文件的解析结果，只用于不在编译期索引中的扩展点
+            List<ExtensionDefinition> binary = null;
+            if (indexed == null && !reload) binary = BinaryExtensionIndex.find(classLoader, type.getName());
+            if (binary != null) {
+                loadDefinitions(snapshot, classLoader, binary, "binary extension index");
+            } else {
+                fileName = EXTENSION_CONF_DIRECTORY + type.getName();
+                Enumeration<java.net.URL> urls;
+                if (classLoader != null) {
+                    urls = classLoader.getResources(fileName);
+                } else {
+                    urls = ClassLoader.getSystemResources(fileName);
+                }
+
+                List<ExtensionDefinition> definitions = new ArrayList<ExtensionDefinition>();
+                boolean complete = true;
+                if (urls != null) { // 找到的urls为null，或是没有找到文件，即认为是没有找到扩展点
+                    while (urls.hasMoreElements()) {
+                        java.net.URL url = urls.nextElement();
+                        if (indexed != null && ExtensionIndexes.covers(classLoader, type.getName(), url, fileName)) continue;
+                        final Object readEvent = events.beginRead();
+                        final int read = definitions.size();
+                        complete &= readExtension0(snapshot, definitions, classLoader, url);
+                        events.endRead(readEvent, type, url, definitions.size() - read);
+                        DescriptorWatcher.watch(this, url);
+                    }
+                }
+                snapshot.complete = complete;
+                // 有解析不了的配置行时不记录，下次启动仍然解析配置文件报告出错的配置行
+                if (complete && indexed == null) BinaryExtensionIndex.record(classLoader, type.getName(), definitions);
+            }
+        } catch (Throwable t) {
+            snapshot.complete = false;
+            logger.error("Exception when load extension point(interface: " +
+                    type.getName() + ", description file: " + fileName + ").", t);
+        }
+        snapshot.attributeIndex = new AttributeIndex(snapshot.name2Attributes);
+        events.endLoad(event, type, lazy ? snapshot.name2LazyClass.size() : snapshot.name2Class.size(), reload);
+        lastLoadNanos = System.nanoTime() - start;
+        lastLoadTime = System.currentTimeMillis();
+        if (metrics != null) metrics.onLoad(type, lastLoadNanos);
+        return snapshot;
+    }
+
+    private void loadDefinitions(Snapshot snapshot, ClassLoader classLoader, List<ExtensionDefinition> definitions, String source) {
+        for (ExtensionDefinition definition : definitions) {
+            String line = definition.toString();
+            try {
+                loadDefinition(snapshot, classLoader, definition, line, source);
+            } catch (Throwable t) {
+                recordLoadException(snapshot, line, source, t);
+            }
+        }
+    }
+
+    private void recordLoadException(Snapshot snapshot, String line, String source, Throwable t) {
+        IllegalStateException e = new IllegalStateException("Failed to load config line(" + line +
+                ") of " + source + " for extension(" + type.getName() +
+                "), cause: " + t.getMessage(), t);
+        logger.warn("", e);
+        snapshot.loadExceptions.put(line, e);
+    }
+
+    /**
+     * @param definitions 收集解析出的扩展定义
+     * @return 配置文件的所有行都解析成功，返回<code>true</code>
+     */
+    private boolean readExtension0(Snapshot snapshot, List<ExtensionDefinition> definitions, ClassLoader classLoader, URL url) {
+        boolean complete = true;
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(url.openStream(), "utf-8");
+            final String source = "config file(" + url + ")";
+            // 跳过了注释和空行
+            DescriptorParser parser = new DescriptorParser(reader);
+            while (parser.nextLine()) {
+                ExtensionDefinition definition = null;
+                try {
+                    definition = parser.parse();
+                    definitions.add(definition);
+                    loadDefinition(snapshot, classLoader, definition, parser.getLine(), source);
+                } catch (Throwable t) {
+                    if (definition == null) complete = false;
+                    recordLoadException(snapshot, parser.getLine(), source, t);
+                }
+            } // end of while read lines
+        } catch (Throwable t) {
+            complete = false;
+            logger.error("Exception when load extension class(interface: " +
+                    type.getName() + ", class file: " + url + ") in " + url, t);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Throwable t) {
+                    // ignore
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * 加载配置行的实现类；延迟加载时只登记配置行，在第一次使用时才加载实现类。
+     *
+     * @param line   配置行，作为加载出错时异常的Key
+     * @param source 配置行的来源，用于出错信息
+     */
+    private void loadDefinition(Snapshot snapshot, ClassLoader classLoader, ExtensionDefinition definition, String line, String source) throws ClassNotFoundException {
+        for (String n : definition.names()) {
+            if (definition.getKind() != ExtensionDefinition.Kind.ADAPTIVE && !isValidExtName(n)) {
+                throw new IllegalStateException("name(" + n +
+                        ") of extension " + type.getName() + "is invalid!");
+            }
+        }
+        ExtensionAttributes attributes = null;
+        if (definition.getKind() == ExtensionDefinition.Kind.EXTENSION) {
+            attributes = new ExtensionAttributes(definition.getAttributes());
+            checkAttributes(attributes);
+        }
+        if (lazy) {
+            registerLazyDefinition(snapshot, new LazyClass(definition, line, source), attributes);
+            return;
+        }
+
+        // 在加载锁内只加载不初始化，静态初始化在发布快照之后
+        Class<? extends T> clazz = loadClass(definition, classLoader, false);
+        if (!initializedClasses.contains(clazz)) {
+            snapshot.uninitialized.putIfAbsent(clazz, new LazyClass(definition, line, source));
+        }
+        if (definition.getKind() == ExtensionDefinition.Kind.ADAPTIVE) {
+            if (snapshot.adaptiveClass == null) {
+                snapshot.adaptiveClass = clazz;
+            } else if (!snapshot.adaptiveClass.equals(clazz)) {
+                throw new IllegalStateException("More than 1 adaptive class found: "
+                        + snapshot.adaptiveClass.getName()
+                        + ", " + clazz.getName());
+            }
+            return;
+        }
+
+        final boolean isWrapper = definition.getKind() == ExtensionDefinition.Kind.WRAPPER;
+        for (String n : definition.names()) {
+            if (isWrapper) {
+                snapshot.name2Wrapper.put(n, Instantiators.wrapperConstructor(clazz, type));
+            } else {
+                Class<?> registered = snapshot.name2Class.get(n);
+                if (registered == null) {
+                    snapshot.name2Class.put(n, clazz);
+                } else if (registered != clazz) {
+                    throw new IllegalStateException("Duplicate extension " +
+                            type.getName() + " name " + n +
+                            " on " + registered.getName() + " and " + clazz.getName());
+                }
+                snapshot.name2Attributes.put(n, definition.getAttributes());
+                snapshot.name2ExtensionAttributes.put(n, attributes);
+            }
+        }
+    }
+
+    /**
+     * 检查有特定含义的扩展属性，出错的配置行在加载时就报告，不在使用时才报错。
+     */
+    private void checkAttributes(ExtensionAttributes attributes) {
+        attributes.getInt(ATTRIBUTE_ORDER, 0);
+        String scope = attributes.getString(ATTRIBUTE_SCOPE);
+        if (scope != null && !InstanceScope.isValid(scope)) {
+            throw new IllegalStateException("attribute " + ATTRIBUTE_SCOPE + "(" + scope + ") is not " +
+                    InstanceScope.SINGLETON + ", " + InstanceScope.PROTOTYPE + ", " +
+                    InstanceScope.THREAD + ", " + InstanceScope.STRIPED + " or " + InstanceScope.POOL + "!");
+        }
+        InstanceScope.checkAttributes(attributes);
+    }
+
+    /**
+     * 延迟加载时登记配置行。不加载实现类，重复的扩展名按实现类的类名检查。
+     */
+    private void registerLazyDefinition(Snapshot snapshot, LazyClass lazyClass, ExtensionAttributes attributes) {
+        ExtensionDefinition definition = lazyClass.definition;
+        if (definition.getKind() == ExtensionDefinition.Kind.ADAPTIVE) {
+            if (snapshot.lazyAdaptiveClass == null) {
+                snapshot.lazyAdaptiveClass = lazyClass;
+            } else if (!snapshot.lazyAdaptiveClass.definition.getClassName().equals(definition.getClassName())) {
+                throw new IllegalStateException("More than 1 adaptive class found: "
+                        + snapshot.lazyAdaptiveClass.definition.getClassName()
+                        + ", " + definition.getClassName());
+            }
+            return;
+        }
+
+        final boolean isWrapper = definition.getKind() == ExtensionDefinition.Kind.WRAPPER;
+        for (String n : definition.names()) {
+            if (isWrapper) {
+                snapshot.name2LazyWrapper.put(n, lazyClass);
+            } else {
+                LazyClass registered = snapshot.name2LazyClass.get(n);
+                if (registered == null) {
+                    snapshot.name2LazyClass.put(n, lazyClass);
+                } else if (!registered.definition.getClassName().equals(definition.getClassName())) {
+                    throw new IllegalStateException("Duplicate extension " +
+                            type.getName() + " name " + n +
+                            " on " + registered.definition.getClassName() + " and " + definition.getClassName());
+                }
+                snapshot.name2Attributes.put(n, definition.getAttributes());
+                snapshot.name2ExtensionAttributes.put(n, attributes);
+            }
+        }
+    }
+
+    /**
+     * 加载并检查配置行的实现类：是扩展点的子类型，有需要的构造函数。
+     *
+     * @param initialize 是否初始化实现类
+     */
+    private Class<? extends T> loadClass(ExtensionDefinition definition, ClassLoader classLoader, boolean initialize) throws ClassNotFoundException {
+        final long start = metrics == null ? 0 : System.nanoTime();
+        Class<?> loaded = Class.forName(definition.getClassName(), initialize, classLoader);
+        if (initialize && initializedClasses.add(loaded) && metrics != null) {
+            metrics.onClassInit(type, loaded, System.nanoTime() - start);
+        }
+        if (!type.isAssignableFrom(loaded)) {
+            throw new IllegalStateException("Error when load extension class(interface: " +
+                    type.getName() + ", class line: " + loaded.getName() + "), class "
+                    + loaded.getName() + "is not subtype of interface.");
+        }
+        Class<? extends T> clazz = loaded.asSubclass(type);
+        ExtensionLoaderRegistry.classLoaded(this, clazz);
+
+        if (definition.getKind() == ExtensionDefinition.Kind.WRAPPER) {
+            try {
+                clazz.getConstructor(type);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("wrapper class(" + clazz +
+                        ") has NO copy constructor!", e);
+            }
+        } else if (definition.getKind() == ExtensionDefinition.Kind.EXTENSION) {
+            try {
+                clazz.getConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("extension class(" + clazz +
+                        ") has NO default constructor!", e);
+            }
+        }
+        return clazz;
+    }
+
+    // ====================================
+    // JMX
+    // ====================================
+
+    // 最近一次加载的耗时和完成时间，只用于监控
+    private volatile long lastLoadNanos;
+    private volatile long lastLoadTime;
+    // 创建的扩展实例数，只在创建实例时计数，不影响获取缓存的实例
+    private final LongAdder instantiations = new LongAdder();
+
+    /**
+     * {@link ExtensionLoaderMXBean}的实现，由{@link ExtensionLoaderMBeans}注册。
+     * <p/>
+     * 每次读取属性时取一次当前发布的快照，不加锁、不触发加载。
+     * 弱引用{@link ExtensionLoader}，注册在MBeanServer中不阻止其ClassLoader的回收。
+     */
+    static final class View<T> implements ExtensionLoaderMXBean {
+        final WeakReference<ExtensionLoader<T>> loader;
+        final ObjectName name;
+
+        View(ExtensionLoader<T> loader, ObjectName name) {
+            this.loader = new WeakReference<ExtensionLoader<T>>(loader);
+            this.name = name;
+        }
+
+        private ExtensionLoader<T> loader() {
+            ExtensionLoader<T> l = loader.get();
+            if (l == null) throw new IllegalStateException("ExtensionLoader of " + name + " is released!");
+            return l;
+        }
+
+        public String getExtensionPoint() {
+            return loader().type.getName();
+        }
+
+        public String getClassLoader() {
+            return String.valueOf(loader().getScope());
+        }
+
+        public boolean isLoaded() {
+            return loader().snapshot != null;
+        }
+
+        public boolean isLazy() {
+            return loader().lazy;
+        }
+
+        public String getDefaultExtensionName() {
+            return loader().defaultExtension;
+        }
+
+        public Set<String> getSupportedExtensions() {
+            ExtensionLoader<T> l = loader();
+            ExtensionLoader<T>.Snapshot s = l.snapshot;
+            if (s == null) return Collections.emptySet();
+            return new TreeSet<String>(l.supportedExtensions(s));
+        }
+
+        public Set<String> getWrapperNames() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            if (s == null) return Collections.emptySet();
+            Set<String> names = new TreeSet<String>(s.name2Wrapper.keySet());
+            names.addAll(s.name2LazyWrapper.keySet());
+            return names;
+        }
+
+        public String getAdaptiveClass() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            if (s == null) return null;
+            Class<?> adaptiveClass = s.adaptiveClass;
+            if (adaptiveClass != null) return adaptiveClass.getName();
+            LazyClass lazyClass = s.lazyAdaptiveClass;
+            return lazyClass == null ? null : lazyClass.definition.getClassName();
+        }
+
+        public Map<String, String> getLoadExceptions() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            Map<String, String> exceptions = new TreeMap<String, String>();
+            if (s != null) {
+                for (Map.Entry<String, IllegalStateException> entry : s.loadExceptions.entrySet()) {
+                    exceptions.put(entry.getKey(), entry.getValue().getMessage());
+                }
+            }
+            return exceptions;
+        }
+
+        public long getLastLoadNanos() {
+            return loader().lastLoadNanos;
+        }
+
+        public long getLastLoadTime() {
+            return loader().lastLoadTime;
+        }
+
+        public long getInstantiations() {
+            return loader().instantiations.sum();
+        }
+
+        public int getCachedInstances() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            if (s == null) return 0;
+            int count = 0;
+            for (InstanceScope<T> instances : s.instances.values()) {
+                count += instances.size();
+            }
+            return count;
+        }
+
+        public int getCachedWrapperChains() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            return s == null ? 0 : s.wrapperChains.size();
+        }
+
+        public int getCachedActivations() {
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            return s == null ? 0 : s.activations.size();
+        }
+
+        public long getPoolHits() {
+            long count = 0;
+            for (InstanceScope.Pooled<T> pool : pools()) {
+                count += pool.hits.sum();
+            }
+            return count;
+        }
+
+        public long getPoolMisses() {
+            long count = 0;
+            for (InstanceScope.Pooled<T> pool : pools()) {
+                count += pool.misses.sum();
+            }
+            return count;
+        }
+
+        public long getPoolEvictions() {
+            long count = 0;
+            for (InstanceScope.Pooled<T> pool : pools()) {
+                count += pool.evictions.sum();
+            }
+            return count;
+        }
+
+        private List<InstanceScope.Pooled<T>> pools() {
+            List<InstanceScope.Pooled<T>> pools = new ArrayList<InstanceScope.Pooled<T>>();
+            ExtensionLoader<T>.Snapshot s = loader().snapshot;
+            if (s != null) {
+                for (InstanceScope<T> instances : s.instances.values()) {
+                    if (instances instanceof InstanceScope.Pooled) pools.add((InstanceScope.Pooled<T>) instances);
+                }
+            }
+            return pools;
+        }
+
+        public Map<String, Long> getCounters() {
+            Map<String, Long> counters = new LinkedHashMap<String, Long>();
+            if (!(metrics instanceof CounterExtensionMetrics)) return counters;
+            CounterExtensionMetrics.Counters c = ((CounterExtensionMetrics) metrics).getCounters(loader().type);
+            if (c == null) return counters;
+            counters.put("loads", c.getLoads());
+            counters.put("loadNanos", c.getLoadNanos());
+            counters.put("classInits", c.getClassInits());
+            counters.put("classInitNanos", c.getClassInitNanos());
+            counters.put("instantiations", c.getInstantiations());
+            counters.put("instantiationNanos", c.getInstantiationNanos());
+            counters.put("injections", c.getInjections());
+            counters.put("injectionNanos", c.getInjectionNanos());
+            counters.put("wraps", c.getWraps());
+            counters.put("wrapNanos", c.getWrapNanos());
+            counters.put("cacheHits", c.getCacheHits());
+            counters.put("cacheMisses", c.getCacheMisses());
+            counters.put("poolHits", c.getPoolHits());
+            counters.put("poolMisses", c.getPoolMisses());
+            counters.put("poolEvictions", c.getPoolEvictions());
+            return counters;
+        }
+
+        public void preload(boolean instantiateDefault) {
+            loader().preload(instantiateDefault);
+        }
+
+        public void reload() {
+            loader().reload();
+        }
+    }
+
+    // =========================
+    // small helper methods
+    // =========================
+
+    private static ClassLoader getClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader != null) {
+            return classLoader;
+        }
+        classLoader = ExtensionLoader.class.getClassLoader();
+        if (classLoader != null) {
+            return classLoader;
+        }
+        return classLoader;
+    }
+
+    private static boolean isValidExtName(String name) {
+        return NAME_PATTERN.matcher(name).matches();
+    }
+
+    /**
+     * <code>
+     * "attrib1=value1,attrib2=value2,isProvider,order=3" =>
+     * {"attrib1"="value1", "attrib2"="value2", "isProvider"="", "order"="3"}
+     * </code>
+     */
+    static Map<String, String> parseExtAttribute(String attribute) {
+        if (attribute == null) return new HashMap<String, String>();
+        return DescriptorParser.parseAttributes(attribute.toCharArray(), 0, attribute.length());
+    }
+}
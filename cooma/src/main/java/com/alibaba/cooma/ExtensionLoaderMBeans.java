@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 把{@link ExtensionLoader}注册为平台MBean，见{@link ExtensionLoaderMXBean}。
+ * <p/>
+ * 只在系统属性<code>cooma.jmx</code>设置为<code>true</code>时启用。
+ * 注册的MBean弱引用{@link ExtensionLoader}，不阻止其ClassLoader的回收；
+ * {@link ExtensionLoader}释放时注销，回收了的在下次注册或注销时一起注销。
+ *
+ * @since 0.4.1
+ */
+final class ExtensionLoaderMBeans {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionLoaderMBeans.class);
+
+    static final String ENABLED_PROPERTY = "cooma.jmx";
+
+    static final String DOMAIN = "com.alibaba.cooma";
+
+    private static final List<ExtensionLoader.View<?>> VIEWS = new ArrayList<ExtensionLoader.View<?>>();
+
+    static <T> void register(ExtensionLoader<T> loader) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY)) return;
+        try {
+            register(new ExtensionLoader.View<T>(loader, objectName(loader.getType(), loader.getScope())));
+        } catch (Throwable t) {
+            logger.warn("Fail to register MBean of " + loader + ", ignored, cause: " + t.getMessage(), t);
+        }
+    }
+
+    private static synchronized void register(ExtensionLoader.View<?> view) throws Exception {
+        remove(null);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(view, view.name);
+        VIEWS.add(view);
+    }
+
+    static synchronized void unregister(ExtensionLoader<?> loader) {
+        remove(loader);
+    }
+
+    /**
+     * 注销{@link ExtensionLoader}的MBean，同时注销已经回收了的；参数为<code>null</code>时只注销回收了的。
+     */
+    private static void remove(ExtensionLoader<?> loader) {
+        for (Iterator<ExtensionLoader.View<?>> iterator = VIEWS.iterator(); iterator.hasNext(); ) {
+            ExtensionLoader.View<?> view = iterator.next();
+            ExtensionLoader<?> l = view.loader.get();
+            if (l == null || l == loader) {
+                iterator.remove();
+                unregister(view.name);
+            }
+        }
+    }
+
+    private static void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (Throwable t) {
+            logger.warn("Fail to unregister MBean " + name + ", ignored, cause: " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * 同一个扩展点在不同ClassLoader下的{@link ExtensionLoader}用ClassLoader的类名和identityHashCode区分。
+     */
+    static ObjectName objectName(Class<?> type, ClassLoader scope) throws Exception {
+        String id = scope == null ? "bootstrap" :
+                scope.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(scope));
+        return new ObjectName(DOMAIN + ":type=ExtensionLoader,name=" + type.getName() + ",scope=" + id);
+    }
+
+    private ExtensionLoaderMBeans() {
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ExtensionLoader}的JMX管理接口。
+ * <p/>
+ * 只在系统属性<code>cooma.jmx</code>设置为<code>true</code>时，每个{@link ExtensionLoader}注册到平台MBeanServer，
+ * ObjectName为<code>com.alibaba.cooma:type=ExtensionLoader,name=扩展点接口名,scope=ClassLoader标识</code>。
+ * <p/>
+ * 属性只读取{@link ExtensionLoader}已经发布的扩展快照，不加锁，也不会触发加载；
+ * 监控定时轮询不会和获取扩展的线程竞争。还没有加载的{@link ExtensionLoader}返回空的集合。
+ *
+ * @since 0.4.1
+ */
+public interface ExtensionLoaderMXBean {
+    /**
+     * 扩展点接口名。
+     */
+    String getExtensionPoint();
+
+    /**
+     * 查找扩展配置和加载扩展实现类的ClassLoader。
+     */
+    String getClassLoader();
+
+    /**
+     * 是否已经加载了扩展点。
+     */
+    boolean isLoaded();
+
+    boolean isLazy();
+
+    String getDefaultExtensionName();
+
+    /**
+     * 支持的扩展名，同{@link ExtensionLoader#getSupportedExtensions()}，但没有加载时不加载。
+     */
+    Set<String> getSupportedExtensions();
+
+    Set<String> getWrapperNames();
+
+    /**
+     * 配置的自适应扩展类名，没有配置返回<code>null</code>。
+     */
+    String getAdaptiveClass();
+
+    /**
+     * 加载失败的配置行和出错信息：Map&lt;配置行, 出错信息&gt;。
+     */
+    Map<String, String> getLoadExceptions();
+
+    /**
+     * 最近一次加载或重新加载的耗时，纳秒。
+     */
+    long getLastLoadNanos();
+
+    /**
+     * 最近一次加载或重新加载完成的时间，没有加载返回<code>0</code>。
+     */
+    long getLastLoadTime();
+
+    /**
+     * 创建的扩展实例总数，包括prototype扩展和重新加载前创建的实例，不包括Wrapper实例。
+     */
+    long getInstantiations();
+
+    /**
+     * 当前缓存的扩展实例数；<code>thread</code>作用域的扩展是创建过的实例数，<code>pool</code>作用域的是池中空闲的实例数。
+     */
+    int getCachedInstances();
+
+    /**
+     * 当前缓存的Wrapper链数。
+     */
+    int getCachedWrapperChains();
+
+    /**
+     * 当前缓存的激活扩展的查询数。
+     */
+    int getCachedActivations();
+
+    /**
+     * <code>scope=pool</code>的扩展借出时命中池中空闲实例的次数，只统计当前快照中的池。
+     */
+    long getPoolHits();
+
+    /**
+     * <code>scope=pool</code>的扩展借出时新建实例的次数，只统计当前快照中的池。
+     */
+    long getPoolMisses();
+
+    /**
+     * <code>scope=pool</code>的扩展回收的空闲超时实例数，只统计当前快照中的池。
+     */
+    long getPoolEvictions();
+
+    /**
+     * 开启了{@link CounterExtensionMetrics}统计时，这个扩展点在各个ClassLoader下累计的计数；没有开启返回空的Map。
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * 加载扩展点。
+     *
+     * @param instantiateDefault 是否同时创建缺省扩展的实例
+     * @see ExtensionLoader#preload(java.util.Collection, boolean)
+     */
+    void preload(boolean instantiateDefault);
+
+    /**
+     * @see ExtensionLoader#reload()
+     */
+    void reload();
+}
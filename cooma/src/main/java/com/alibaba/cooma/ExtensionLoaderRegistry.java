@@ -0,0 +1,318 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按ClassLoader划分的{@link ExtensionLoader}注册表。
+ * <p/>
+ * 同一个扩展点在不同的ClassLoader（线程上下文ClassLoader）下有各自的{@link ExtensionLoader}，
+ * 加载的扩展实现类和扩展实例互不影响。线程上下文ClassLoader没有增加扩展点的配置文件和索引、类又委托给扩展点自己的ClassLoader加载时，
+ * 看到的扩展和扩展点自己的ClassLoader相同，使用扩展点自己的ClassLoader下的{@link ExtensionLoader}，
+ * 单例的扩展不会因为线程的上下文ClassLoader不同（如线程池、{@code ForkJoinPool.commonPool()}的线程）而重复创建。
+ * 注册表不强引用ClassLoader，ClassLoader不再使用时，
+ * 其下的{@link ExtensionLoader}、扩展实现类和扩展实例可以一起回收：
+ * <ul>
+ * <li>扩展点自己的ClassLoader下的{@link ExtensionLoader}，通过{@link ClassValue}挂在扩展点接口上，和扩展点同生命周期。
+ * <li>其它ClassLoader下的{@link ExtensionLoader}，注册表中只是弱引用，强引用挂在这个ClassLoader加载的扩展实现类上；
+ * 还没有加载这个ClassLoader的实现类时挂在扩展点接口上，这时{@link ExtensionLoader}对ClassLoader也只是弱引用，
+ * ClassLoader回收后摘除。
+ * </ul>
+ * {@link #release(ClassLoader)}可以确定性的释放一个ClassLoader下的所有{@link ExtensionLoader}。
+ *
+ * @since 0.4.1
+ */
+final class ExtensionLoaderRegistry {
+    private static final ClassValue<TypeEntry> TYPES = new ClassValue<TypeEntry>() {
+        @Override
+        protected TypeEntry computeValue(Class<?> type) {
+            return new TypeEntry();
+        }
+    };
+
+    // 挂在类上的ExtensionLoader，只被这个类强引用
+    private static final ClassValue<Set<ExtensionLoader<?>>> PINS = new ClassValue<Set<ExtensionLoader<?>>>() {
+        @Override
+        protected Set<ExtensionLoader<?>> computeValue(Class<?> clazz) {
+            return Collections.newSetFromMap(new ConcurrentHashMap<ExtensionLoader<?>, Boolean>());
+        }
+    };
+
+    // Map<ClassLoader, ClassLoader下的ExtensionLoader>，用于释放
+    private static final Map<ClassLoader, List<WeakReference<ExtensionLoader<?>>>> SCOPES =
+            new WeakHashMap<ClassLoader, List<WeakReference<ExtensionLoader<?>>>>();
+
+    private static final ReferenceQueue<ClassLoader> STALE_SCOPES = new ReferenceQueue<ClassLoader>();
+
+    // Map<不是URLClassLoader的ClassLoader, 自己是否提供了扩展配置>
+    private static final Map<ClassLoader, Boolean> ADDS_EXTENSIONS = new WeakHashMap<ClassLoader, Boolean>();
+
+    /**
+     * 一个扩展点在各个ClassLoader下的{@link ExtensionLoader}。
+     */
+    private static final class TypeEntry {
+        volatile boolean validated;
+        // 扩展点自己的ClassLoader下的ExtensionLoader，最常用
+        volatile ExtensionLoader<?> own;
+        // 最近一次使用的其它ClassLoader和其下的ExtensionLoader
+        volatile LastUsed last;
+        final Map<ClassLoader, WeakReference<ExtensionLoader<?>>> scoped = new WeakHashMap<ClassLoader, WeakReference<ExtensionLoader<?>>>();
+    }
+
+    /**
+     * {@link ExtensionLoader}对所属ClassLoader的弱引用，ClassLoader回收后摘除挂在扩展点接口上的{@link ExtensionLoader}。
+     */
+    static final class ScopeReference extends WeakReference<ClassLoader> {
+        final ExtensionLoader<?> loader;
+
+        ScopeReference(ClassLoader scope, ExtensionLoader<?> loader) {
+            super(scope, STALE_SCOPES);
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * 最近一次使用的ClassLoader和其下的{@link ExtensionLoader}，都是弱引用。
+     */
+    private static final class LastUsed extends WeakReference<ExtensionLoader<?>> {
+        final WeakReference<ClassLoader> scope;
+
+        LastUsed(ClassLoader scope, ExtensionLoader<?> loader) {
+            super(loader);
+            this.scope = new WeakReference<ClassLoader>(scope);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ExtensionLoader<T> get(Class<T> type, ClassLoader scope) {
+        TypeEntry entry = TYPES.get(type);
+        ExtensionLoader<?> loader = entry.own;
+        if (loader != null && scope == type.getClassLoader()) return (ExtensionLoader<T>) loader;
+
+        LastUsed last = entry.last;
+        if (last != null && last.scope.get() == scope && (loader = last.get()) != null) return (ExtensionLoader<T>) loader;
+
+        return getOrCreate(entry, type, scope);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ExtensionLoader<T> getOrCreate(TypeEntry entry, Class<T> type, ClassLoader scope) {
+        expungeStaleScopes();
+
+        synchronized (entry) {
+            if (!entry.validated) {
+                validate(type);
+                entry.validated = true;
+            }
+
+            if (scope == type.getClassLoader()) return getOwn(entry, type);
+
+            WeakReference<ExtensionLoader<?>> ref = entry.scoped.get(scope);
+            ExtensionLoader<?> loader = ref == null ? null : ref.get();
+            if (loader == null) {
+                if (sharesOwnScope(type, scope)) {
+                    loader = getOwn(entry, type);
+                } else {
+                    loader = new ExtensionLoader<T>(type, scope);
+                    PINS.get(type).add(loader);
+                    register(scope, loader);
+                }
+                entry.scoped.put(scope, new WeakReference<ExtensionLoader<?>>(loader));
+            }
+            entry.last = new LastUsed(scope, loader);
+            return (ExtensionLoader<T>) loader;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ExtensionLoader<T> getOwn(TypeEntry entry, Class<T> type) {
+        if (entry.own == null) {
+            ClassLoader scope = type.getClassLoader();
+            ExtensionLoader<T> loader = new ExtensionLoader<T>(type, scope);
+            register(scope, loader);
+            entry.own = loader;
+        }
+        return (ExtensionLoader<T>) entry.own;
+    }
+
+    /**
+     * ClassLoader是否和扩展点自己的ClassLoader看到同样的扩展：
+     * 扩展点自己的ClassLoader是它的祖先（实现类委托加载），并且之间的ClassLoader都没有增加扩展配置文件和{@link ExtensionIndex}。
+     * 不只检查这个扩展点的配置文件，ClassLoader增加了其它扩展点的配置时，注入的扩展也要从这个ClassLoader查找，不能共用。
+     * <p/>
+     * 在获取{@link ExtensionLoader}的路径上，不扫描整个类路径：{@link URLClassLoader}只查找自己的URL；
+     * 其它ClassLoader比较它和父ClassLoader找到的配置文件目录和{@link ExtensionIndex}，结果按ClassLoader缓存。
+     * Child-first的ClassLoader在自己的URL上又找到一份同样的配置文件，仍然使用各自的{@link ExtensionLoader}。
+     */
+    private static boolean sharesOwnScope(Class<?> type, ClassLoader scope) {
+        ClassLoader own = type.getClassLoader();
+        if (own == null || scope == null || !isAncestor(own, scope)) return false;
+        for (ClassLoader cl = scope; cl != own; cl = cl.getParent()) {
+            if (addsExtensions(cl, type)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAncestor(ClassLoader ancestor, ClassLoader cl) {
+        for (ClassLoader p = cl.getParent(); p != null; p = p.getParent()) {
+            if (p == ancestor) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return ClassLoader自己（不算父ClassLoader）是否提供了扩展配置文件或{@link ExtensionIndex}
+     */
+    private static boolean addsExtensions(ClassLoader cl, Class<?> type) {
+        if (cl instanceof URLClassLoader) {
+            URLClassLoader urlClassLoader = (URLClassLoader) cl;
+            return urlClassLoader.findResource(ExtensionLoader.EXTENSION_CONF_DIRECTORY) != null
+                    || urlClassLoader.findResource(ExtensionLoader.EXTENSION_CONF_DIRECTORY + type.getName()) != null
+                    || urlClassLoader.findResource(ExtensionIndexes.SERVICE_FILE) != null;
+        }
+
+        synchronized (ADDS_EXTENSIONS) {
+            Boolean adds = ADDS_EXTENSIONS.get(cl);
+            if (adds == null) {
+                try {
+                    adds = !getResources(cl, ExtensionLoader.EXTENSION_CONF_DIRECTORY).equals(getResources(cl.getParent(), ExtensionLoader.EXTENSION_CONF_DIRECTORY))
+                            || !getResources(cl, ExtensionIndexes.SERVICE_FILE).equals(getResources(cl.getParent(), ExtensionIndexes.SERVICE_FILE));
+                } catch (IOException e) {
+                    adds = true;
+                }
+                ADDS_EXTENSIONS.put(cl, adds);
+            }
+            return adds;
+        }
+    }
+
+    // 比较URL的字符串，URL.equals会解析主机名
+    private static List<String> getResources(ClassLoader cl, String name) throws IOException {
+        List<String> urls = new ArrayList<String>();
+        for (Enumeration<URL> e = cl.getResources(name); e.hasMoreElements(); ) {
+            urls.add(e.nextElement().toExternalForm());
+        }
+        return urls;
+    }
+
+    /**
+     * 检查失败不缓存，下次获取时再次检查。
+     */
+    private static void validate(Class<?> type) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException("Extension type(" + type.getName() + ") is not interface!");
+        }
+        if (!type.isAnnotationPresent(Extension.class)) {
+            throw new IllegalArgumentException("type(" + type.getName() +
+                    ") is not a extension, because WITHOUT @Extension Annotation!");
+        }
+    }
+
+    private static void register(ClassLoader scope, ExtensionLoader<?> loader) {
+        synchronized (SCOPES) {
+            List<WeakReference<ExtensionLoader<?>>> loaders = SCOPES.get(scope);
+            if (loaders == null) {
+                loaders = new ArrayList<WeakReference<ExtensionLoader<?>>>();
+                SCOPES.put(scope, loaders);
+            }
+            loaders.add(new WeakReference<ExtensionLoader<?>>(loader));
+        }
+        ExtensionLoaderMBeans.register(loader);
+    }
+
+    /**
+     * {@link ExtensionLoader}加载了所属ClassLoader的类后，从扩展点接口上改挂到这个类上。
+     */
+    static void classLoaded(ExtensionLoader<?> loader, Class<?> clazz) {
+        if (loader.pinned != null) return;
+        Class<?> type = loader.getType();
+        ClassLoader scope = loader.getScope();
+        if (scope == type.getClassLoader() || clazz.getClassLoader() != scope) return;
+
+        synchronized (TYPES.get(type)) {
+            if (loader.pinned != null) return;
+            PINS.get(clazz).add(loader);
+            PINS.get(type).remove(loader);
+            loader.pinned = clazz;
+        }
+    }
+
+    static void release(ClassLoader scope) {
+        List<WeakReference<ExtensionLoader<?>>> loaders;
+        synchronized (SCOPES) {
+            loaders = SCOPES.remove(scope);
+        }
+        if (loaders != null) {
+            for (WeakReference<ExtensionLoader<?>> ref : loaders) {
+                ExtensionLoader<?> loader = ref.get();
+                if (loader != null) {
+                    unregister(loader);
+                    loader.release();
+                }
+            }
+        }
+        ExtensionIndexes.release(scope);
+    }
+
+    private static void unregister(ExtensionLoader<?> loader) {
+        Class<?> type = loader.getType();
+        TypeEntry entry = TYPES.get(type);
+        synchronized (entry) {
+            if (entry.own == loader) entry.own = null;
+            // 扩展点自己的ClassLoader下的ExtensionLoader可能同时用于其它ClassLoader
+            for (Iterator<WeakReference<ExtensionLoader<?>>> it = entry.scoped.values().iterator(); it.hasNext(); ) {
+                if (it.next().get() == loader) it.remove();
+            }
+            LastUsed last = entry.last;
+            if (last != null && last.get() == loader) entry.last = null;
+
+            PINS.get(type).remove(loader);
+            if (loader.pinned != null) PINS.get(loader.pinned).remove(loader);
+        }
+        ExtensionLoaderMBeans.unregister(loader);
+    }
+
+    /**
+     * 摘除ClassLoader已经回收、还挂在扩展点接口上的{@link ExtensionLoader}。
+     */
+    private static void expungeStaleScopes() {
+        Reference<? extends ClassLoader> ref;
+        while ((ref = STALE_SCOPES.poll()) != null) {
+            ExtensionLoader<?> loader = ((ScopeReference) ref).loader;
+            unregister(loader);
+            loader.release();
+        }
+    }
+
+    private ExtensionLoaderRegistry() {
+    }
+}
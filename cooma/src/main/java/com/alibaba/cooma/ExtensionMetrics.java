@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.List;
+
+/**
+ * 扩展加载和创建的统计，本身也是通过{@link ExtensionLoader}加载的扩展点。
+ * <p/>
+ * 设置系统属性<code>-Dcooma.metrics=扩展名</code>开启，如<code>-Dcooma.metrics=counter</code>使用{@link CounterExtensionMetrics}；
+ * 没有开启时各统计点只是一个判断，不计时也不调用。
+ * <p/>
+ * 各方法在加载和获取扩展的线程上同步调用，实现要线程安全、足够快，不能再获取扩展。
+ * 统计扩展自身的加载和创建不统计。
+ *
+ * @see CounterExtensionMetrics
+ * @since 0.4.1
+ */
+@Extension("counter")
+public interface ExtensionMetrics {
+
+    /**
+     * 加载了扩展点：查找、解析扩展配置并加载实现类（不包括实现类的初始化）。
+     *
+     * @param type  扩展点
+     * @param nanos 耗时，纳秒
+     */
+    void onLoad(Class<?> type, long nanos);
+
+    /**
+     * 初始化了扩展实现类（执行静态初始化）。
+     *
+     * @param type  扩展点
+     * @param clazz 扩展实现类、Wrapper类或自适应扩展类
+     * @param nanos 耗时，纳秒
+     */
+    void onClassInit(Class<?> type, Class<?> clazz, long nanos);
+
+    /**
+     * 创建了扩展实例，包括注入。
+     *
+     * @param type  扩展点
+     * @param name  扩展名
+     * @param nanos 耗时，纳秒
+     */
+    void onInstantiate(Class<?> type, String name, long nanos);
+
+    /**
+     * 注入了扩展实例、Wrapper实例或自适应扩展实例的关联扩展，包括获取关联扩展。
+     *
+     * @param type  扩展点
+     * @param clazz 被注入实例的类
+     * @param nanos 耗时，纳秒
+     */
+    void onInject(Class<?> type, Class<?> clazz, long nanos);
+
+    /**
+     * 创建了Wrapper链并包装到扩展实例上。
+     *
+     * @param type     扩展点
+     * @param wrappers Wrapper名，不能修改
+     * @param nanos    耗时，纳秒
+     */
+    void onWrap(Class<?> type, List<String> wrappers, long nanos);
+
+    /**
+     * 获取扩展时命中了缓存的实例。
+     *
+     * @param type 扩展点
+     * @param name 扩展名
+     */
+    void onCacheHit(Class<?> type, String name);
+
+    /**
+     * 获取扩展时没有缓存的实例，新建了实例；<code>scope=prototype</code>的扩展每次获取都是。
+     *
+     * @param type 扩展点
+     * @param name 扩展名
+     */
+    void onCacheMiss(Class<?> type, String name);
+
+    /**
+     * <code>scope=pool</code>的扩展借出了池中空闲的实例。缺省不统计，之前的实现不用修改。
+     *
+     * @param type 扩展点
+     * @param name 扩展名
+     */
+    default void onPoolHit(Class<?> type, String name) {
+    }
+
+    /**
+     * <code>scope=pool</code>的扩展借出时池中没有空闲的实例，新建了实例。缺省不统计。
+     *
+     * @param type 扩展点
+     * @param name 扩展名
+     */
+    default void onPoolMiss(Class<?> type, String name) {
+    }
+
+    /**
+     * <code>scope=pool</code>的扩展回收了一个空闲超时的实例。缺省不统计。
+     *
+     * @param type 扩展点
+     * @param name 扩展名
+     */
+    default void onPoolEvict(Class<?> type, String name) {
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 在{@link ForkJoinPool}上并行预加载扩展点。
+ * <p/>
+ * 每个扩展点是一个独立的任务，任务之间不互相等待（没有<code>join</code>），只有调用线程等待所有任务完成。
+ * 所以任务持有扩展点加载的锁时，工作线程不会窃取执行其它任务、重入同一个扩展点的加载；
+ * 扩展点的加载仍然走{@link ExtensionLoader}中的同步双检查，和同时使用扩展点的业务线程之间只会加载一次。
+ * <p/>
+ * 使用独立的线程池，不占用{@link ForkJoinPool#commonPool()}；预加载完成后关闭线程池。
+ *
+ * @since 0.4.1
+ */
+final class ExtensionPreloader {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionPreloader.class);
+
+    private static final String EXTENSION_CONF_DIRECTORY = "META-INF/extensions/";
+
+    /**
+     * @return 预加载成功的扩展点
+     */
+    static Set<Class<?>> preload(Collection<Class<?>> types, final boolean instantiateDefault) {
+        final Set<Class<?>> preloaded = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+        if (types.isEmpty()) return preloaded;
+
+        // 扩展点的加载使用线程上下文ClassLoader，工作线程上要和调用线程一致
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        int parallelism = Math.min(types.size(), Runtime.getRuntime().availableProcessors());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(types.size());
+            for (final Class<?> type : types) {
+                tasks.add(pool.submit(new Runnable() {
+                    public void run() {
+                        Thread thread = Thread.currentThread();
+                        ClassLoader old = thread.getContextClassLoader();
+                        thread.setContextClassLoader(contextClassLoader);
+                        try {
+                            ExtensionLoader.getExtensionLoader(type).preload(instantiateDefault);
+                            preloaded.add(type);
+                        } catch (Throwable t) {
+                            logger.warn("Fail to preload extension point " + type.getName() +
+                                    ", cause: " + t.getMessage(), t);
+                        } finally {
+                            thread.setContextClassLoader(old);
+                        }
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return preloaded;
+    }
+
+    /**
+     * 查找ClassLoader上所有的扩展点：扩展索引中的扩展点，及<code>META-INF/extensions/</code>目录下有配置文件的扩展点。
+     * 找不到或不是扩展点的类型忽略。
+     */
+    static Set<Class<?>> findExtensionTypes(ClassLoader classLoader) {
+        Set<String> typeNames = new LinkedHashSet<String>(ExtensionIndexes.types(classLoader));
+        try {
+            Enumeration<URL> urls = classLoader.getResources(EXTENSION_CONF_DIRECTORY);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                try {
+                    listConfigFiles(url, typeNames);
+                } catch (Throwable t) {
+                    logger.warn("Fail to list extension config files in " + url + ", ignored, cause: " + t.getMessage(), t);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Fail to find extension config directories, cause: " + e.getMessage(), e);
+        }
+
+        Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+        for (String typeName : typeNames) {
+            try {
+                Class<?> type = Class.forName(typeName, false, classLoader);
+                if (type.isInterface() && type.isAnnotationPresent(Extension.class)) {
+                    types.add(type);
+                } else {
+                    logger.warn("Ignore extension config of " + typeName + " when preload, not a extension point");
+                }
+            } catch (Throwable t) {
+                logger.warn("Ignore extension config of " + typeName + " when preload, cause: " + t.getMessage());
+            }
+        }
+        return types;
+    }
+
+    private static void listConfigFiles(URL url, Set<String> typeNames) throws IOException, URISyntaxException {
+        if ("file".equals(url.getProtocol())) {
+            File[] files = new File(url.toURI()).listFiles();
+            if (files == null) return;
+            for (File file : files) {
+                if (file.isFile()) typeNames.add(file.getName());
+            }
+        } else {
+            URLConnection connection = url.openConnection();
+            if (!(connection instanceof JarURLConnection)) {
+                logger.warn("Unsupported extension config directory " + url + ", ignored when preload");
+                return;
+            }
+            connection.setUseCaches(false);
+            JarFile jarFile = ((JarURLConnection) connection).getJarFile();
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (!entry.isDirectory() && name.startsWith(EXTENSION_CONF_DIRECTORY)
+                            && name.indexOf('/', EXTENSION_CONF_DIRECTORY.length()) < 0) {
+                        typeNames.add(name.substring(EXTENSION_CONF_DIRECTORY.length()));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        }
+    }
+
+    private ExtensionPreloader() {
+    }
+}
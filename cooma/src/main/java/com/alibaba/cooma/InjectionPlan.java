@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 扩展实现类的注入计划：实现类上可注入扩展的setter，及setter参数的扩展点类型。
+ * <p/>
+ * 每个实现类只在第一次注入时分析一次，缓存在{@link ClassValue}中；
+ * 之后的注入只是遍历数组调用setter，不再反射扫描方法。
+ *
+ * @since 0.4.1
+ */
+final class InjectionPlan {
+    private static final Logger logger = LoggerFactory.getLogger(InjectionPlan.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+        @Override
+        protected InjectionPlan computeValue(Class<?> clazz) {
+            return compile(clazz);
+        }
+    };
+
+    static InjectionPlan of(Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    final Method[] methods;
+    final MethodHandle[] setters;
+    // 不缓存ExtensionLoader：注入的扩展来自注入方所属ClassLoader下的ExtensionLoader
+    final Class<?>[] types;
+
+    private InjectionPlan(Method[] methods, MethodHandle[] setters, Class<?>[] types) {
+        this.methods = methods;
+        this.setters = setters;
+        this.types = types;
+    }
+
+    private static InjectionPlan compile(Class<?> clazz) {
+        List<Method> methods = new ArrayList<Method>();
+        List<MethodHandle> setters = new ArrayList<MethodHandle>();
+        List<Class<?>> types = new ArrayList<Class<?>>();
+
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().startsWith("set")
+                    && method.getParameterTypes().length == 1
+                    && Modifier.isPublic(method.getModifiers())) {
+                Class<?> pt = method.getParameterTypes()[0];
+                // 注入自身扩展点的setter在注入时跳过，计划按类缓存，不知道按哪个扩展点注入
+                if (pt.isInterface() && pt.isAnnotationPresent(Extension.class)) {
+                    try {
+                        setters.add(unreflect(method).asType(SETTER_TYPE));
+                        types.add(pt);
+                        methods.add(method);
+                    } catch (Throwable t) {
+                        String errMsg = "Fail to inject via method " + method.getName()
+                                + " of interface to extension implementation " + clazz + ", cause: " + t.getMessage();
+                        logger.warn(errMsg, t);
+                        throw new IllegalStateException(errMsg, t);
+                    }
+                }
+            }
+        }
+
+        return new InjectionPlan(methods.toArray(new Method[methods.size()]),
+                setters.toArray(new MethodHandle[setters.size()]),
+                types.toArray(new Class<?>[types.size()]));
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // public方法声明在非public的类上
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+    }
+}
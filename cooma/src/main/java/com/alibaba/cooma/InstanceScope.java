@@ -0,0 +1,356 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 一个扩展的实例在作用域内的缓存，由扩展属性<code>scope</code>或{@link Extension#scope()}选择：
+ * <ul>
+ * <li><code>singleton</code>：单例，缺省的作用域。
+ * <li><code>prototype</code>：每次获取新建实例。
+ * <li><code>thread</code>：每个线程一个实例，实例挂在线程上，线程结束或缓存丢弃后回收。
+ * <li><code>striped</code>：不少于CPU数的N个分片（2的幂），线程按线程ID分到分片上，
+ * 有状态、并发竞争激烈的扩展用N个实例分担竞争，而不是所有线程争用一个实例。
+ * <li><code>pool</code>：对象池，用{@link ExtensionLoader#borrowExtension(String)}借出、关闭{@link ExtensionLease}归还，
+ * 适合创建代价高、不能并发使用的扩展；直接获取时和<code>prototype</code>一样新建实例。
+ * </ul>
+ * 作用域在第一次获取扩展时确定，按作用域创建对应的实现缓存在快照中；获取扩展时只是一次虚方法调用，不再判断作用域。
+ *
+ * @since 0.4.1
+ */
+abstract class InstanceScope<T> {
+    static final String SINGLETON = "singleton";
+    static final String PROTOTYPE = "prototype";
+    static final String THREAD = "thread";
+    static final String STRIPED = "striped";
+    static final String POOL = "pool";
+
+    // pool作用域的扩展属性：池中最多保留的空闲实例数、空闲实例的回收时长
+    static final String ATTRIBUTE_POOL_SIZE = "poolSize";
+    static final String ATTRIBUTE_POOL_IDLE = "poolIdle";
+    static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    static final long DEFAULT_POOL_IDLE_MILLIS = 60 * 1000;
+
+    static boolean isValid(String scope) {
+        return SINGLETON.equals(scope) || PROTOTYPE.equals(scope) || THREAD.equals(scope) || STRIPED.equals(scope)
+                || POOL.equals(scope);
+    }
+
+    /**
+     * 检查作用域相关的扩展属性。
+     */
+    static void checkAttributes(ExtensionAttributes attributes) {
+        if (attributes.getInt(ATTRIBUTE_POOL_SIZE, DEFAULT_POOL_SIZE) <= 0) {
+            throw new IllegalStateException("attribute " + ATTRIBUTE_POOL_SIZE + "(" +
+                    attributes.getString(ATTRIBUTE_POOL_SIZE) + ") is not positive!");
+        }
+        if (attributes.getDuration(ATTRIBUTE_POOL_IDLE, TimeUnit.MILLISECONDS, DEFAULT_POOL_IDLE_MILLIS) <= 0) {
+            throw new IllegalStateException("attribute " + ATTRIBUTE_POOL_IDLE + "(" +
+                    attributes.getString(ATTRIBUTE_POOL_IDLE) + ") is not positive!");
+        }
+    }
+
+    /**
+     * @param attributes 扩展的扩展属性，已经用{@link #checkAttributes(ExtensionAttributes)}检查过
+     * @param metrics    统计缓存的命中，没有开启统计时为<code>null</code>
+     */
+    static <T> InstanceScope<T> create(String scope, ExtensionAttributes attributes,
+                                       Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+        if (PROTOTYPE.equals(scope)) return new Prototype<T>(type, name, factory, metrics);
+        if (THREAD.equals(scope)) return new ThreadScope<T>(type, name, factory, metrics);
+        if (STRIPED.equals(scope)) return new Striped<T>(type, name, factory, metrics);
+        if (POOL.equals(scope)) {
+            return new Pooled<T>(type, name, factory, metrics,
+                    attributes.getInt(ATTRIBUTE_POOL_SIZE, DEFAULT_POOL_SIZE),
+                    attributes.getDuration(ATTRIBUTE_POOL_IDLE, TimeUnit.NANOSECONDS,
+                            TimeUnit.MILLISECONDS.toNanos(DEFAULT_POOL_IDLE_MILLIS)));
+        }
+        return new Singleton<T>(type, name, factory, metrics);
+    }
+
+    final Class<?> type;
+    final String name;
+    final Supplier<T> factory;
+    final ExtensionMetrics metrics;
+
+    InstanceScope(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+        this.type = type;
+        this.name = name;
+        this.factory = factory;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Thread-safe. 返回当前作用域内的实例，没有时创建。
+     */
+    abstract T get();
+
+    /**
+     * Thread-safe. 借出实例，只有<code>pool</code>作用域在关闭时归还，其它作用域关闭时什么也不做。
+     */
+    ExtensionLease<T> lease() {
+        return new ExtensionLease<T>(get(), null);
+    }
+
+    /**
+     * @return 是否所有线程每次都得到同一个实例，是时调用方可以自己再缓存实例
+     */
+    abstract boolean isShared();
+
+    /**
+     * @return 缓存的实例数；<code>thread</code>作用域是创建过的实例数，包括已经结束的线程的；
+     * <code>pool</code>作用域是池中空闲的实例数
+     */
+    abstract int size();
+
+    final void hit(T instance) {
+        if (metrics == null) return;
+        if (instance == null) metrics.onCacheMiss(type, name);
+        else metrics.onCacheHit(type, name);
+    }
+
+    static final class Singleton<T> extends InstanceScope<T> {
+        private volatile T instance;
+
+        Singleton(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+            super(type, name, factory, metrics);
+        }
+
+        T get() {
+            T e = instance;
+            hit(e);
+            if (e == null) {
+                synchronized (this) {
+                    e = instance;
+                    if (e == null) { // double check
+                        e = factory.get();
+                        instance = e;
+                    }
+                }
+            }
+            return e;
+        }
+
+        boolean isShared() {
+            return true;
+        }
+
+        int size() {
+            return instance == null ? 0 : 1;
+        }
+    }
+
+    static final class Prototype<T> extends InstanceScope<T> {
+        Prototype(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+            super(type, name, factory, metrics);
+        }
+
+        T get() {
+            hit(null);
+            return factory.get();
+        }
+
+        boolean isShared() {
+            return false;
+        }
+
+        int size() {
+            return 0;
+        }
+    }
+
+    static final class ThreadScope<T> extends InstanceScope<T> {
+        private final ThreadLocal<T> instances = new ThreadLocal<T>();
+        private final AtomicInteger created = new AtomicInteger();
+
+        ThreadScope(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+            super(type, name, factory, metrics);
+        }
+
+        T get() {
+            T e = instances.get();
+            hit(e);
+            if (e == null) {
+                e = factory.get();
+                instances.set(e);
+                created.incrementAndGet();
+            }
+            return e;
+        }
+
+        boolean isShared() {
+            return false;
+        }
+
+        int size() {
+            return created.get();
+        }
+    }
+
+    static final class Striped<T> extends InstanceScope<T> {
+        private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+        static int stripes(int processors) {
+            int n = 1;
+            while (n < processors) n <<= 1;
+            return n;
+        }
+
+        private final AtomicReferenceArray<T> instances = new AtomicReferenceArray<T>(STRIPES);
+
+        Striped(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics) {
+            super(type, name, factory, metrics);
+        }
+
+        T get() {
+            // 线程ID是递增分配的，取低位就能把线程均匀的分到各个分片
+            final int i = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            T e = instances.get(i);
+            hit(e);
+            if (e == null) {
+                // 只在分片的实例第一次创建时加锁，保证每个分片只创建一个实例
+                synchronized (this) {
+                    e = instances.get(i);
+                    if (e == null) { // double check
+                        e = factory.get();
+                        instances.set(i, e);
+                    }
+                }
+            }
+            return e;
+        }
+
+        boolean isShared() {
+            return false;
+        }
+
+        int size() {
+            int count = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                if (instances.get(i) != null) count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 有上限的对象池，借出和归还都不加锁：空闲实例放在固定长度的数组中，用CAS取走和放入。
+     * <p/>
+     * 借出时池空就新建实例，不等待；归还时池满就丢弃实例，所以上限是保留的空闲实例数，不限制借出的实例数。
+     * 线程从按线程ID分散的位置开始查找，减少CAS的冲突。
+     * 空闲超过<code>poolIdle</code>的实例在借出和归还时顺带回收，最多每半个<code>poolIdle</code>扫描一次，不另开线程。
+     */
+    static final class Pooled<T> extends InstanceScope<T> {
+        private static final class Idle<T> {
+            final T instance;
+            final long since;
+
+            Idle(T instance, long since) {
+                this.instance = instance;
+                this.since = since;
+            }
+        }
+
+        private final AtomicReferenceArray<Idle<T>> idle;
+        private final long idleNanos;
+        private final AtomicLong nextEviction;
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        Pooled(Class<?> type, String name, Supplier<T> factory, ExtensionMetrics metrics, int size, long idleNanos) {
+            super(type, name, factory, metrics);
+            this.idle = new AtomicReferenceArray<Idle<T>>(size);
+            this.idleNanos = idleNanos;
+            this.nextEviction = new AtomicLong(System.nanoTime() + idleNanos / 2);
+        }
+
+        T get() {
+            hit(null);
+            return factory.get();
+        }
+
+        @Override
+        ExtensionLease<T> lease() {
+            return new ExtensionLease<T>(borrow(), this);
+        }
+
+        T borrow() {
+            final int n = idle.length();
+            final int start = (int) (Thread.currentThread().getId() % n);
+            for (int i = 0; i < n; i++) {
+                final int j = start + i < n ? start + i : start + i - n;
+                final Idle<T> e = idle.get(j);
+                if (e != null && idle.compareAndSet(j, e, null)) {
+                    hits.increment();
+                    if (metrics != null) metrics.onPoolHit(type, name);
+                    evictIfDue(System.nanoTime());
+                    return e.instance;
+                }
+            }
+            misses.increment();
+            if (metrics != null) metrics.onPoolMiss(type, name);
+            return factory.get();
+        }
+
+        void release(T instance) {
+            final long now = System.nanoTime();
+            final Idle<T> e = new Idle<T>(instance, now);
+            final int n = idle.length();
+            final int start = (int) (Thread.currentThread().getId() % n);
+            for (int i = 0; i < n; i++) {
+                final int j = start + i < n ? start + i : start + i - n;
+                if (idle.get(j) == null && idle.compareAndSet(j, null, e)) break;
+            }
+            // 池满时直接丢弃
+            evictIfDue(now);
+        }
+
+        /**
+         * 只有一个线程能抢到这一轮的扫描，其它线程直接返回。
+         */
+        private void evictIfDue(long now) {
+            final long due = nextEviction.get();
+            if (now - due < 0 || !nextEviction.compareAndSet(due, now + idleNanos / 2)) return;
+            for (int j = 0; j < idle.length(); j++) {
+                final Idle<T> e = idle.get(j);
+                if (e != null && now - e.since >= idleNanos && idle.compareAndSet(j, e, null)) {
+                    evictions.increment();
+                    if (metrics != null) metrics.onPoolEvict(type, name);
+                }
+            }
+        }
+
+        boolean isShared() {
+            return false;
+        }
+
+        int size() {
+            int count = 0;
+            for (int i = 0; i < idle.length(); i++) {
+                if (idle.get(i) != null) count++;
+            }
+            return count;
+        }
+    }
+}
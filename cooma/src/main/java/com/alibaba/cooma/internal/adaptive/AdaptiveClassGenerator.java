@@ -0,0 +1,400 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.adaptive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 生成扩展点的Adaptive类。有<code>Map</code>参数的方法生成为：
+ * <pre>
+ * public String echo(Map config, String s) {
+ *     return ((SimpleExt) dispatcher.select(config, "echo")).echo(config, s);
+ * }
+ * </pre>
+ * 没有<code>Map</code>参数的方法抛出{@link UnsupportedOperationException}。
+ * <p/>
+ * 生成的类文件版本是49（Java 5），代码没有分支，不需要StackMapTable。
+ * 类定义在扩展点的ClassLoader的子ClassLoader中。
+ *
+ * @since 0.4.1
+ */
+final class AdaptiveClassGenerator {
+    private static final String CLASS_NAME_SUFFIX = "$CoomaAdaptive";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String DISPATCHER = AdaptiveDispatcher.class.getName().replace('.', '/');
+    private static final String DISPATCHER_FIELD = "dispatcher";
+    private static final String SELECT_DESC = "(Ljava/util/Map;Ljava/lang/String;)Ljava/lang/Object;";
+    private static final String UNSUPPORTED_DESC = "(Ljava/lang/String;)Ljava/lang/UnsupportedOperationException;";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ILOAD = 0x15;
+    private static final int LLOAD = 0x16;
+    private static final int FLOAD = 0x17;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int IRETURN = 0xac;
+    private static final int LRETURN = 0xad;
+    private static final int FRETURN = 0xae;
+    private static final int DRETURN = 0xaf;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int LDC_W = 0x13;
+    private static final int ATHROW = 0xbf;
+    private static final int CHECKCAST = 0xc0;
+
+    /**
+     * @return 第一个<code>Map</code>参数的下标，没有时返回-1。
+     */
+    static int mapParameterIndex(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (Map.class.isAssignableFrom(parameterTypes[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 生成的类在另一个ClassLoader中，扩展点和方法签名中的所有类型都必须是public的。
+     */
+    static boolean isGeneratable(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) return false;
+        for (Method method : adaptiveMethods(type)) {
+            if (!isPublic(method.getReturnType())) return false;
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (!isPublic(parameterType)) return false;
+            }
+        }
+        return true;
+    }
+
+    static Class<?> generate(Class<?> type) throws IOException {
+        String className = type.getName() + CLASS_NAME_SUFFIX;
+        byte[] bytes = new AdaptiveClassGenerator(type, className).toByteArray();
+        return new GeneratedClassLoader(type.getClassLoader()).define(className, bytes);
+    }
+
+    private static boolean isPublic(Class<?> clazz) {
+        while (clazz.isArray()) clazz = clazz.getComponentType();
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers());
+    }
+
+    /**
+     * 抽象方法，以及有<code>Map</code>参数的default方法；跳过{@link Object}的方法。
+     */
+    private static List<Method> adaptiveMethods(Class<?> type) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) continue;
+            if (!Modifier.isAbstract(method.getModifiers()) && mapParameterIndex(method) < 0) continue;
+            String key = method.getName() + methodDescriptor(method);
+            if (isObjectMethod(key) || methods.containsKey(key)) continue;
+            methods.put(key, method);
+        }
+        return new ArrayList<Method>(methods.values());
+    }
+
+    private static boolean isObjectMethod(String key) {
+        return "equals(Ljava/lang/Object;)Z".equals(key) || "hashCode()I".equals(key)
+                || "toString()Ljava/lang/String;".equals(key);
+    }
+
+    private final Class<?> type;
+    private final String internalName;
+    private final String typeInternalName;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private AdaptiveClassGenerator(Class<?> type, String className) {
+        this.type = type;
+        this.internalName = className.replace('.', '/');
+        this.typeInternalName = type.getName().replace('.', '/');
+    }
+
+    private byte[] toByteArray() throws IOException {
+        // 先写成员，成员会填充常量池
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(members);
+
+        int thisClass = classRef(internalName);
+        int superClass = classRef(OBJECT);
+        int interfaceClass = classRef(typeInternalName);
+        int dispatcherField = memberRef(9, internalName, DISPATCHER_FIELD, "L" + DISPATCHER + ";");
+
+        out.writeShort(1); // 字段数
+        out.writeShort(ACC_PRIVATE | ACC_FINAL);
+        out.writeShort(utf8(DISPATCHER_FIELD));
+        out.writeShort(utf8("L" + DISPATCHER + ";"));
+        out.writeShort(0);
+
+        List<Method> methods = adaptiveMethods(type);
+        out.writeShort(methods.size() + 2);
+
+        // 构造函数(AdaptiveDispatcher)
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream c = new DataOutputStream(code);
+        c.writeByte(ALOAD_0);
+        c.writeByte(INVOKESPECIAL);
+        c.writeShort(memberRef(10, OBJECT, "<init>", "()V"));
+        c.writeByte(ALOAD_0);
+        c.writeByte(ALOAD_1);
+        c.writeByte(PUTFIELD);
+        c.writeShort(dispatcherField);
+        c.writeByte(RETURN);
+        writeMethod(out, "<init>", "(L" + DISPATCHER + ";)V", 2, 2, code.toByteArray());
+
+        // toString()
+        code.reset();
+        c.writeByte(ALOAD_0);
+        c.writeByte(GETFIELD);
+        c.writeShort(dispatcherField);
+        c.writeByte(INVOKEVIRTUAL);
+        c.writeShort(memberRef(10, DISPATCHER, "toString", "()Ljava/lang/String;"));
+        c.writeByte(ARETURN);
+        writeMethod(out, "toString", "()Ljava/lang/String;", 1, 1, code.toByteArray());
+
+        for (Method method : methods) {
+            String descriptor = methodDescriptor(method);
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            int mapIndex = mapParameterIndex(method);
+
+            code.reset();
+            c.writeByte(ALOAD_0);
+            c.writeByte(GETFIELD);
+            c.writeShort(dispatcherField);
+            int maxStack;
+            int slots = 1;
+            if (mapIndex < 0) {
+                c.writeByte(LDC_W);
+                c.writeShort(string(method.getName()));
+                c.writeByte(INVOKEVIRTUAL);
+                c.writeShort(memberRef(10, DISPATCHER, "unsupported", UNSUPPORTED_DESC));
+                c.writeByte(ATHROW);
+                for (Class<?> parameterType : parameterTypes) slots += slotSize(parameterType);
+                maxStack = 2;
+            } else {
+                int mapSlot = 1;
+                for (int i = 0; i < mapIndex; i++) mapSlot += slotSize(parameterTypes[i]);
+                c.writeByte(ALOAD);
+                c.writeByte(mapSlot);
+                c.writeByte(LDC_W);
+                c.writeShort(string(method.getName()));
+                c.writeByte(INVOKEVIRTUAL);
+                c.writeShort(memberRef(10, DISPATCHER, "select", SELECT_DESC));
+                c.writeByte(CHECKCAST);
+                c.writeShort(interfaceClass);
+                for (Class<?> parameterType : parameterTypes) {
+                    c.writeByte(loadOpcode(parameterType));
+                    c.writeByte(slots);
+                    slots += slotSize(parameterType);
+                }
+                c.writeByte(INVOKEINTERFACE);
+                c.writeShort(memberRef(11, typeInternalName, method.getName(), descriptor));
+                c.writeByte(slots);
+                c.writeByte(0);
+                c.writeByte(returnOpcode(method.getReturnType()));
+                maxStack = Math.max(3, Math.max(slots, slotSize(method.getReturnType())));
+            }
+            writeMethod(out, method.getName(), descriptor, maxStack, slots, code.toByteArray());
+        }
+        out.writeShort(0); // 类属性数
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream classOut = new DataOutputStream(bytes);
+        classOut.writeInt(0xCAFEBABE);
+        classOut.writeShort(0);
+        classOut.writeShort(49);
+        classOut.writeShort(poolCount);
+        pool.writeTo(classOut);
+        classOut.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        classOut.writeShort(thisClass);
+        classOut.writeShort(superClass);
+        classOut.writeShort(1);
+        classOut.writeShort(interfaceClass);
+        members.writeTo(classOut);
+        return bytes.toByteArray();
+    }
+
+    private void writeMethod(DataOutputStream out, String name, String descriptor, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // 异常表
+        out.writeShort(0); // Code属性的属性数
+    }
+
+    // ==============================
+    // 常量池
+    // ==============================
+
+    private int utf8(String s) throws IOException {
+        String key = "Utf8:" + s;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        poolOut.writeByte(1);
+        poolOut.writeUTF(s);
+        return add(key);
+    }
+
+    private int classRef(String internalName) throws IOException {
+        String key = "Class:" + internalName;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int name = utf8(internalName);
+        poolOut.writeByte(7);
+        poolOut.writeShort(name);
+        return add(key);
+    }
+
+    private int string(String s) throws IOException {
+        String key = "String:" + s;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int value = utf8(s);
+        poolOut.writeByte(8);
+        poolOut.writeShort(value);
+        return add(key);
+    }
+
+    /**
+     * @param tag 字段是9，方法是10，接口方法是11
+     */
+    private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+        String key = tag + ":" + owner + "." + name + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        poolOut.writeByte(tag);
+        poolOut.writeShort(ownerIndex);
+        poolOut.writeShort(nameAndType);
+        return add(key);
+    }
+
+    private int nameAndType(String name, String descriptor) throws IOException {
+        String key = "NameAndType:" + name + descriptor;
+        Integer index = poolIndexes.get(key);
+        if (index != null) return index;
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        poolOut.writeByte(12);
+        poolOut.writeShort(nameIndex);
+        poolOut.writeShort(descriptorIndex);
+        return add(key);
+    }
+
+    private int add(String key) {
+        int index = poolCount++;
+        poolIndexes.put(key, index);
+        return index;
+    }
+
+    // ==============================
+    // 描述符和操作码
+    // ==============================
+
+    private static String methodDescriptor(Method method) {
+        StringBuilder buf = new StringBuilder("(");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            buf.append(descriptor(parameterType));
+        }
+        return buf.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> clazz) {
+        if (clazz == void.class) return "V";
+        if (clazz == boolean.class) return "Z";
+        if (clazz == byte.class) return "B";
+        if (clazz == char.class) return "C";
+        if (clazz == short.class) return "S";
+        if (clazz == int.class) return "I";
+        if (clazz == long.class) return "J";
+        if (clazz == float.class) return "F";
+        if (clazz == double.class) return "D";
+        if (clazz.isArray()) return clazz.getName().replace('.', '/');
+        return "L" + clazz.getName().replace('.', '/') + ";";
+    }
+
+    private static int slotSize(Class<?> clazz) {
+        if (clazz == void.class) return 0;
+        return clazz == long.class || clazz == double.class ? 2 : 1;
+    }
+
+    private static int loadOpcode(Class<?> clazz) {
+        if (!clazz.isPrimitive()) return ALOAD;
+        if (clazz == long.class) return LLOAD;
+        if (clazz == float.class) return FLOAD;
+        if (clazz == double.class) return DLOAD;
+        return ILOAD;
+    }
+
+    private static int returnOpcode(Class<?> clazz) {
+        if (clazz == void.class) return RETURN;
+        if (!clazz.isPrimitive()) return ARETURN;
+        if (clazz == long.class) return LRETURN;
+        if (clazz == float.class) return FRETURN;
+        if (clazz == double.class) return DRETURN;
+        return IRETURN;
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // 即使父ClassLoader中有另一份Cooma，也总是链接到当前Cooma的AdaptiveDispatcher
+            if (AdaptiveDispatcher.class.getName().equals(name)) return AdaptiveDispatcher.class;
+            return super.loadClass(name, resolve);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.adaptive;
+
+import java.util.Map;
+
+/**
+ * Adaptive扩展每次调用时选择委托的扩展。
+ * <p/>
+ * 扩展名是<code>Map</code>参数中以扩展点类名为Key的值，参数为<code>null</code>或没有这个Key时使用缺省扩展。
+ * 最近解析出的几个扩展保存在一个小的内联缓存中，最近使用的在前；
+ * 命中时只需要一次Map查找和几次引用比较，不用在ExtensionLoader中查找。
+ * 未命中的扩展名超过内联缓存的大小后，调用点成为多态的（megamorphic）：
+ * 不再重建内联缓存，每次调用都在ExtensionLoader中解析扩展名。
+ * 解析器的版本变化时丢弃内联缓存，如重新加载了扩展，或缓存的扩展因注入的扩展重新加载而失效。
+ *
+ * @since 0.4.1
+ */
+public final class AdaptiveDispatcher {
+    private static final int INLINE_CACHE_SIZE = 4;
+
+    /**
+     * 按扩展名解析扩展，由ExtensionLoader实现。
+     */
+    public interface Resolver {
+        Object getExtension(String name);
+
+        /**
+         * @return 每次调用都要解析新实例时返回<code>false</code>。
+         */
+        boolean isCacheable(String name);
+
+        /**
+         * @return 标识当前扩展的对象，按引用比较；缓存的扩展被替换时返回新的对象。
+         */
+        Object getVersion();
+    }
+
+    private final String type;
+    private final String defaultName;
+    private final Resolver resolver;
+
+    // 未命中时整体替换，丢失的更新只会多一次未命中
+    private volatile InlineCache inlineCache = new InlineCache(null, new CacheEntry[0], 0);
+
+    public AdaptiveDispatcher(Class<?> type, String defaultName, Resolver resolver) {
+        this.type = type.getName();
+        this.defaultName = defaultName;
+        this.resolver = resolver;
+    }
+
+    private static final class InlineCache {
+        final Object version;
+        final CacheEntry[] entries;
+        // 这个版本下可缓存的扩展名的未命中次数
+        final int misses;
+
+        InlineCache(Object version, CacheEntry[] entries, int misses) {
+            this.version = version;
+            this.entries = entries;
+            this.misses = misses;
+        }
+
+        boolean isMegamorphic() {
+            return misses > INLINE_CACHE_SIZE;
+        }
+    }
+
+    private static final class CacheEntry {
+        final String name;
+        final Object extension;
+
+        CacheEntry(String name, Object extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * @param config 调用的<code>Map</code>参数
+     * @param method 调用的方法名，用于出错信息
+     */
+    public Object select(Map<?, ?> config, String method) {
+        Object value = config == null ? null : config.get(type);
+        String name;
+        if (value == null || (name = value.toString()).length() == 0) {
+            name = defaultName;
+            if (name == null) {
+                throw new IllegalStateException("Fail to select extension of adaptive extension " + type +
+                        " when invoke method " + method + ", no extension name in config and no default extension: " + config);
+            }
+        }
+
+        final Object version = resolver.getVersion();
+        InlineCache cache = inlineCache;
+        CacheEntry[] entries = cache.entries;
+        int misses = cache.misses;
+        if (cache.version == version) {
+            // 版本变化前，重建的内联缓存只会不断地淘汰自己
+            if (cache.isMegamorphic()) return resolver.getExtension(name);
+            for (CacheEntry entry : entries) {
+                if (entry.name == name || entry.name.equals(name)) return entry.extension;
+            }
+        } else {
+            entries = new CacheEntry[0];
+            misses = 0;
+        }
+
+        Object extension = resolver.getExtension(name);
+        if (resolver.isCacheable(name)) {
+            int length = Math.min(entries.length + 1, INLINE_CACHE_SIZE);
+            CacheEntry[] newEntries = new CacheEntry[length];
+            newEntries[0] = new CacheEntry(name, extension);
+            System.arraycopy(entries, 0, newEntries, 1, length - 1);
+            inlineCache = new InlineCache(version, newEntries, misses + 1);
+        }
+        return extension;
+    }
+
+    /**
+     * 没有<code>Map</code>参数的方法抛出。
+     */
+    public UnsupportedOperationException unsupported(String method) {
+        return new UnsupportedOperationException("method " + method + " of adaptive extension " +
+                type + " has no Map parameter to select extension!");
+    }
+
+    @Override
+    public String toString() {
+        return "Adaptive extension of " + type;
+    }
+}
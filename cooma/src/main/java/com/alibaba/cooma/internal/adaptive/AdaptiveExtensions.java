@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.adaptive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * 生成Adaptive扩展的入口。
+ * <p/>
+ * public的、方法签名中只用了public类型的扩展点生成Adaptive类，
+ * 调用{@link AdaptiveDispatcher#select}后直接调用选出的扩展。
+ * 其它扩展点退回使用{@link Proxy}。
+ *
+ * @since 0.4.1
+ */
+public final class AdaptiveExtensions {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveExtensions.class);
+
+    public static <T> T create(Class<T> type, AdaptiveDispatcher dispatcher) {
+        if (AdaptiveClassGenerator.isGeneratable(type)) {
+            try {
+                return type.cast(AdaptiveClassGenerator.generate(type)
+                        .getConstructor(AdaptiveDispatcher.class).newInstance(dispatcher));
+            } catch (Throwable t) {
+                logger.warn("Fail to generate adaptive class of extension point " + type.getName() +
+                        ", use proxy instead, cause: " + t.getMessage(), t);
+            }
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new AdaptiveInvocationHandler(type, dispatcher)));
+    }
+
+    private AdaptiveExtensions() {
+    }
+}
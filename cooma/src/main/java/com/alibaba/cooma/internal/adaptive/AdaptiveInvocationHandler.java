@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.adaptive;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基于{@link java.lang.reflect.Proxy}的Adaptive扩展，用于生成的类链接不到的扩展点，如非public的接口。
+ *
+ * @since 0.4.1
+ */
+final class AdaptiveInvocationHandler implements InvocationHandler {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final AdaptiveDispatcher dispatcher;
+    private final Map<Method, AdaptiveMethod> methods = new HashMap<Method, AdaptiveMethod>();
+
+    AdaptiveInvocationHandler(Class<?> type, AdaptiveDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        for (Method method : type.getMethods()) {
+            methods.put(method, new AdaptiveMethod(method));
+        }
+    }
+
+    private static final class AdaptiveMethod {
+        // Map参数的下标，没有时为-1
+        final int mapIndex;
+        final MethodHandle invoker;
+
+        AdaptiveMethod(Method method) {
+            this.mapIndex = AdaptiveClassGenerator.mapParameterIndex(method);
+            try {
+                this.invoker = unreflect(method).asSpreader(Object[].class, method.getParameterTypes().length).asType(INVOKER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Fail to access method " + method + " for adaptive extension", e);
+            }
+        }
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        AdaptiveMethod adaptiveMethod = methods.get(method);
+        if (adaptiveMethod == null) {
+            String name = method.getName();
+            if ("equals".equals(name)) return proxy == args[0];
+            if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+            return dispatcher.toString();
+        }
+        if (adaptiveMethod.mapIndex < 0) {
+            throw dispatcher.unsupported(method.getName());
+        }
+        Object extension = dispatcher.select((Map<?, ?>) args[adaptiveMethod.mapIndex], method.getName());
+        return adaptiveMethod.invoker.invokeExact(extension, args);
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 非public接口的public方法
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+    }
+}
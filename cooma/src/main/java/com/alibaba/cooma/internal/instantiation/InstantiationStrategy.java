@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 把扩展实现类的构造函数绑定成工厂对象。
+ * <p/>
+ * 每个类只绑定一次，返回的工厂对象在每次创建实例时重用。
+ *
+ * @see Instantiators
+ * @since 0.4.1
+ */
+public interface InstantiationStrategy {
+    /**
+     * 绑定类的public缺省构造函数。
+     *
+     * @throws Exception 这个策略绑定不了构造函数。
+     */
+    <T> Supplier<T> bindConstructor(Class<T> clazz) throws Exception;
+
+    /**
+     * 绑定Wrapper类的public拷贝构造函数，即唯一参数是扩展点类型的构造函数。
+     *
+     * @throws Exception 这个策略绑定不了构造函数。
+     */
+    <T> Function<T, T> bindWrapperConstructor(Class<? extends T> clazz, Class<T> type) throws Exception;
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实例创建的入口。
+ * <p/>
+ * 通过系统属性<code>cooma.instantiation</code>选择策略：
+ * <ul>
+ * <li><code>lambda</code>（缺省）：{@link LambdaInstantiationStrategy}
+ * <li><code>method_handle</code>：{@link MethodHandleInstantiationStrategy}
+ * <li><code>reflection</code>：{@link ReflectionInstantiationStrategy}
+ * </ul>
+ * 选择的策略绑定不了的类，退回使用上面列表中的下一个策略。
+ *
+ * @since 0.4.1
+ */
+public final class Instantiators {
+    private static final Logger logger = LoggerFactory.getLogger(Instantiators.class);
+
+    public static final String STRATEGY_PROPERTY = "cooma.instantiation";
+
+    private static final InstantiationStrategy[] STRATEGIES = selectStrategies(System.getProperty(STRATEGY_PROPERTY));
+
+    private static final ClassValue<Supplier<?>> CONSTRUCTORS = new ClassValue<Supplier<?>>() {
+        @Override
+        protected Supplier<?> computeValue(Class<?> clazz) {
+            return bindConstructor(STRATEGIES, clazz);
+        }
+    };
+
+    /**
+     * 绑定好的类的缺省构造函数，每个类只绑定一次。
+     *
+     * @throws IllegalStateException 类没有public的缺省构造函数。
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Supplier<T> constructor(Class<T> clazz) {
+        return (Supplier<T>) CONSTRUCTORS.get(clazz);
+    }
+
+    /**
+     * 绑定Wrapper类的拷贝构造函数，调用方应该缓存返回的{@link Function}。
+     *
+     * @throws IllegalStateException 类没有public的拷贝构造函数。
+     */
+    public static <T> Function<T, T> wrapperConstructor(Class<? extends T> clazz, Class<T> type) {
+        return bindWrapperConstructor(STRATEGIES, clazz, type);
+    }
+
+    static <T> Supplier<T> bindConstructor(InstantiationStrategy[] strategies, Class<T> clazz) {
+        Exception cause = null;
+        for (InstantiationStrategy strategy : strategies) {
+            try {
+                return strategy.bindConstructor(clazz);
+            } catch (Exception e) {
+                logger.debug("Fail to bind constructor of " + clazz + " by " + strategy + ", cause: " + e.getMessage());
+                cause = e;
+            }
+        }
+        throw new IllegalStateException("Fail to bind constructor of " + clazz + ", cause: " + cause.getMessage(), cause);
+    }
+
+    static <T> Function<T, T> bindWrapperConstructor(InstantiationStrategy[] strategies, Class<? extends T> clazz, Class<T> type) {
+        Exception cause = null;
+        for (InstantiationStrategy strategy : strategies) {
+            try {
+                return strategy.bindWrapperConstructor(clazz, type);
+            } catch (Exception e) {
+                logger.debug("Fail to bind copy constructor of " + clazz + " by " + strategy + ", cause: " + e.getMessage());
+                cause = e;
+            }
+        }
+        throw new IllegalStateException("Fail to bind copy constructor of " + clazz + ", cause: " + cause.getMessage(), cause);
+    }
+
+    static InstantiationStrategy[] selectStrategies(String name) {
+        List<InstantiationStrategy> strategies = new ArrayList<InstantiationStrategy>();
+        if (name == null || name.length() == 0 || "lambda".equals(name)) {
+            strategies.add(new LambdaInstantiationStrategy());
+            strategies.add(new MethodHandleInstantiationStrategy());
+        } else if ("method_handle".equals(name)) {
+            strategies.add(new MethodHandleInstantiationStrategy());
+        } else if (!"reflection".equals(name)) {
+            throw new IllegalStateException("Unknown instantiation strategy(" + name + "), " +
+                    "value of system property " + STRATEGY_PROPERTY + " should be lambda, method_handle or reflection!");
+        }
+        strategies.add(new ReflectionInstantiationStrategy());
+        return strategies.toArray(new InstantiationStrategy[strategies.size()]);
+    }
+
+    static boolean isPublic(Constructor<?> constructor) {
+        return Modifier.isPublic(constructor.getModifiers())
+                && Modifier.isPublic(constructor.getDeclaringClass().getModifiers());
+    }
+
+    /**
+     * 重新抛出构造函数抛出的异常，Checked异常包装后抛出。
+     */
+    static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IllegalStateException(t.getMessage(), t);
+    }
+
+    private Instantiators() {
+    }
+}
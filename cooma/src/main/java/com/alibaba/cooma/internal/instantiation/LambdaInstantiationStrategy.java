@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 通过{@link LambdaMetafactory}实现的{@link InstantiationStrategy}：
+ * 和构造函数引用<code>Foo::new</code>一样，把构造函数生成为{@link Supplier}/{@link Function}类。
+ * <p/>
+ * 生成的类直接引用实现类，只支持Cooma的ClassLoader可见的、有public构造函数的public类。
+ *
+ * @since 0.4.1
+ */
+public final class LambdaInstantiationStrategy implements InstantiationStrategy {
+    private static final MethodType SUPPLIER_TYPE = MethodType.methodType(Supplier.class);
+    private static final MethodType FUNCTION_TYPE = MethodType.methodType(Function.class);
+
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> bindConstructor(Class<T> clazz) throws Exception {
+        checkLinkable(clazz);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+        CallSite site = LambdaMetafactory.metafactory(lookup, "get", SUPPLIER_TYPE,
+                MethodType.methodType(Object.class), constructor, MethodType.methodType(clazz));
+        try {
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable t) {
+            throw Instantiators.propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Function<T, T> bindWrapperConstructor(Class<? extends T> clazz, Class<T> type) throws Exception {
+        checkLinkable(clazz);
+        checkLinkable(type);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class, type));
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply", FUNCTION_TYPE,
+                MethodType.methodType(Object.class, Object.class), constructor, MethodType.methodType(clazz, type));
+        try {
+            return (Function<T, T>) site.getTarget().invoke();
+        } catch (Throwable t) {
+            throw Instantiators.propagate(t);
+        }
+    }
+
+    private static void checkLinkable(Class<?> clazz) throws ClassNotFoundException {
+        if (!Modifier.isPublic(clazz.getModifiers())) {
+            throw new IllegalArgumentException("class " + clazz.getName() + " is not public");
+        }
+        ClassLoader loader = LambdaInstantiationStrategy.class.getClassLoader();
+        if (Class.forName(clazz.getName(), false, loader) != clazz) {
+            throw new IllegalArgumentException("class " + clazz.getName() + " is not visible from " + loader);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 通过构造函数的{@link MethodHandle}实现的{@link InstantiationStrategy}，MethodHandle绑定在工厂对象中。
+ *
+ * @since 0.4.1
+ */
+public final class MethodHandleInstantiationStrategy implements InstantiationStrategy {
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType WRAPPER_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    public <T> Supplier<T> bindConstructor(Class<T> clazz) throws Exception {
+        final MethodHandle handle = unreflect(clazz.getConstructor()).asType(CONSTRUCTOR_TYPE);
+        return new Supplier<T>() {
+            @SuppressWarnings("unchecked")
+            public T get() {
+                try {
+                    return (T) handle.invokeExact();
+                } catch (Throwable t) {
+                    throw Instantiators.propagate(t);
+                }
+            }
+        };
+    }
+
+    public <T> Function<T, T> bindWrapperConstructor(Class<? extends T> clazz, Class<T> type) throws Exception {
+        final MethodHandle handle = unreflect(clazz.getConstructor(type)).asType(WRAPPER_CONSTRUCTOR_TYPE);
+        return new Function<T, T>() {
+            @SuppressWarnings("unchecked")
+            public T apply(T instance) {
+                try {
+                    return (T) handle.invokeExact((Object) instance);
+                } catch (Throwable t) {
+                    throw Instantiators.propagate(t);
+                }
+            }
+        };
+    }
+
+    private static MethodHandle unreflect(Constructor<?> constructor) throws IllegalAccessException {
+        if (!Instantiators.isPublic(constructor)) {
+            constructor.setAccessible(true);
+        }
+        return MethodHandles.lookup().unreflectConstructor(constructor);
+    }
+}
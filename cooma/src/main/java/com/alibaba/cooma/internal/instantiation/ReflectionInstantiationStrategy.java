@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 通过{@link Constructor#newInstance(Object...)}实现的{@link InstantiationStrategy}，可以绑定任何构造函数。
+ *
+ * @since 0.4.1
+ */
+public final class ReflectionInstantiationStrategy implements InstantiationStrategy {
+    public <T> Supplier<T> bindConstructor(Class<T> clazz) throws Exception {
+        final Constructor<T> constructor = accessible(clazz.getConstructor());
+        return new Supplier<T>() {
+            public T get() {
+                try {
+                    return constructor.newInstance();
+                } catch (Exception e) {
+                    throw Instantiators.propagate(e instanceof InvocationTargetException ? e.getCause() : e);
+                }
+            }
+        };
+    }
+
+    public <T> Function<T, T> bindWrapperConstructor(Class<? extends T> clazz, Class<T> type) throws Exception {
+        final Constructor<? extends T> constructor = accessible(clazz.getConstructor(type));
+        return new Function<T, T>() {
+            public T apply(T instance) {
+                try {
+                    return constructor.newInstance(instance);
+                } catch (Exception e) {
+                    throw Instantiators.propagate(e instanceof InvocationTargetException ? e.getCause() : e);
+                }
+            }
+        };
+    }
+
+    private static <C extends Constructor<?>> C accessible(C constructor) {
+        if (!Instantiators.isPublic(constructor)) {
+            constructor.setAccessible(true);
+        }
+        return constructor;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * 扩展加载的Java Flight Recorder事件的入口。
+ * <p/>
+ * 每个事件是一对调用：工作前调用<code>beginXxx()</code>，工作后用返回的事件调用<code>endXxx(event, ...)</code>。
+ * 不记录事件时返回的事件是<code>null</code>。
+ * <p/>
+ * 没有<code>jdk.jfr</code>的JVM上使用这个什么也不做的实现，不会加载事件类。
+ * 有JFR时，{@link JfrExtensionEvents}只在录制开启了事件时才创建事件，
+ * 没有录制时的开销只是检查一次事件类型是否开启。
+ *
+ * @since 0.4.1
+ */
+public class ExtensionEvents {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionEvents.class);
+
+    private static final ExtensionEvents INSTANCE = create();
+
+    private static ExtensionEvents create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+        } catch (Throwable t) {
+            return new ExtensionEvents();
+        }
+        try {
+            return (ExtensionEvents) Class.forName("com.alibaba.cooma.internal.jfr.JfrExtensionEvents").getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            logger.warn("Fail to create JFR events of extension loading, events are disabled, cause: " + t.getMessage(), t);
+            return new ExtensionEvents();
+        }
+    }
+
+    public static ExtensionEvents get() {
+        return INSTANCE;
+    }
+
+    ExtensionEvents() {
+    }
+
+    /**
+     * 加载扩展点：查找和解析扩展配置文件，加载扩展实现类。
+     */
+    public Object beginLoad() {
+        return null;
+    }
+
+    public void endLoad(Object event, Class<?> type, int extensions, boolean reload) {
+    }
+
+    /**
+     * 读取扩展点的一个扩展配置文件。
+     */
+    public Object beginRead() {
+        return null;
+    }
+
+    public void endRead(Object event, Class<?> type, URL url, int definitions) {
+    }
+
+    /**
+     * 创建扩展实例，包括注入。
+     */
+    public Object beginInstantiate() {
+        return null;
+    }
+
+    public void endInstantiate(Object event, Class<?> type, String name, Class<?> clazz) {
+    }
+
+    /**
+     * 注入实例依赖的扩展。
+     */
+    public Object beginInject() {
+        return null;
+    }
+
+    public void endInject(Object event, Class<?> type, Class<?> clazz) {
+    }
+
+    /**
+     * 在扩展实例外创建Wrapper链。
+     */
+    public Object beginWrap() {
+        return null;
+    }
+
+    public void endWrap(Object event, Class<?> type, List<String> wrappers) {
+    }
+}
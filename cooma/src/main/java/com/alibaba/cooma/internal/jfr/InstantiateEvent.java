@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * @since 0.4.1
+ */
+@Name("com.alibaba.cooma.ExtensionInstantiate")
+@Label("Extension Instantiate")
+@Description("Creation of an extension instance, injection included")
+@Category({"Cooma", "Extension"})
+final class InstantiateEvent extends Event {
+    @Label("Extension Point")
+    Class<?> extensionPoint;
+
+    @Label("Name")
+    String name;
+
+    @Label("Implementation")
+    Class<?> implementation;
+}
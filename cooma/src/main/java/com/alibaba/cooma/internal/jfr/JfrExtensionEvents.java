@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.jfr;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * 产生JFR事件的{@link ExtensionEvents}，只在有<code>jdk.jfr</code>时加载。
+ *
+ * @since 0.4.1
+ */
+final class JfrExtensionEvents extends ExtensionEvents {
+    @Override
+    public Object beginLoad() {
+        LoadEvent event = new LoadEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endLoad(Object e, Class<?> type, int extensions, boolean reload) {
+        if (e == null) return;
+        LoadEvent event = (LoadEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.extensionPoint = type;
+            event.extensions = extensions;
+            event.reload = reload;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginRead() {
+        DescriptorReadEvent event = new DescriptorReadEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endRead(Object e, Class<?> type, URL url, int definitions) {
+        if (e == null) return;
+        DescriptorReadEvent event = (DescriptorReadEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.extensionPoint = type;
+            event.url = url.toString();
+            event.definitions = definitions;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginInstantiate() {
+        InstantiateEvent event = new InstantiateEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endInstantiate(Object e, Class<?> type, String name, Class<?> clazz) {
+        if (e == null) return;
+        InstantiateEvent event = (InstantiateEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.extensionPoint = type;
+            event.name = name;
+            event.implementation = clazz;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginInject() {
+        InjectEvent event = new InjectEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endInject(Object e, Class<?> type, Class<?> clazz) {
+        if (e == null) return;
+        InjectEvent event = (InjectEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.extensionPoint = type;
+            event.implementation = clazz;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginWrap() {
+        WrapEvent event = new WrapEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endWrap(Object e, Class<?> type, List<String> wrappers) {
+        if (e == null) return;
+        WrapEvent event = (WrapEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.extensionPoint = type;
+            event.wrappers = wrappers.toString();
+            event.commit();
+        }
+    }
+}
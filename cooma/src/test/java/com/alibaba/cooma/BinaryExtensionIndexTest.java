@@ -0,0 +1,177 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryExtensionIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ExtensionDefinition> definitions = Arrays.asList(
+            new ExtensionDefinition(ExtensionDefinition.Kind.EXTENSION, new String[]{"impl1", "impl1_alias"},
+                    "com.foo.Impl1", ExtensionDefinition.attributes("k1", "v1", "k2", "", "中文", "值")),
+            new ExtensionDefinition(ExtensionDefinition.Kind.WRAPPER, new String[]{"wrapper"}, "com.foo.Wrapper", null),
+            new ExtensionDefinition(ExtensionDefinition.Kind.ADAPTIVE, new String[]{"adaptive"}, "com.foo.Adaptive", null));
+
+    @Test
+    public void test_saveAndOpen() throws Exception {
+        File file = new File(folder.getRoot(), "sub/cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        assertFalse(index.open());
+        index.put("com.foo.Foo", definitions);
+        index.put("com.foo.Empty", Arrays.<ExtensionDefinition>asList());
+        index.save();
+        assertTrue(file.isFile());
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertEquals(definitions.toString(), index.get("com.foo.Foo").toString());
+        assertTrue(index.get("com.foo.Empty").isEmpty());
+        assertNull(index.get("com.foo.NotExisted"));
+    }
+
+    @Test
+    public void test_stale() throws Exception {
+        File file = folder.newFile("cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        index.put("com.foo.Foo", definitions);
+        index.save();
+
+        index = new BinaryExtensionIndex(file, 2L);
+        assertFalse(index.open());
+        assertNull(index.get("com.foo.Foo"));
+    }
+
+    @Test
+    public void test_saveMerge() throws Exception {
+        File file = folder.newFile("cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        index.put("com.foo.Foo", definitions);
+        index.save();
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        index.put("com.foo.Bar", definitions.subList(0, 1));
+        index.save();
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertEquals(definitions.toString(), index.get("com.foo.Foo").toString());
+        assertEquals(definitions.subList(0, 1).toString(), index.get("com.foo.Bar").toString());
+    }
+
+    @Test
+    public void test_saveLater() throws Exception {
+        File file = new File(folder.getRoot(), "cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        index.put("com.foo.Foo", definitions);
+        index.saveLater(0);
+        for (int i = 0; i < 100 && !file.isFile(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(file.isFile());
+
+        // 已经写入了，JVM退出时不再重写
+        long lastModified = file.lastModified();
+        assertTrue(file.setLastModified(lastModified - 10000));
+        index.save();
+        assertEquals(lastModified - 10000, file.lastModified());
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertEquals(definitions.toString(), index.get("com.foo.Foo").toString());
+    }
+
+    @Test
+    public void test_truncated() throws Exception {
+        File file = folder.newFile("cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        index.put("com.foo.Foo", definitions);
+        index.put("com.foo.Bar", definitions);
+        index.save();
+        // 截断最后一个扩展点的扩展定义，文件头和目录仍然完整
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertEquals(definitions.toString(), index.get("com.foo.Foo").toString());
+        // 解码出错时丢弃整个索引，扩展点改为解析配置文件
+        assertNull(index.get("com.foo.Bar"));
+        assertNull(index.get("com.foo.Foo"));
+
+        // 退出时重写索引文件，只有重新加载的扩展点
+        index.put("com.foo.Bar", definitions.subList(0, 1));
+        index.save();
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertEquals(definitions.subList(0, 1).toString(), index.get("com.foo.Bar").toString());
+        assertNull(index.get("com.foo.Foo"));
+    }
+
+    @Test
+    public void test_truncated_rewrittenWithoutNewExtensions() throws Exception {
+        File file = folder.newFile("cooma.idx");
+
+        BinaryExtensionIndex index = new BinaryExtensionIndex(file, 1L);
+        index.put("com.foo.Foo", definitions);
+        index.save();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // 截断到目录中间
+            raf.setLength(24);
+        } finally {
+            raf.close();
+        }
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertFalse(index.open());
+        assertNull(index.get("com.foo.Foo"));
+        index.save();
+
+        index = new BinaryExtensionIndex(file, 1L);
+        assertTrue(index.open());
+        assertNull(index.get("com.foo.Foo"));
+    }
+
+    @Test
+    public void test_classPathFingerprint() throws Exception {
+        assertEquals(BinaryExtensionIndex.classPathFingerprint(), BinaryExtensionIndex.classPathFingerprint());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DescriptorParserTest {
+    private static final String[] SAMPLES = {
+            "impl1=com.foo.FooImpl1",
+            "  impl1 , impl2=  com.foo.FooImpl1 ( k1=v1, k2 , k3 =  ,order=3 )  # comment",
+            "+wrapper=com.foo.FooWrapper",
+            "*=com.foo.FooAdaptive",
+            "+ w1,,w2 ,=com.foo.FooWrapper()",
+            ",a=com.foo.Foo",
+            "a,=com.foo.Foo(,k,,)",
+            "=com.foo.Foo",
+            "noEquals",
+            "a=com.foo.Foo(k=v",
+            "a=",
+            "a=(k)",
+            "a(b=c",
+            ",=com.foo.Foo",
+            "a=com.foo.Foo( )",
+            "a=com.foo.Foo(k=v=w, =x, y= )",
+            "a\t,\tb=com.foo.Foo\t(k\t=\tv)",
+            "# only comment",
+            "   ",
+    };
+
+    @Test
+    public void test_sameAsLegacyParser() throws Exception {
+        for (String sample : SAMPLES) {
+            assertSameResult(sample);
+        }
+
+        Random random = new Random(42);
+        char[] alphabet = "ab=+*,() \t#k".toCharArray();
+        for (int i = 0; i < 20000; i++) {
+            char[] line = new char[random.nextInt(16)];
+            for (int j = 0; j < line.length; j++) {
+                line[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertSameResult(new String(line));
+        }
+    }
+
+    @Test
+    public void test_lines() throws Exception {
+        String content = "# header\r\n\r\nimpl1=com.foo.Foo1 # c\nimpl2=com.foo.Foo2\r  \nimpl3=com.foo.Foo3";
+        DescriptorParser parser = new DescriptorParser(new StringReader(content));
+        List<String> lines = new ArrayList<String>();
+        while (parser.nextLine()) {
+            lines.add(parser.getLine());
+        }
+        assertEquals(Arrays.asList("impl1=com.foo.Foo1 # c", "impl2=com.foo.Foo2", "impl3=com.foo.Foo3"), lines);
+    }
+
+    @Test
+    public void test_longLines() throws Exception {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            StringBuilder line = new StringBuilder("impl" + i + "=com.foo.Foo(");
+            for (int j = 0; j < i; j++) {
+                line.append("k").append(j).append("=v,");
+            }
+            line.append(")");
+            expected.add(line.toString());
+            content.append(line).append('\n');
+        }
+
+        DescriptorParser parser = new DescriptorParser(new StringReader(content.toString()));
+        for (String line : expected) {
+            assertTrue(parser.nextLine());
+            assertEquals(line, parser.getLine());
+            assertEquals(legacyParse(line).toString(), parser.parse().toString());
+        }
+        assertFalse(parser.nextLine());
+    }
+
+    private static void assertSameResult(String line) throws Exception {
+        String expected = legacyResult(line);
+        DescriptorParser parser = new DescriptorParser(new StringReader(line));
+        String actual;
+        if (!parser.nextLine()) {
+            actual = "skipped";
+        } else {
+            try {
+                ExtensionDefinition definition = parser.parse();
+                actual = definition.getKind() + Arrays.toString(definition.names()) + definition.getClassName() +
+                        new HashMap<String, String>(definition.getAttributes());
+            } catch (RuntimeException e) {
+                actual = e.getClass().getName() + ": " + e.getMessage();
+            }
+        }
+        assertEquals("line: [" + line + "]", expected, actual);
+    }
+
+    // ==============================
+    // 原来的解析，用于对比
+    // ==============================
+
+    private static final Pattern NAME_SEPARATOR = Pattern.compile("\\s*,+\\s*");
+
+    private static String legacyResult(String line) throws Exception {
+        String config = new BufferedReader(new StringReader(line)).readLine();
+        if (config == null) return "skipped";
+        final int ci = config.indexOf('#');
+        if (ci >= 0) config = config.substring(0, ci);
+        config = config.trim();
+        if (config.length() == 0) return "skipped";
+        try {
+            ExtensionDefinition definition = legacyParse(config);
+            return definition.getKind() + Arrays.toString(definition.names()) + definition.getClassName() +
+                    new HashMap<String, String>(definition.getAttributes());
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    private static ExtensionDefinition legacyParse(String config) {
+        String name = null;
+        String body = null;
+        String attribute = null;
+        int i = config.indexOf('=');
+        if (i > 0) {
+            name = config.substring(0, i).trim();
+            body = config.substring(i + 1).trim();
+        }
+        if (name == null || name.length() == 0) {
+            throw new IllegalStateException(
+                    "missing extension name, config value: " + config);
+        }
+        int j = config.indexOf("(", i);
+        if (j > 0) {
+            if (config.charAt(config.length() - 1) != ')') {
+                throw new IllegalStateException(
+                        "missing ')' of extension attribute!");
+            }
+            body = config.substring(i + 1, j).trim();
+            attribute = config.substring(j + 1, config.length() - 1);
+        }
+
+        ExtensionDefinition.Kind kind = ExtensionDefinition.Kind.EXTENSION;
+        if (name.startsWith("*")) {
+            kind = ExtensionDefinition.Kind.ADAPTIVE;
+            name = name.substring(1);
+        } else if (name.startsWith("+")) {
+            kind = ExtensionDefinition.Kind.WRAPPER;
+            name = name.substring(1);
+        }
+        return new ExtensionDefinition(kind, NAME_SEPARATOR.split(name), body, legacyParseAttribute(attribute));
+    }
+
+    private static Map<String, String> legacyParseAttribute(String attribute) {
+        Map<String, String> ret = new HashMap<String, String>();
+        if (attribute == null || attribute.length() == 0) return ret;
+
+        String[] parts = attribute.split(",");
+        for (String part : parts) {
+            part = part.trim();
+            int idx = part.indexOf('=');
+            if (idx > 0) {
+                ret.put(part.substring(0, idx).trim(),
+                        part.substring(idx + 1).trim());
+            } else {
+                ret.put(part, "");
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.util.Utils;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class ExtensionAttributesTest {
+    @Test
+    public void test_typedAccessors() throws Exception {
+        ExtensionAttributes attributes = new ExtensionAttributes(Utils.kv2Map("order", "3", "isProvider", "",
+                "enabled", "False", "timeout", "500ms", "interval", "2", "weight", "10000000000", "scope", "Prototype"));
+
+        assertTrue(attributes.has("order"));
+        assertFalse(attributes.has("notExisted"));
+        assertEquals("500ms", attributes.getString("timeout"));
+        assertNull(attributes.getString("notExisted"));
+
+        assertEquals(3, attributes.getInt("order", 0));
+        assertEquals(-1, attributes.getInt("notExisted", -1));
+        assertEquals(10000000000L, attributes.getLong("weight", 0));
+
+        assertTrue(attributes.getBoolean("isProvider", false));
+        assertFalse(attributes.getBoolean("enabled", true));
+        assertTrue(attributes.getBoolean("notExisted", true));
+
+        assertEquals(500, attributes.getDuration("timeout", TimeUnit.MILLISECONDS, 0));
+        assertEquals(2000, attributes.getDuration("interval", TimeUnit.MICROSECONDS, 0)); // 没有单位是毫秒
+        assertEquals(7, attributes.getDuration("notExisted", TimeUnit.SECONDS, 7));
+
+        assertSame(TimeUnit.DAYS, attributes.getEnum("notExisted", TimeUnit.class, TimeUnit.DAYS));
+        assertEquals(Utils.kv2Map("order", "3", "isProvider", "", "enabled", "False", "timeout", "500ms",
+                "interval", "2", "weight", "10000000000", "scope", "Prototype"), attributes.asMap());
+    }
+
+    @Test
+    public void test_typeMismatch() throws Exception {
+        ExtensionAttributes attributes = new ExtensionAttributes(Utils.kv2Map("order", "first", "weight", "10000000000"));
+        try {
+            attributes.getInt("order", 0);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute order(first) is not an int"));
+        }
+        try {
+            attributes.getInt("weight", 0);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute weight(10000000000) is not an int"));
+        }
+        try {
+            attributes.getEnum("order", TimeUnit.class, null);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute order(first) is not one of [NANOSECONDS"));
+        }
+    }
+}
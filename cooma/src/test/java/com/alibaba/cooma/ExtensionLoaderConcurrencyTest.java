@@ -0,0 +1,299 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext14.CrossInitExtA;
+import com.alibaba.cooma.ext14.CrossInitExtB;
+import com.alibaba.cooma.ext14.impl.CrossInitExtAAdaptive;
+import com.alibaba.cooma.ext14.impl.CrossInitExtAImpl;
+import com.alibaba.cooma.ext14.impl.CrossInitExtBImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 多线程同时第一次加载扩展点：每轮用新的ClassLoader重新加载<code>ext14</code>的类，
+ * 所有线程在{@link CyclicBarrier}上对齐后同时获取扩展。
+ * <p/>
+ * 检查{@link ExtensionLoader}和扩展实例只创建一次，各线程看到一致的扩展，
+ * 实现类的静态初始化中获取另一个扩展点时不会死锁；并输出吞吐量，用于衡量去锁等改动。
+ */
+public class ExtensionLoaderConcurrencyTest {
+    private static final Logger logger = LoggerFactory.getLogger(ExtensionLoaderConcurrencyTest.class);
+
+    private static final int THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int ROUNDS = 50;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        // 死锁时测试失败退出，不被卡住的线程挡住JVM退出
+        executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cooma-stress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 只由自己加载<code>ext14</code>的类，其它类委托给父ClassLoader。
+     */
+    static class Ext14ClassLoader extends URLClassLoader {
+        private static final String PACKAGE = "com.alibaba.cooma.ext14.";
+
+        Ext14ClassLoader() {
+            super(new URL[]{CrossInitExtA.class.getProtectionDomain().getCodeSource().getLocation()},
+                    ExtensionLoaderConcurrencyTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(PACKAGE)) return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) clazz = findClass(name);
+                if (resolve) resolveClass(clazz);
+                return clazz;
+            }
+        }
+    }
+
+    private static class Observation {
+        ExtensionLoader<?> loaderA;
+        ExtensionLoader<?> loaderB;
+        Object extA;
+        Object extB;
+        Object adaptiveA;
+        Set<String> supportedA;
+        Set<String> supportedB;
+    }
+
+    @Test
+    public void test_concurrentFirstLoad() throws Exception {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            final Ext14ClassLoader classLoader = new Ext14ClassLoader();
+            try {
+                final Class<?> typeA = classLoader.loadClass(CrossInitExtA.class.getName());
+                final Class<?> typeB = classLoader.loadClass(CrossInitExtB.class.getName());
+                final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+                List<Future<Observation>> futures = new ArrayList<Future<Observation>>();
+                for (int i = 0; i < THREADS; i++) {
+                    // 一半线程先获取A，另一半先获取B，两个实现类的静态初始化交叉获取对方
+                    final boolean aFirst = i % 2 == 0;
+                    futures.add(executor.submit(new Callable<Observation>() {
+                        public Observation call() throws Exception {
+                            Thread.currentThread().setContextClassLoader(classLoader);
+                            try {
+                                barrier.await();
+                                Observation o = new Observation();
+                                if (aFirst) {
+                                    o.extA = (o.loaderA = ExtensionLoader.getExtensionLoader(typeA)).getDefaultExtension();
+                                    o.extB = (o.loaderB = ExtensionLoader.getExtensionLoader(typeB)).getDefaultExtension();
+                                } else {
+                                    o.extB = (o.loaderB = ExtensionLoader.getExtensionLoader(typeB)).getDefaultExtension();
+                                    o.extA = (o.loaderA = ExtensionLoader.getExtensionLoader(typeA)).getDefaultExtension();
+                                }
+                                o.adaptiveA = o.loaderA.getAdaptiveExtension();
+                                o.supportedA = o.loaderA.getSupportedExtensions();
+                                o.supportedB = o.loaderB.getSupportedExtensions();
+                                return o;
+                            } finally {
+                                Thread.currentThread().setContextClassLoader(null);
+                            }
+                        }
+                    }));
+                }
+
+                List<Observation> observations = new ArrayList<Observation>();
+                for (Future<Observation> future : futures) {
+                    try {
+                        observations.add(future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                    } catch (TimeoutException e) {
+                        fail("Deadlock in round " + round + ":\n" + dumpThreads());
+                    }
+                }
+
+                Observation first = observations.get(0);
+                for (Observation o : observations) {
+                    assertSame(first.loaderA, o.loaderA);
+                    assertSame(first.loaderB, o.loaderB);
+                    assertSame(first.extA, o.extA);
+                    assertSame(first.extB, o.extB);
+                    assertSame(first.adaptiveA, o.adaptiveA);
+                    assertEquals(Collections.singleton("impl"), o.supportedA);
+                    assertEquals(Collections.singleton("impl"), o.supportedB);
+                }
+                assertSame(classLoader, first.extA.getClass().getClassLoader());
+                ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+                Thread.currentThread().setContextClassLoader(classLoader);
+                try {
+                    assertEquals("CrossInitExtAImpl-ha", typeA.getMethod("echo", String.class).invoke(first.adaptiveA, "ha"));
+                } finally {
+                    Thread.currentThread().setContextClassLoader(contextClassLoader);
+                }
+
+                // 实现类各自只初始化、实例化一次，静态初始化中看到的另一个扩展点是完整的
+                assertEquals(1, staticField(classLoader, CrossInitExtAImpl.class, "INSTANCES", AtomicInteger.class).get());
+                assertEquals(1, staticField(classLoader, CrossInitExtBImpl.class, "INSTANCES", AtomicInteger.class).get());
+                assertEquals(1, staticField(classLoader, CrossInitExtAAdaptive.class, "INSTANCES", AtomicInteger.class).get());
+                assertEquals(Collections.singleton("impl"), staticField(classLoader, CrossInitExtAImpl.class, "PEERS", Set.class));
+                assertEquals(Collections.singleton("impl"), staticField(classLoader, CrossInitExtBImpl.class, "PEERS", Set.class));
+
+                // 死锁时不释放，释放要等待卡住的加载
+                ExtensionLoader.release(classLoader);
+            } finally {
+                classLoader.close();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        logger.info("Concurrent first load: " + ROUNDS + " rounds x " + THREADS + " threads, " +
+                String.format("%.2f", elapsed / 1e6 / ROUNDS) + " ms/round");
+    }
+
+    @Test
+    public void test_concurrentReloadAndGet() throws Exception {
+        final ExtensionLoader<SimpleExt> loader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < THREADS; i++) {
+            final boolean reloader = i == 0;
+            futures.add(executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    barrier.await();
+                    long ops = 0;
+                    while (!stop.get()) {
+                        if (reloader) {
+                            loader.reload();
+                        } else {
+                            // 一次读取内看到的是同一个快照：扩展名都能获取到扩展
+                            for (String name : loader.getSupportedExtensions()) {
+                                assertTrue(loader.hasExtension(name));
+                                loader.getExtension(name);
+                            }
+                            loader.getDefaultExtension();
+                            ExtensionLoader.getExtensionLoader(SimpleExt.class);
+                        }
+                        ops++;
+                    }
+                    return ops;
+                }
+            }));
+        }
+
+        Thread.sleep(500);
+        stop.set(true);
+        long reloads = 0;
+        long reads = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                long ops = futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (i == 0) reloads = ops;
+                else reads += ops;
+            } catch (TimeoutException e) {
+                fail("Deadlock:\n" + dumpThreads());
+            }
+        }
+        assertTrue(reloads > 0);
+        assertTrue(reads > 0);
+        logger.info("Concurrent reload and get: " + THREADS + " threads, " +
+                reloads * 2 + " reloads/s, " + reads * 2 + " reads/s");
+    }
+
+    @Test
+    public void test_getExtensionThroughput() throws Exception {
+        final ExtensionLoader<SimpleExt> loader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        final SimpleExt expected = loader.getExtension("impl1");
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    barrier.await();
+                    long ops = 0;
+                    while (!stop.get()) {
+                        assertSame(expected, ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("impl1"));
+                        ops++;
+                    }
+                    return ops;
+                }
+            }));
+        }
+
+        Thread.sleep(500);
+        stop.set(true);
+        long ops = 0;
+        for (Future<Long> future : futures) {
+            ops += future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        assertTrue(ops > 0);
+        logger.info("Concurrent getExtensionLoader().getExtension(): " + THREADS + " threads, " + ops * 2 + " ops/s");
+    }
+
+    private static <V> V staticField(ClassLoader classLoader, Class<?> clazz, String name, Class<V> type) throws Exception {
+        return type.cast(classLoader.loadClass(clazz.getName()).getField(name).get(null));
+    }
+
+    private static String dumpThreads() {
+        StringBuilder buf = new StringBuilder();
+        for (ThreadInfo info : ManagementFactory.getThreadMXBean().dumpAllThreads(true, true)) {
+            buf.append(info);
+        }
+        return buf.toString();
+    }
+}
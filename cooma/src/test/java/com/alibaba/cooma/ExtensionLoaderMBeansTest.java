@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionLoaderMBeansTest {
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Before
+    public void setUp() {
+        System.setProperty(ExtensionLoaderMBeans.ENABLED_PROPERTY, "true");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ExtensionLoaderMBeans.ENABLED_PROPERTY);
+    }
+
+    @Test
+    public void test_attributesAndOperations() throws Exception {
+        ClassLoader classLoader = new ExtensionLoaderRegistryTest.ChildFirstClassLoader("com.alibaba.cooma.ext1.impl.");
+        ObjectName name = ExtensionLoaderMBeans.objectName(SimpleExt.class, classLoader);
+
+        ExtensionLoaderRegistryTest.getExtensionLoader(classLoader, SimpleExt.class);
+        assertTrue(server.isRegistered(name));
+        ExtensionLoaderMXBean bean = JMX.newMXBeanProxy(server, name, ExtensionLoaderMXBean.class);
+
+        // 读取属性不触发加载
+        assertEquals(SimpleExt.class.getName(), bean.getExtensionPoint());
+        assertEquals("impl1", bean.getDefaultExtensionName());
+        assertFalse(bean.isLoaded());
+        assertEquals(Collections.<String>emptySet(), bean.getSupportedExtensions());
+        assertEquals(0, bean.getLastLoadTime());
+
+        bean.preload(true);
+        assertTrue(bean.isLoaded());
+        assertEquals(new HashSet<String>(Arrays.asList("impl1", "impl2", "impl3")), bean.getSupportedExtensions());
+        assertEquals(Collections.<String>emptySet(), bean.getWrapperNames());
+        assertNull(bean.getAdaptiveClass());
+        assertTrue(bean.getLoadExceptions().isEmpty());
+        assertTrue(bean.getLastLoadTime() > 0);
+        assertTrue(bean.getLastLoadNanos() > 0);
+        assertEquals(1, bean.getInstantiations());
+        assertEquals(1, bean.getCachedInstances());
+
+        ExtensionLoaderRegistryTest.getExtension(classLoader, SimpleExt.class, "impl2");
+        ExtensionLoaderRegistryTest.getExtension(classLoader, SimpleExt.class, "impl3");
+        ExtensionLoaderRegistryTest.getExtension(classLoader, SimpleExt.class, "impl3");
+        assertEquals(4, bean.getInstantiations());
+        // prototype的实例不缓存
+        assertEquals(2, bean.getCachedInstances());
+
+        // 重新加载后缓存的实例丢弃
+        bean.reload();
+        assertEquals(0, bean.getCachedInstances());
+        assertEquals(4, bean.getInstantiations());
+
+        ExtensionLoader.release(classLoader);
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void test_disabled() throws Exception {
+        System.clearProperty(ExtensionLoaderMBeans.ENABLED_PROPERTY);
+        ClassLoader classLoader = new ExtensionLoaderRegistryTest.ChildFirstClassLoader("com.alibaba.cooma.ext1.impl.");
+
+        ExtensionLoaderRegistryTest.getExtension(classLoader, SimpleExt.class, "impl1");
+        assertFalse(server.isRegistered(ExtensionLoaderMBeans.objectName(SimpleExt.class, classLoader)));
+        ExtensionLoader.release(classLoader);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext1.impl.SimpleExtImpl1;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionLoaderRegistryTest {
+    private static final URL TEST_CLASSES = ExtensionLoaderRegistryTest.class.getProtectionDomain().getCodeSource().getLocation();
+
+    /**
+     * 模拟插件的ClassLoader，指定包下的类自己加载，其它类委托给父ClassLoader。
+     */
+    static class ChildFirstClassLoader extends URLClassLoader {
+        private final String[] packages;
+
+        ChildFirstClassLoader(String... packages) {
+            super(new URL[]{TEST_CLASSES}, ExtensionLoaderRegistryTest.class.getClassLoader());
+            this.packages = packages;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (String p : packages) {
+                if (name.startsWith(p)) {
+                    synchronized (getClassLoadingLock(name)) {
+                        Class<?> clazz = findLoadedClass(name);
+                        if (clazz == null) clazz = findClass(name);
+                        if (resolve) resolveClass(clazz);
+                        return clazz;
+                    }
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    static Object getExtension(ClassLoader classLoader, Class<?> type, String name) {
+        Thread thread = Thread.currentThread();
+        ClassLoader old = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            return ExtensionLoader.getExtensionLoader(type).getExtension(name);
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+    }
+
+    static ExtensionLoader<?> getExtensionLoader(ClassLoader classLoader, Class<?> type) {
+        Thread thread = Thread.currentThread();
+        ClassLoader old = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            return ExtensionLoader.getExtensionLoader(type);
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+    }
+
+    @Test
+    public void test_getExtensionLoader_PerClassLoader() throws Exception {
+        ClassLoader plugin = new ChildFirstClassLoader("com.alibaba.cooma.ext1.impl.");
+
+        ExtensionLoader<?> loader = getExtensionLoader(plugin, SimpleExt.class);
+        assertNotSame(ExtensionLoader.getExtensionLoader(SimpleExt.class), loader);
+        assertSame(loader, getExtensionLoader(plugin, SimpleExt.class));
+
+        Object extension = getExtension(plugin, SimpleExt.class, "impl1");
+        assertSame(plugin, extension.getClass().getClassLoader());
+        assertSame(SimpleExtImpl1.class, ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("impl1").getClass());
+        assertSame(extension, getExtension(plugin, SimpleExt.class, "impl1"));
+
+        ExtensionLoader.release(plugin);
+        ExtensionLoader<?> newLoader = getExtensionLoader(plugin, SimpleExt.class);
+        assertNotSame(loader, newLoader);
+        assertNotSame(extension, getExtension(plugin, SimpleExt.class, "impl1"));
+    }
+
+    /**
+     * 线程上下文ClassLoader不同，但没有增加扩展配置、类都委托给父ClassLoader加载时，使用同一个{@link ExtensionLoader}，单例不重复。
+     */
+    @Test
+    public void test_getExtensionLoader_SameClassSpace() throws Exception {
+        ClassLoader parent = ExtensionLoaderRegistryTest.class.getClassLoader();
+        final ClassLoader[] contexts = {new URLClassLoader(new URL[0], parent), new URLClassLoader(new URL[0], parent), null};
+        final Object[] loaders = new Object[contexts.length];
+        final Object[] extensions = new Object[contexts.length];
+
+        Thread[] threads = new Thread[contexts.length];
+        for (int i = 0; i < contexts.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    setContextClassLoader(contexts[index]);
+                    loaders[index] = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+                    extensions[index] = ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("impl1");
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ExtensionLoader<SimpleExt> own = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        for (int i = 0; i < contexts.length; i++) {
+            assertSame(own, loaders[i]);
+            assertSame(own.getExtension("impl1"), extensions[i]);
+        }
+    }
+
+    /**
+     * 反复"重新部署"插件：扩展点在插件内、扩展点在父ClassLoader而实现在插件内；一半显式释放，一半只丢弃ClassLoader。
+     * 丢弃的ClassLoader都应该能被回收，Metaspace不持续增长。
+     */
+    @Test
+    public void test_redeploy_soak() throws Exception {
+        final int cycles = 1000;
+        List<WeakReference<ClassLoader>> plugins = new ArrayList<WeakReference<ClassLoader>>();
+        long warmMetaspace = 0;
+        for (int i = 0; i < cycles; i++) {
+            redeploy(i, plugins);
+            if (i == 99) warmMetaspace = gcAndMeasureMetaspace(plugins);
+        }
+        long metaspace = gcAndMeasureMetaspace(plugins);
+
+        int alive = 0;
+        for (WeakReference<ClassLoader> plugin : plugins) {
+            if (plugin.get() != null) alive++;
+        }
+        assertEquals(0, alive);
+        if (warmMetaspace > 0) {
+            assertTrue("Metaspace grows from " + warmMetaspace + " to " + metaspace,
+                    metaspace - warmMetaspace < 4 * 1024 * 1024);
+        }
+    }
+
+    private static void redeploy(int cycle, List<WeakReference<ClassLoader>> plugins) throws Exception {
+        ClassLoader plugin;
+        Class<?> type;
+        if (cycle % 2 == 0) {
+            plugin = new ChildFirstClassLoader("com.alibaba.cooma.ext1.");
+            type = plugin.loadClass(SimpleExt.class.getName());
+        } else {
+            plugin = new ChildFirstClassLoader("com.alibaba.cooma.ext1.impl.");
+            type = SimpleExt.class;
+        }
+        Object extension = getExtension(plugin, type, "impl1");
+        assertSame(plugin, extension.getClass().getClassLoader());
+        if (cycle % 4 < 2) {
+            ExtensionLoader.release(plugin);
+        }
+        plugins.add(new WeakReference<ClassLoader>(plugin));
+    }
+
+    private static long gcAndMeasureMetaspace(List<WeakReference<ClassLoader>> plugins) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            System.gc();
+            boolean collected = true;
+            for (WeakReference<ClassLoader> plugin : plugins) {
+                if (plugin.get() != null) {
+                    collected = false;
+                    break;
+                }
+            }
+            if (collected) break;
+            Thread.sleep(50);
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) return pool.getUsage().getUsed();
+        }
+        return 0;
+    }
+}
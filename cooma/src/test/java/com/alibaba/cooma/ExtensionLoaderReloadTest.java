@@ -0,0 +1,277 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext12.ReloadableExt;
+import com.alibaba.cooma.ext12.ReloadableExtUser;
+import com.alibaba.cooma.ext12.impl.ReloadableExtImpl1;
+import com.alibaba.cooma.ext12.impl.ReloadableExtImpl2;
+import com.alibaba.util.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionLoaderReloadTest {
+    private File directory;
+    private File descriptor;
+    private URLClassLoader classLoader;
+    private ClassLoader oldContextClassLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("cooma-reload", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        descriptor = new File(directory, "META-INF/extensions/" + ReloadableExt.class.getName());
+        assertTrue(descriptor.getParentFile().mkdirs());
+
+        // 配置文件所在目录的ClassLoader，扩展实现类委托给父ClassLoader加载
+        classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, getClass().getClassLoader());
+        oldContextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Thread.currentThread().setContextClassLoader(oldContextClassLoader);
+        ExtensionLoader.release(classLoader);
+        System.clearProperty(DescriptorWatcher.ENABLED_PROPERTY);
+        descriptor.delete();
+    }
+
+    /**
+     * 写到临时文件后整体替换，监视线程不会读到写了一半的配置文件。
+     */
+    private void writeDescriptor(String... lines) throws Exception {
+        File temp = new File(directory, descriptor.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "utf-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), descriptor.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Test
+    public void test_reload() throws Exception {
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName() + "(k=v1)");
+        ExtensionLoader<ReloadableExt> loader = ExtensionLoader.getExtensionLoader(ReloadableExt.class);
+        ReloadableExt adaptive = loader.getAdaptiveExtension();
+        Map<String, String> config = Utils.kv2Map(ReloadableExt.class.getName(), "impl1");
+
+        ReloadableExt impl1 = loader.getExtension("impl1");
+        assertTrue(impl1 instanceof ReloadableExtImpl1);
+        assertEquals("ReloadableExtImpl1-ha", adaptive.echo(config, "ha"));
+        assertFalse(loader.hasExtension("impl2"));
+
+        writeDescriptor("impl1=" + ReloadableExtImpl2.class.getName() + "(k=v2)",
+                "impl2=" + ReloadableExtImpl2.class.getName());
+        loader.reload();
+
+        assertEquals(new HashSet<String>(Arrays.asList("impl1", "impl2")), loader.getSupportedExtensions());
+        assertEquals(Utils.kv2Map("k", "v2"), loader.getExtensionAttribute("impl1"));
+        ReloadableExt reloaded = loader.getExtension("impl1");
+        assertTrue(reloaded instanceof ReloadableExtImpl2);
+        assertNotSame(impl1, reloaded);
+        assertSame(reloaded, loader.getExtension("impl1"));
+        // 之前取得的自适应扩展不会使用缓存的旧实例
+        assertEquals("ReloadableExtImpl2-ha", adaptive.echo(config, "ha"));
+        assertEquals("ReloadableExtImpl2-ha", loader.getAdaptiveExtension().echo(config, "ha"));
+    }
+
+    @Test
+    public void test_reload_KeepPreviousOnEmptyConfig() throws Exception {
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader<ReloadableExt> loader = ExtensionLoader.getExtensionLoader(ReloadableExt.class);
+        ReloadableExt impl1 = loader.getExtension("impl1");
+
+        // 如配置文件正在被写入
+        writeDescriptor();
+        loader.reload();
+        assertSame(impl1, loader.getExtension("impl1"));
+
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName(), "impl2=com.alibaba.cooma.ext12.impl.NotExist");
+        loader.reload();
+        assertFalse(loader.hasExtension("impl2"));
+        assertSame(impl1, loader.getExtension("impl1"));
+    }
+
+    @Test
+    public void test_reload_ReadersNotBlocked() throws Exception {
+        writeDescriptor("impl2=" + ReloadableExtImpl2.class.getName());
+        final ExtensionLoader<ReloadableExt> loader = ExtensionLoader.getExtensionLoader(ReloadableExt.class);
+        loader.getExtension("impl2");
+
+        final CountDownLatch stop = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Set<String> both = new HashSet<String>(Arrays.asList("impl1", "impl2"));
+                    Set<String> one = Collections.singleton("impl2");
+                    while (stop.getCount() > 0) {
+                        // 总是看到某一次加载的完整结果
+                        Set<String> names = loader.getSupportedExtensions();
+                        if (!names.equals(both) && !names.equals(one)) {
+                            throw new AssertionError("inconsistent extensions: " + names);
+                        }
+                        assertTrue(loader.getExtension("impl2") instanceof ReloadableExtImpl2);
+                    }
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                if (i % 2 == 0) {
+                    writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName(), "impl2=" + ReloadableExtImpl2.class.getName());
+                } else {
+                    writeDescriptor("impl2=" + ReloadableExtImpl2.class.getName());
+                }
+                loader.reload();
+            }
+        } finally {
+            stop.countDown();
+            reader.join();
+        }
+        assertNull(error.get());
+    }
+
+    @Test
+    public void test_reload_InvalidateDependents() throws Exception {
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader<ReloadableExtUser> userLoader = ExtensionLoader.getExtensionLoader(ReloadableExtUser.class);
+        ReloadableExtUser user = userLoader.getDefaultExtension();
+        assertEquals("ReloadableExtImpl1-ha", user.echo("ha"));
+        SimpleExt notDependent = ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtension();
+
+        writeDescriptor("impl1=" + ReloadableExtImpl2.class.getName());
+        ExtensionLoader.getExtensionLoader(ReloadableExt.class).reload();
+
+        // 注入了重新加载的扩展点的缓存实例重新创建，其它的不受影响
+        ReloadableExtUser reloaded = userLoader.getDefaultExtension();
+        assertNotSame(user, reloaded);
+        assertEquals("ReloadableExtImpl2-ha", reloaded.echo("ha"));
+        assertSame(reloaded, userLoader.getDefaultExtension());
+        assertSame(notDependent, ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtension());
+    }
+
+    @Test
+    public void test_reload_KeepDependentsOfUnchangedClass() throws Exception {
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader<ReloadableExtUser> userLoader = ExtensionLoader.getExtensionLoader(ReloadableExtUser.class);
+        ReloadableExtUser user = userLoader.getDefaultExtension();
+
+        // 注入的缺省扩展的实现类没有变化
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName() + "(k=v2)", "impl2=" + ReloadableExtImpl2.class.getName());
+        ExtensionLoader.getExtensionLoader(ReloadableExt.class).reload();
+        assertSame(user, userLoader.getDefaultExtension());
+
+        writeDescriptor("impl1=" + ReloadableExtImpl2.class.getName());
+        ExtensionLoader.getExtensionLoader(ReloadableExt.class).reload();
+        assertNotSame(user, userLoader.getDefaultExtension());
+        assertEquals("ReloadableExtImpl2-ha", userLoader.getDefaultExtension().echo("ha"));
+    }
+
+    @Test
+    public void test_reload_AdaptiveDispatchToInvalidated() throws Exception {
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader<ReloadableExtUser> userLoader = ExtensionLoader.getExtensionLoader(ReloadableExtUser.class);
+        ReloadableExtUser adaptive = userLoader.getAdaptiveExtension();
+        Map<String, String> config = Utils.kv2Map(ReloadableExtUser.class.getName(), "user");
+        assertEquals("ReloadableExtImpl1-ha", adaptive.echo(config, "ha"));
+
+        writeDescriptor("impl1=" + ReloadableExtImpl2.class.getName());
+        ExtensionLoader.getExtensionLoader(ReloadableExt.class).reload();
+
+        // 自适应扩展不会再分派到失效的缓存实例
+        assertEquals("ReloadableExtImpl2-ha", adaptive.echo(config, "ha"));
+        assertSame(userLoader.getDefaultExtension(), userLoader.getExtension("user"));
+    }
+
+    @Test
+    public void test_watch() throws Exception {
+        System.setProperty(DescriptorWatcher.ENABLED_PROPERTY, "true");
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader<ReloadableExt> loader = ExtensionLoader.getExtensionLoader(ReloadableExt.class);
+        assertTrue(loader.getExtension("impl1") instanceof ReloadableExtImpl1);
+
+        writeDescriptor("impl1=" + ReloadableExtImpl2.class.getName());
+        for (int i = 0; i < 200 && !(loader.getExtension("impl1") instanceof ReloadableExtImpl2); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(loader.getExtension("impl1") instanceof ReloadableExtImpl2);
+    }
+
+    @Test
+    public void test_watch_Overflow() throws Exception {
+        System.setProperty(DescriptorWatcher.ENABLED_PROPERTY, "true");
+        writeDescriptor("impl1=" + ReloadableExtImpl1.class.getName());
+        ExtensionLoader.getExtensionLoader(ReloadableExt.class).getExtension("impl1");
+
+        WatchEvent<Object> overflow = new WatchEvent<Object>() {
+            public Kind<Object> kind() {
+                return StandardWatchEventKinds.OVERFLOW;
+            }
+
+            public int count() {
+                return 1;
+            }
+
+            public Object context() {
+                return null;
+            }
+        };
+        // 丢失了事件时，重新加载目录中所有的配置文件
+        Path file = descriptor.toPath().toAbsolutePath();
+        Set<Path> changed = DescriptorWatcher.getChangedFiles(file.getParent(), Collections.<WatchEvent<?>>singletonList(overflow));
+        assertEquals(Collections.singleton(file), changed);
+    }
+}
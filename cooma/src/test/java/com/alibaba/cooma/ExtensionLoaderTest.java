@@ -0,0 +1,719 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext10.IndexedExt;
+import com.alibaba.cooma.ext10.impl.IndexedExtImpl1;
+import com.alibaba.cooma.ext10.impl.IndexedExtImpl2;
+import com.alibaba.cooma.ext10.impl.IndexedExtImpl3;
+import com.alibaba.cooma.ext11.LazyExt;
+import com.alibaba.cooma.ext11.impl.LazyExtImpl1;
+import com.alibaba.cooma.ext11.impl.LazyExtImpl2;
+import com.alibaba.cooma.ext11.impl.LazyExtInitErrorImpl;
+import com.alibaba.cooma.ext11.impl.LazyExtWrapper;
+import com.alibaba.cooma.ext1.impl.SimpleExtImpl1;
+import com.alibaba.cooma.ext1.impl.SimpleExtImpl2;
+import com.alibaba.cooma.ext1.impl.SimpleExtImpl3;
+import com.alibaba.cooma.ext13.OrderedExt;
+import com.alibaba.cooma.ext16.SelfInjectExt;
+import com.alibaba.cooma.ext16.impl.SelfInjectExtImpl1;
+import com.alibaba.cooma.ext2.NoDefaultExt;
+import com.alibaba.cooma.ext3.WrappedExt;
+import com.alibaba.cooma.ext3.impl.Ext3Impl1;
+import com.alibaba.cooma.ext3.impl.Ext3Impl2;
+import com.alibaba.cooma.ext3.impl.Ext3Wrapper1;
+import com.alibaba.cooma.ext3.impl.Ext3Wrapper2;
+import com.alibaba.cooma.ext4.WithAttributeExt;
+import com.alibaba.cooma.ext6.InjectExt;
+import com.alibaba.cooma.ext6.impl.Ext6Impl2;
+import com.alibaba.cooma.ext7.InitErrorExt;
+import com.alibaba.cooma.ext8.InvalidNameExt;
+import com.alibaba.cooma.ext8.InvalidNameExt2;
+import com.alibaba.cooma.ext9.ManualAdaptiveClassExt;
+import com.alibaba.cooma.ext9.impl.ManualAdaptive;
+import com.alibaba.cooma.ext5.ImplNoDefaultConstructorExt;
+import com.alibaba.util.Utils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.allOf;
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class ExtensionLoaderTest {
+    @Test
+    public void test_getExtensionLoader_Null() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(),
+                    containsString("Extension type == null"));
+        }
+    }
+
+    @Test
+    public void test_getExtensionLoader_NotInterface() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(ExtensionLoaderTest.class);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(),
+                    containsString("type(com.alibaba.cooma.ExtensionLoaderTest) is not interface"));
+        }
+    }
+
+    @Test
+    public void test_getExtensionLoader_NotSpiAnnotation() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(NoExtensionExt.class);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(),
+                    allOf(containsString(NoExtensionExt.class.getName()),
+                            containsString("is not a extension"),
+                            containsString("WITHOUT @Extension Annotation")));
+        }
+    }
+
+    @Test
+    public void test_getExtensionLoader_SameInstance() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<ExtensionLoader<?>> loaders = new CopyOnWriteArrayList<ExtensionLoader<?>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    loaders.add(ExtensionLoader.getExtensionLoader(WithAttributeExt.class));
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8, loaders.size());
+        for (ExtensionLoader<?> loader : loaders) {
+            assertSame(ExtensionLoader.getExtensionLoader(WithAttributeExt.class), loader);
+        }
+    }
+
+    @Test
+    public void test_getDefault() throws Exception {
+        SimpleExt ext = ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtension();
+        assertThat(ext, instanceOf(SimpleExtImpl1.class));
+
+        String name = ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtensionName();
+        assertEquals("impl1", name);
+    }
+
+    @Test
+    public void test_getDefault_NULL() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(NoDefaultExt.class).getDefaultExtension();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("No default extension on extension com.alibaba.cooma.ext2.NoDefaultExt"));
+        }
+
+
+        String name = ExtensionLoader.getExtensionLoader(NoDefaultExt.class).getDefaultExtensionName();
+        assertNull(name);
+    }
+
+    @Test
+    public void test_getExtension() throws Exception {
+        assertTrue(ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("impl1") instanceof SimpleExtImpl1);
+        assertTrue(ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("impl2") instanceof SimpleExtImpl2);
+    }
+
+    @Test
+    public void test_getExtension_SameInstance() throws Exception {
+        ExtensionLoader<SimpleExt> extensionLoader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        assertSame(extensionLoader.getExtension("impl1"), extensionLoader.getExtension("impl1"));
+        assertSame(extensionLoader.getExtension("impl1"), extensionLoader.getDefaultExtension());
+    }
+
+    @Test
+    public void test_getExtension_Prototype() throws Exception {
+        ExtensionLoader<SimpleExt> extensionLoader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        assertThat(extensionLoader.getExtension("impl3"), instanceOf(SimpleExtImpl3.class));
+        assertNotSame(extensionLoader.getExtension("impl3"), extensionLoader.getExtension("impl3"));
+    }
+
+    @Test
+    public void test_getExtension_WithProperties_DifferentInstance() throws Exception {
+        ExtensionLoader<SimpleExt> extensionLoader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        Map<String, String> properties = Utils.kv2Map(SimpleExt.class.getName(), "impl1");
+        assertNotSame(extensionLoader.getExtension(properties), extensionLoader.getExtension(properties));
+        assertNotSame(extensionLoader.getExtension("impl1"), extensionLoader.getExtension(properties));
+    }
+
+    @Test
+    public void test_getExtension_NullProperties() throws Exception {
+        ExtensionLoader<SimpleExt> extensionLoader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        // 同没有指定properties，返回缓存的实例
+        assertSame(extensionLoader.getExtension("impl1"), extensionLoader.getExtension("impl1", (Map<String, String>) null));
+        assertSame(extensionLoader.getExtension("impl1"), extensionLoader.getExtension("impl1", null, Collections.<String>emptyList()));
+        assertSame(extensionLoader.getDefaultExtension(), extensionLoader.getExtension((Map<String, String>) null));
+
+        WrappedExt wrapped = ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl1", null, Arrays.asList("wrapper1"));
+        assertThat(wrapped, instanceOf(Ext3Wrapper1.class));
+    }
+
+    @Test
+    public void test_getExtension_WithWrapper_notAutoLoad() throws Exception {
+        //
+        WrappedExt impl1 = ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl1", new ArrayList<String>());
+        assertThat(impl1, instanceOf(Ext3Impl1.class));
+
+        WrappedExt impl2 = ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl2", new ArrayList<String>());
+        assertThat(impl2, instanceOf(Ext3Impl2.class));
+
+        int echoCount1 = Ext3Wrapper1.echoCount.get();
+        int echoCount2 = Ext3Wrapper2.echoCount.get();
+        int yellCount1 = Ext3Wrapper1.yellCount.get();
+        int yellCount2 = Ext3Wrapper2.yellCount.get();
+
+        Map<String, String> config = Utils.kv2Map("protocol", "p1", "host", "1.2.3.4", "port", "1010", "path", "path1");
+
+        assertEquals("Ext3Impl1-echo", impl1.echo(config, "ha"));
+        assertEquals(echoCount1, Ext3Wrapper1.echoCount.get());
+        assertEquals(echoCount2, Ext3Wrapper2.echoCount.get());
+        assertEquals(yellCount1, Ext3Wrapper1.yellCount.get());
+        assertEquals(yellCount2, Ext3Wrapper2.yellCount.get());
+
+        assertEquals("Ext3Impl2-yell", impl2.yell(config, "ha"));
+        assertEquals(echoCount1, Ext3Wrapper1.echoCount.get());
+        assertEquals(echoCount2, Ext3Wrapper2.echoCount.get());
+        assertEquals(yellCount1, Ext3Wrapper1.yellCount.get());
+        assertEquals(yellCount2, Ext3Wrapper2.yellCount.get());
+    }
+
+    @Test
+    public void test_getExtension_WithWrapper() throws Exception {
+        WrappedExt impl1 = ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl1", Arrays.asList("wrapper1", "wrapper2"));
+        assertThat(impl1, anyOf(instanceOf(Ext3Wrapper1.class), instanceOf(Ext3Wrapper2.class)));
+
+        WrappedExt impl2 = ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl2", Arrays.asList("wrapper1", "wrapper2"));
+        assertThat(impl2, anyOf(instanceOf(Ext3Wrapper1.class), instanceOf(Ext3Wrapper2.class)));
+
+        int echoCount1 = Ext3Wrapper1.echoCount.get();
+        int echoCount2 = Ext3Wrapper2.echoCount.get();
+        int yellCount1 = Ext3Wrapper1.yellCount.get();
+        int yellCount2 = Ext3Wrapper2.yellCount.get();
+
+        Map<String, String> config = Utils.kv2Map("protocol", "p1", "host", "1.2.3.4", "port", "1010", "path", "path1");
+
+        assertEquals("Ext3Impl1-echo", impl1.echo(config, "ha"));
+        assertEquals(echoCount1 + 1, Ext3Wrapper1.echoCount.get());
+        assertEquals(echoCount2 + 1, Ext3Wrapper2.echoCount.get());
+        assertEquals(yellCount1, Ext3Wrapper1.yellCount.get());
+        assertEquals(yellCount2, Ext3Wrapper2.yellCount.get());
+
+        assertEquals("Ext3Impl2-yell", impl2.yell(config, "ha"));
+        assertEquals(echoCount1 + 1, Ext3Wrapper1.echoCount.get());
+        assertEquals(echoCount2 + 1, Ext3Wrapper2.echoCount.get());
+        assertEquals(yellCount1 + 1, Ext3Wrapper1.yellCount.get());
+        assertEquals(yellCount2 + 1, Ext3Wrapper2.yellCount.get());
+    }
+
+    @Test
+    public void test_getExtension_WithWrapper_EqualListNewWrapper() throws Exception {
+        ExtensionLoader<WrappedExt> extensionLoader = ExtensionLoader.getExtensionLoader(WrappedExt.class);
+
+        List<String> wrappers = new ArrayList<String>(Arrays.asList("wrapper1"));
+        WrappedExt ext1 = extensionLoader.getExtension("impl1", wrappers);
+        wrappers.set(0, "wrapper2"); // 修改传入过的列表，不影响之前的Wrapper链
+        WrappedExt ext2 = extensionLoader.getExtension("impl1", Arrays.asList("wrapper1"));
+        WrappedExt ext3 = extensionLoader.getExtension("impl1", wrappers);
+
+        assertThat(ext1, instanceOf(Ext3Wrapper1.class));
+        assertThat(ext2, instanceOf(Ext3Wrapper1.class));
+        assertThat(ext3, instanceOf(Ext3Wrapper2.class));
+        assertNotSame(ext1, ext2);
+    }
+
+    @Test
+    public void test_getExtension_WithWrapper_ExceptionNoWrapper() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("impl1", Arrays.asList("wrapper1", "NotExisted"));
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Fail to create wrapper(NotExisted) for extension point"));
+        }
+    }
+
+    @Test
+    public void test_getExtension_ExceptionNoExtension() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension("NotExisted");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("No such extension com.alibaba.cooma.ext1.SimpleExt by name NotExisted"));
+        }
+    }
+
+    @Test
+    public void test_getExtension_ExceptionNoExtension_NameOnWrapperNoEffective() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(WrappedExt.class).getExtension("wrapper1");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("No such extension com.alibaba.cooma.ext3.WrappedExt by name wrapper1"));
+        }
+    }
+
+    @Test
+    public void test_getExtension_ExceptionNullArg() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(SimpleExt.class).getExtension((String) null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), containsString("Extension name == null"));
+        }
+    }
+
+    @Test
+    public void test_hasExtension() throws Exception {
+        assertTrue(ExtensionLoader.getExtensionLoader(SimpleExt.class).hasExtension("impl1"));
+        assertFalse(ExtensionLoader.getExtensionLoader(SimpleExt.class).hasExtension("impl1,impl2"));
+        assertFalse(ExtensionLoader.getExtensionLoader(SimpleExt.class).hasExtension("xxx"));
+
+        try {
+            ExtensionLoader.getExtensionLoader(SimpleExt.class).hasExtension(null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), containsString("Extension name == null"));
+        }
+    }
+
+    @Test
+    public void test_hasDefaultExtension() throws Exception {
+        assertTrue(ExtensionLoader.getExtensionLoader(SimpleExt.class).hasDefaultExtension());
+        assertFalse(ExtensionLoader.getExtensionLoader(NoDefaultExt.class).hasDefaultExtension());
+    }
+
+    @Test
+    public void test_hasExtension_wrapperIsNotExt() throws Exception {
+        ExtensionLoader<WrappedExt> extensionLoader = ExtensionLoader.getExtensionLoader(WrappedExt.class);
+
+        assertTrue(extensionLoader.hasExtension("impl1"));
+        assertFalse(extensionLoader.hasExtension("impl1,impl2"));
+        assertFalse(extensionLoader.hasExtension("xxx"));
+
+        assertFalse(extensionLoader.hasExtension("wrapper1"));
+
+        try {
+            extensionLoader.hasExtension(null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), containsString("Extension name == null"));
+        }
+    }
+
+    @Test
+    public void test_getSupportedExtensions() throws Exception {
+        Set<String> extensions = ExtensionLoader.getExtensionLoader(SimpleExt.class).getSupportedExtensions();
+
+        Set<String> expected = new HashSet<String>();
+        expected.add("impl1");
+        expected.add("impl2");
+        expected.add("impl3");
+
+        assertEquals(expected, extensions);
+    }
+
+    @Test
+    public void test_getSupportedExtensions_wrapperIsNotExt() throws Exception {
+        Set<String> extensions = ExtensionLoader.getExtensionLoader(WrappedExt.class).getSupportedExtensions();
+
+        Set<String> expected = new HashSet<String>();
+        expected.add("impl1");
+        expected.add("impl2");
+
+        assertEquals(expected, extensions);
+    }
+
+    @Test
+    public void test_getExtensionAttribute_all() throws Exception {
+        ExtensionLoader<WithAttributeExt> extensionLoader = ExtensionLoader.getExtensionLoader(WithAttributeExt.class);
+
+        Map<String, Map<String, String>> extensionAttribute = extensionLoader.getExtensionAttribute();
+
+        Map<String, Map<String, String>> expected = new HashMap<String, Map<String, String>>();
+        expected.put("impl1", Utils.kv2Map("k1", "v1", "k2", "", "k3", "v3", "k4", "", "k5", "v5"));
+        expected.put("impl2", new HashMap<String, String>());
+        expected.put("impl3", Utils.kv2Map("key1", "value1", "key2", "value2", "key3", ""));
+
+        assertEquals(expected, extensionAttribute);
+    }
+
+    @Test
+    public void test_getExtensionAttribute_one() throws Exception {
+        ExtensionLoader<WithAttributeExt> extensionLoader = ExtensionLoader.getExtensionLoader(WithAttributeExt.class);
+        Map<String, String> extensionAttribute = extensionLoader.getExtensionAttribute("impl1");
+        assertEquals(Utils.kv2Map("k1", "v1", "k2", "", "k3", "v3", "k4", "", "k5", "v5"), extensionAttribute);
+    }
+
+    @Test
+    public void test_getExtensionAttribute_oneNotExisted() throws Exception {
+        ExtensionLoader<WithAttributeExt> extensionLoader = ExtensionLoader.getExtensionLoader(WithAttributeExt.class);
+
+        try {
+            Map<String, String> extensionAttribute = extensionLoader.getExtensionAttribute("NotExisted");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("No such extension com.alibaba.cooma.ext4.WithAttributeExt by name NotExisted"));
+        }
+    }
+
+    @Test
+    public void test_findExtensions() throws Exception {
+        ExtensionLoader<OrderedExt> loader = ExtensionLoader.getExtensionLoader(OrderedExt.class);
+
+        assertEquals(Arrays.asList("second", "third", "fourth"), new ArrayList<String>(loader.findExtensions("group", "rpc")));
+        assertEquals(Arrays.asList("first", "third"), new ArrayList<String>(loader.findExtensions("isProvider", "")));
+        assertEquals(Arrays.asList("first", "third"), new ArrayList<String>(loader.findExtensions("isProvider")));
+        assertEquals(Arrays.asList("first", "second", "third", "fifth"), new ArrayList<String>(loader.findExtensions("order")));
+        assertTrue(loader.findExtensions("group", "ws").isEmpty());
+        assertTrue(loader.findExtensions("notExisted").isEmpty());
+        assertSame(loader.findExtensions("group", "rpc"), loader.findExtensions("group", "rpc"));
+
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("group", "rpc");
+        attributes.put("isProvider", null);
+        assertEquals(Arrays.asList("third"), new ArrayList<String>(loader.findExtensions(attributes)));
+        attributes.put("order", "3");
+        assertTrue(loader.findExtensions(attributes).isEmpty());
+
+        try {
+            loader.findExtensions("group").add("foo");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void test_getActivatedExtensions() throws Exception {
+        ExtensionLoader<OrderedExt> loader = ExtensionLoader.getExtensionLoader(OrderedExt.class);
+
+        List<OrderedExt> activated = loader.getActivatedExtensions(Utils.kv2Map("group", "rpc"));
+        assertEquals(3, activated.size());
+        assertSame(loader.getExtension("second"), activated.get(0));
+        assertSame(loader.getExtension("third"), activated.get(1));
+        assertSame(loader.getExtension("fourth"), activated.get(2));
+        assertSame(activated, loader.getActivatedExtensions(Utils.kv2Map("group", "rpc")));
+
+        List<String> echoes = new ArrayList<String>();
+        for (OrderedExt ext : loader.getActivatedExtensions(new HashMap<String, String>())) {
+            echoes.add(ext.echo("ha"));
+        }
+        assertEquals(Arrays.asList("OrderedExtImpl4-ha", "OrderedExtImpl2-ha", "OrderedExtImpl3-ha", "OrderedExtImpl1-ha", "OrderedExtImpl4-ha"), echoes);
+
+        // prototype的扩展每次新建实例
+        List<OrderedExt> prototypes = loader.getActivatedExtensions(Utils.kv2Map("group", "web"));
+        assertEquals(1, prototypes.size());
+        assertNotSame(prototypes.get(0), loader.getActivatedExtensions(Utils.kv2Map("group", "web")).get(0));
+
+        try {
+            loader.getActivatedExtensions(Utils.kv2Map("group", "rpc")).clear();
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void test_getActivatedExtensions_UnknownFilterNotCached() throws Exception {
+        ExtensionLoader<OrderedExt> loader = ExtensionLoader.getExtensionLoader(OrderedExt.class);
+        ExtensionLoader.View<OrderedExt> view = new ExtensionLoader.View<OrderedExt>(loader, null);
+        loader.getActivatedExtensions(Utils.kv2Map("group", "rpc"));
+        int cached = view.getCachedActivations();
+
+        // 配置中没有的属性值和属性，如请求中的参数
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(loader.getActivatedExtensions(Utils.kv2Map("group", "g" + i)).isEmpty());
+            assertTrue(loader.getActivatedExtensions(Utils.kv2Map("group", "rpc", "k" + i, "v")).isEmpty());
+        }
+        assertEquals(cached, view.getCachedActivations());
+    }
+
+    @Test
+    public void test_getExtensionAttributes() throws Exception {
+        ExtensionLoader<OrderedExt> loader = ExtensionLoader.getExtensionLoader(OrderedExt.class);
+        ExtensionAttributes attributes = loader.getExtensionAttributes("third");
+        assertEquals(2, attributes.getInt("order", 0));
+        assertTrue(attributes.getBoolean("isProvider", false));
+        assertEquals("rpc", attributes.getString("group"));
+
+        // 属性值在加载时检查
+        assertFalse(loader.hasExtension("badOrder"));
+        try {
+            loader.getExtension("badOrder");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute order(first) is not an int"));
+        }
+    }
+
+    @Test
+    public void test_inject() throws Exception {
+        ExtensionLoader<InjectExt> extensionLoader = ExtensionLoader.getExtensionLoader(InjectExt.class);
+
+        assertEquals("Ext6Impl1-echo-Ext1Impl1-echo", extensionLoader.getExtension("impl1").echo(null, "ha"));
+
+        Map<String, String> properties = Utils.kv2Map(SimpleExt.class.getName(), "impl2");
+        assertEquals("Ext6Impl1-echo-Ext1Impl2-echo", extensionLoader.getExtension("impl1", properties).echo(null, "ha"));
+    }
+
+    @Test
+    public void test_inject_ImplAlsoImplementsInjectedExtension() throws Exception {
+        SelfInjectExtImpl1 impl1 = (SelfInjectExtImpl1) ExtensionLoader.getExtensionLoader(SelfInjectExt.class).getExtension("impl1");
+
+        // 只跳过注入自身扩展点的setter，实现类同时实现的其它扩展点照常注入
+        assertSame(ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtension(), impl1.getSimpleExt());
+        assertNull(impl1.getSelfInjectExt());
+        assertEquals("Ext1Impl1-echo", impl1.echo("ha"));
+    }
+
+    @Test
+    public void test_getAdaptiveInstance_InjectNotExtFail() throws Exception {
+        InjectExt ext = ExtensionLoader.getExtensionLoader(InjectExt.class).getExtension("impl2");
+
+        Ext6Impl2 impl = (Ext6Impl2) ext;
+        assertNull(impl.getList());
+    }
+
+    @Test
+    public void test_InitError() throws Exception {
+        ExtensionLoader<InitErrorExt> loader = ExtensionLoader.getExtensionLoader(InitErrorExt.class);
+
+        loader.getExtension("ok");
+
+        try {
+            loader.getExtension("error");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Failed to load config line(error=com.alibaba.cooma.ext7.impl.Ext7InitErrorImpl)"));
+            assertThat(expected.getMessage(), containsString("com.alibaba.cooma.ext7.InitErrorExt) for extension(com.alibaba.cooma.ext7.InitErrorExt)"));
+            assertThat(expected.getCause().getCause(), instanceOf(ExceptionInInitializerError.class));
+        }
+    }
+
+    @Test
+    public void test_InvalidExtName() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(InvalidNameExt.class);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(),
+                    containsString("default name(invalid-name&) of extension com.alibaba.cooma.ext8.InvalidNameExt is invalid"));
+        }
+    }
+
+    // 新增测试 a-Z 中的 ] [ 等非法符号，见 Issue #56
+    @Test
+    public void test_InvalidExtName2() throws Exception {
+        try {
+            ExtensionLoader.getExtensionLoader(InvalidNameExt2.class);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(),
+                    containsString("default name(invalidName]) of extension com.alibaba.cooma.ext8.InvalidNameExt2 is invalid"));
+        }
+    }
+
+    @Test
+    public void test_ImplNoDefaultConstructor() throws Exception {
+        ExtensionLoader<ImplNoDefaultConstructorExt> extensionLoader = ExtensionLoader.getExtensionLoader(ImplNoDefaultConstructorExt.class);
+        assertEquals(new HashSet<String>(Arrays.asList("impl2")), extensionLoader.getSupportedExtensions());
+    }
+
+    @Test
+    public void test_ExtensionIndex() throws Exception {
+        ExtensionLoader<IndexedExt> extensionLoader = ExtensionLoader.getExtensionLoader(IndexedExt.class);
+
+        // 配置文件中的impl3被忽略
+        assertEquals(new HashSet<String>(Arrays.asList("impl1", "impl2", "impl2_alias")), extensionLoader.getSupportedExtensions());
+        assertThat(extensionLoader.getDefaultExtension(), instanceOf(IndexedExtImpl1.class));
+        assertThat(extensionLoader.getExtension("impl2_alias"), instanceOf(IndexedExtImpl2.class));
+        assertEquals(Utils.kv2Map("k1", "v1", "k2", ""), extensionLoader.getExtensionAttribute("impl1"));
+        assertEquals("IndexedExtWrapper-IndexedExtImpl2-ha", extensionLoader.getExtension("impl2", Arrays.asList("wrapper")).echo("ha"));
+    }
+
+    @Test
+    public void test_ExtensionIndex_DescriptorInJarWithoutIndex() throws Exception {
+        // 另一个没有索引的Jar包（这里是目录）中有同一个扩展点的配置文件
+        File directory = File.createTempFile("cooma-index", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        File descriptor = new File(directory, "META-INF/extensions/" + IndexedExt.class.getName());
+        assertTrue(descriptor.getParentFile().mkdirs());
+        FileOutputStream out = new FileOutputStream(descriptor);
+        try {
+            out.write(("impl3=" + IndexedExtImpl3.class.getName() + "\n").getBytes("utf-8"));
+        } finally {
+            out.close();
+        }
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            ExtensionLoader<?> loader = ExtensionLoaderRegistryTest.getExtensionLoader(classLoader, IndexedExt.class);
+            // 有索引的目录中的配置文件仍然被忽略，没有索引的目录中的配置文件读取
+            assertEquals(new HashSet<String>(Arrays.asList("impl1", "impl2", "impl2_alias", "impl3")), loader.getSupportedExtensions());
+            assertThat(loader.getExtension("impl3"), instanceOf(IndexedExtImpl3.class));
+        } finally {
+            ExtensionLoader.release(classLoader);
+            descriptor.delete();
+        }
+    }
+
+    @Test
+    public void test_LazyLoad() throws Exception {
+        ExtensionLoader<LazyExt> loader = ExtensionLoader.getExtensionLoader(LazyExt.class);
+
+        assertEquals(new HashSet<String>(Arrays.asList("impl1", "impl2", "alias2", "error")), loader.getSupportedExtensions());
+        assertEquals(Utils.kv2Map("k", "v"), loader.getExtensionAttribute().get("alias2"));
+        assertTrue(LazyExt.INITIALIZED.isEmpty());
+
+        assertEquals("LazyExtImpl1-ha", loader.getDefaultExtension().echo("ha"));
+        assertEquals(new HashSet<String>(Arrays.asList(LazyExtImpl1.class.getName())), LazyExt.INITIALIZED);
+
+        assertTrue(loader.hasExtension("alias2"));
+        assertTrue(loader.getExtension("impl2") instanceof LazyExtImpl2);
+        assertEquals("LazyExtWrapper-LazyExtImpl2-ha", loader.getExtension("alias2", Arrays.asList("wrapper")).echo("ha"));
+        assertTrue(LazyExt.INITIALIZED.contains(LazyExtWrapper.class.getName()));
+        assertFalse(LazyExt.INITIALIZED.contains(LazyExtInitErrorImpl.class.getName()));
+
+        assertFalse(loader.hasExtension("error"));
+        try {
+            loader.getExtension("error");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Failed to load config line(error=com.alibaba.cooma.ext11.impl.LazyExtInitErrorImpl)"));
+            assertThat(expected.getMessage(), containsString("com.alibaba.cooma.ext11.LazyExt) for extension(com.alibaba.cooma.ext11.LazyExt)"));
+            assertThat(expected.getCause().getCause(), instanceOf(ExceptionInInitializerError.class));
+        }
+    }
+
+    @Test
+    public void test_preload() throws Exception {
+        Set<Class<?>> preloaded = ExtensionLoader.preload(Arrays.<Class<?>>asList(SimpleExt.class, WrappedExt.class, InvalidNameExt.class), true);
+        assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(SimpleExt.class, WrappedExt.class)), preloaded);
+
+        assertTrue(ExtensionLoader.getExtensionLoader(SimpleExt.class).getDefaultExtension() instanceof SimpleExtImpl1);
+    }
+
+    @Test
+    public void test_preloadAll() throws Exception {
+        Set<Class<?>> preloaded = ExtensionLoader.preloadAll(false);
+        assertTrue(preloaded.containsAll(Arrays.<Class<?>>asList(SimpleExt.class, IndexedExt.class, LazyExt.class, InitErrorExt.class)));
+        assertFalse(preloaded.contains(NoExtensionExt.class));
+    }
+
+    @Test
+    public void test_getAdaptiveExtension_ManualAdaptive() throws Exception {
+        ExtensionLoader<ManualAdaptiveClassExt> loader = ExtensionLoader.getExtensionLoader(ManualAdaptiveClassExt.class);
+        ManualAdaptiveClassExt adaptive = loader.getAdaptiveExtension();
+
+        assertTrue(adaptive instanceof ManualAdaptive);
+        assertSame(adaptive, loader.getAdaptiveExtension());
+        assertEquals("Ext9Impl2-echo" + ManualAdaptive.class.getName(), adaptive.echo(Utils.kv2Map("key", "impl2"), "haha"));
+    }
+
+    @Test
+    public void test_getAdaptiveExtension_Generated() throws Exception {
+        ExtensionLoader<SimpleExt> loader = ExtensionLoader.getExtensionLoader(SimpleExt.class);
+        SimpleExt adaptive = loader.getAdaptiveExtension();
+        assertThat(adaptive.getClass().getName(), containsString("$CoomaAdaptive"));
+        assertSame(adaptive, loader.getAdaptiveExtension());
+        assertEquals("Adaptive extension of " + SimpleExt.class.getName(), adaptive.toString());
+
+        String key = SimpleExt.class.getName();
+        for (int i = 0; i < 3; i++) { // 内联缓存命中和替换
+            assertEquals("Ext1Impl2-echo", adaptive.echo(Utils.kv2Map(key, "impl2"), "haha"));
+            assertEquals("Ext1Impl3-yell", adaptive.yell(Utils.kv2Map(key, "impl3"), "haha"));
+            assertEquals("bang1", adaptive.bang(Utils.kv2Map(key, "impl1"), 1));
+            assertEquals("Ext1Impl1-echo", adaptive.echo(new HashMap<String, String>(), "haha"));
+            assertEquals("Ext1Impl1-echo", adaptive.echo(null, "haha"));
+        }
+
+        try {
+            adaptive.echo(Utils.kv2Map(key, "not-existed"), "haha");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("No such extension com.alibaba.cooma.ext1.SimpleExt by name not-existed"));
+        }
+    }
+
+    @Test
+    public void test_getAdaptiveExtension_NoMapParameter() throws Exception {
+        NoDefaultExt adaptive = ExtensionLoader.getExtensionLoader(NoDefaultExt.class).getAdaptiveExtension();
+        try {
+            adaptive.echo("haha");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            assertThat(expected.getMessage(), containsString("has no Map parameter to select extension"));
+        }
+    }
+
+    @Test
+    public void test_ExtensionDefinition_toString() throws Exception {
+        assertEquals("+w1,w2=com.foo.FooWrapper(k1=v1,k2)", new ExtensionDefinition(ExtensionDefinition.Kind.WRAPPER,
+                new String[]{"w1", "w2"}, "com.foo.FooWrapper", ExtensionDefinition.attributes("k1", "v1", "k2", "")).toString());
+        assertEquals("*adaptive=com.foo.FooAdaptive", new ExtensionDefinition(ExtensionDefinition.Kind.ADAPTIVE,
+                new String[]{"adaptive"}, "com.foo.FooAdaptive", null).toString());
+    }
+
+    @Test
+    public void test_parseExtAttribute() throws Exception {
+        assertEquals(Utils.kv2Map("k1", "v1", "k2", "v2"), ExtensionLoader.parseExtAttribute("k1=v1,k2=v2"));
+        assertEquals(Utils.kv2Map("k1", "v1", "k2", "v2", "k3", ""), ExtensionLoader.parseExtAttribute("  k1   =v1,   k2=    v2  , k3    "));
+        assertEquals(Utils.kv2Map("k1", ""), ExtensionLoader.parseExtAttribute("k1"));
+    }
+}
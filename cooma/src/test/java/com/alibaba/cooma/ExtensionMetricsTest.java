@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext14.CrossInitExtA;
+import com.alibaba.cooma.ext14.CrossInitExtB;
+import com.alibaba.demo.cooma.car.Car;
+import com.alibaba.demo.cooma.wheel.Wheel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * surefire的metrics-test执行单独运行这个测试，并设置了系统属性<code>cooma.metrics=counter</code>；其它测试不开启统计。
+ */
+public class ExtensionMetricsTest {
+    private CounterExtensionMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("counter".equals(System.getProperty(ExtensionLoader.METRICS_PROPERTY)));
+        metrics = (CounterExtensionMetrics) ExtensionLoader.getExtensionLoader(ExtensionMetrics.class).getExtension("counter");
+    }
+
+    @Test
+    public void test_loadAndCache() throws Exception {
+        // 新的ClassLoader下的扩展点，计数从0开始
+        ExtensionLoaderConcurrencyTest.Ext14ClassLoader classLoader = new ExtensionLoaderConcurrencyTest.Ext14ClassLoader();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoader);
+        try {
+            Class<?> typeA = classLoader.loadClass(CrossInitExtA.class.getName());
+            Class<?> typeB = classLoader.loadClass(CrossInitExtB.class.getName());
+            assertNull(metrics.getCounters(typeA));
+
+            ExtensionLoader<?> loader = ExtensionLoader.getExtensionLoader(typeA);
+            Object extension = loader.getDefaultExtension();
+            assertSame(extension, loader.getDefaultExtension());
+
+            CounterExtensionMetrics.Counters counters = metrics.getCounters(typeA);
+            assertEquals(1, counters.getLoads());
+            // 实现类和自适应扩展类
+            assertEquals(2, counters.getClassInits());
+            assertEquals(1, counters.getInstantiations());
+            assertEquals(1, counters.getCacheMisses());
+            assertEquals(1, counters.getCacheHits());
+            assertEquals(0, counters.getInjections());
+            assertEquals(0, counters.getWraps());
+
+            // 实现类的静态初始化中加载了B
+            assertEquals(1, metrics.getCounters(typeB).getLoads());
+
+            loader.reload();
+            assertEquals(2, counters.getLoads());
+            // 类已经初始化过
+            assertEquals(2, counters.getClassInits());
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+            ExtensionLoader.release(classLoader);
+            classLoader.close();
+        }
+    }
+
+    @Test
+    public void test_injectAndWrap() throws Exception {
+        ExtensionLoader<Car> loader = ExtensionLoader.getExtensionLoader(Car.class);
+        loader.getExtension("racing");
+        CounterExtensionMetrics.Counters counters = metrics.getCounters(Car.class);
+        long instantiations = counters.getInstantiations();
+        long injections = counters.getInjections();
+        long wraps = counters.getWraps();
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(Car.class.getName(), "racing");
+        properties.put(Wheel.class.getName(), "wood");
+        loader.getExtension(properties);
+        assertEquals(instantiations + 1, counters.getInstantiations());
+        assertEquals(injections + 1, counters.getInjections());
+        assertNotNull(metrics.getCounters(Wheel.class));
+
+        loader.getExtension("racing", Arrays.asList("run_counter"));
+        assertEquals(wraps + 1, counters.getWraps());
+        assertEquals(instantiations + 1, counters.getInstantiations());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma;
+
+import com.alibaba.cooma.ext15.ScopedExt;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class InstanceScopeTest {
+    private static final int THREADS = 16;
+
+    private final ExtensionLoader<ScopedExt> loader = ExtensionLoader.getExtensionLoader(ScopedExt.class);
+
+    /**
+     * 在{@link #THREADS}个不同的线程上各获取两次扩展，返回每个线程上得到的实例。
+     */
+    private List<ScopedExt[]> getInThreads(final String name) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<ScopedExt[]>> futures = new ArrayList<Future<ScopedExt[]>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<ScopedExt[]>() {
+                    public ScopedExt[] call() throws Exception {
+                        // 线程池的线程启动后才获取，保证用到THREADS个不同的线程
+                        Thread.sleep(50);
+                        return new ScopedExt[]{loader.getExtension(name), loader.getExtension(name)};
+                    }
+                }));
+            }
+            List<ScopedExt[]> result = new ArrayList<ScopedExt[]>();
+            for (Future<ScopedExt[]> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Set<ScopedExt> distinct(List<ScopedExt[]> instances) {
+        Set<ScopedExt> set = Collections.newSetFromMap(new IdentityHashMap<ScopedExt, Boolean>());
+        for (ScopedExt[] pair : instances) {
+            Collections.addAll(set, pair);
+        }
+        return set;
+    }
+
+    @Test
+    public void test_singleton() throws Exception {
+        assertSame(loader.getDefaultExtension(), loader.getExtension("singleton"));
+        assertEquals(1, distinct(getInThreads("singleton")).size());
+    }
+
+    @Test
+    public void test_prototype() throws Exception {
+        assertNotSame(loader.getExtension("prototype"), loader.getExtension("prototype"));
+        assertEquals(THREADS * 2, distinct(getInThreads("prototype")).size());
+    }
+
+    @Test
+    public void test_thread_defaultScopeOfExtension() throws Exception {
+        assertSame(loader.getExtension("thread"), loader.getExtension("thread"));
+
+        List<ScopedExt[]> instances = getInThreads("thread");
+        for (ScopedExt[] pair : instances) {
+            assertSame(pair[0], pair[1]);
+        }
+        assertEquals(THREADS, distinct(instances).size());
+    }
+
+    @Test
+    public void test_striped() throws Exception {
+        assertSame(loader.getExtension("striped"), loader.getExtension("striped"));
+
+        List<ScopedExt[]> instances = getInThreads("striped");
+        for (ScopedExt[] pair : instances) {
+            assertSame(pair[0], pair[1]);
+        }
+        int stripes = InstanceScope.Striped.stripes(Runtime.getRuntime().availableProcessors());
+        int distinct = distinct(instances).size();
+        assertTrue("distinct: " + distinct, distinct <= stripes);
+        assertTrue("distinct: " + distinct, distinct >= Math.min(stripes, THREADS) / 2);
+    }
+
+    @Test
+    public void test_activatedExtensions_notCachedForScoped() throws Exception {
+        List<ScopedExt> first = loader.getActivatedExtensions(Collections.<String, String>emptyMap());
+        List<ScopedExt> second = loader.getActivatedExtensions(Collections.<String, String>emptyMap());
+        assertEquals(5, first.size());
+        assertNotSame(first, second);
+        assertSame(first.get(0), second.get(0));
+        assertNotSame(first.get(1), second.get(1));
+    }
+
+    @Test
+    public void test_pool() throws Exception {
+        ExtensionLoader.View<ScopedExt> view = new ExtensionLoader.View<ScopedExt>(loader, null);
+        // 直接获取时每次新建
+        assertNotSame(loader.getExtension("pool"), loader.getExtension("pool"));
+
+        ExtensionLease<ScopedExt> lease1 = loader.borrowExtension("pool");
+        ExtensionLease<ScopedExt> lease2 = loader.borrowExtension("pool");
+        ExtensionLease<ScopedExt> lease3 = loader.borrowExtension("pool");
+        ScopedExt ext1 = lease1.get();
+        assertNotSame(ext1, lease2.get());
+        assertNotSame(ext1, lease3.get());
+        lease1.close();
+        lease2.close();
+        // 池满，丢弃
+        lease3.close();
+        lease3.close();
+
+        final long hits = view.getPoolHits();
+        final long misses = view.getPoolMisses();
+        ExtensionLease<ScopedExt> lease = loader.borrowExtension("pool");
+        try {
+            assertTrue(lease.get() == ext1 || lease.get() == lease2.get());
+        } finally {
+            lease.close();
+        }
+        assertEquals(hits + 1, view.getPoolHits());
+        assertEquals(misses, view.getPoolMisses());
+
+        try {
+            lease1.get();
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Extension lease is closed!"));
+        }
+    }
+
+    @Test
+    public void test_pool_evictIdle() throws Exception {
+        ExtensionLoader.View<ScopedExt> view = new ExtensionLoader.View<ScopedExt>(loader, null);
+        ExtensionLease<ScopedExt> lease1 = loader.borrowExtension("pool");
+        ExtensionLease<ScopedExt> lease2 = loader.borrowExtension("pool");
+        lease1.close();
+        lease2.close();
+
+        final long evictions = view.getPoolEvictions();
+        final long misses = view.getPoolMisses();
+        Thread.sleep(300);
+        // 借出一个，同时回收了空闲超时的另一个
+        loader.borrowExtension("pool").close();
+        assertTrue(view.getPoolEvictions() > evictions);
+        assertEquals(misses, view.getPoolMisses());
+
+        ExtensionLease<ScopedExt> held = loader.borrowExtension("pool");
+        loader.borrowExtension("pool").close();
+        held.close();
+        assertEquals(misses + 1, view.getPoolMisses());
+    }
+
+    @Test
+    public void test_borrow_notPooled() throws Exception {
+        ExtensionLease<ScopedExt> lease = loader.borrowExtension("singleton");
+        try {
+            assertSame(loader.getExtension("singleton"), lease.get());
+        } finally {
+            lease.close();
+        }
+        assertSame(loader.getExtension("singleton"), loader.borrowExtension("singleton").get());
+    }
+
+    @Test
+    public void test_invalidPoolSize() throws Exception {
+        try {
+            loader.getExtension("badPool");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute poolSize(0) is not positive!"));
+        }
+    }
+
+    @Test
+    public void test_invalidScope() throws Exception {
+        try {
+            loader.getExtension("session");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("attribute scope(session) is not singleton, prototype, thread, striped or pool!"));
+        }
+    }
+
+    @Test
+    public void test_stripes() throws Exception {
+        assertEquals(1, InstanceScope.Striped.stripes(1));
+        assertEquals(4, InstanceScope.Striped.stripes(3));
+        assertEquals(8, InstanceScope.Striped.stripes(8));
+    }
+}
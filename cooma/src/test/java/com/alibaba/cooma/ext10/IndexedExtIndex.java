@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.ext10;
+
+import com.alibaba.cooma.ExtensionDefinition;
+import com.alibaba.cooma.ExtensionIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 和<code>cooma-processor</code>生成的代码一样的索引。
+ */
+public final class IndexedExtIndex implements ExtensionIndex {
+    public Map<String, List<ExtensionDefinition>> getDefinitions() {
+        Map<String, List<ExtensionDefinition>> definitions = new HashMap<String, List<ExtensionDefinition>>();
+        definitions.put("com.alibaba.cooma.ext10.IndexedExt", Arrays.asList(
+                new ExtensionDefinition(ExtensionDefinition.Kind.EXTENSION, new String[]{"impl1"},
+                        "com.alibaba.cooma.ext10.impl.IndexedExtImpl1", ExtensionDefinition.attributes("k1", "v1", "k2", "")),
+                new ExtensionDefinition(ExtensionDefinition.Kind.EXTENSION, new String[]{"impl2", "impl2_alias"},
+                        "com.alibaba.cooma.ext10.impl.IndexedExtImpl2", ExtensionDefinition.attributes()),
+                new ExtensionDefinition(ExtensionDefinition.Kind.WRAPPER, new String[]{"wrapper"},
+                        "com.alibaba.cooma.ext10.impl.IndexedExtWrapper", ExtensionDefinition.attributes())));
+        return definitions;
+    }
+}
@@ -14,33 +14,25 @@
  * limitations under the License.
  */
 
-package com.alibaba.cooma;
 
-import java.lang.annotation.Documented;
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
+package com.alibaba.cooma.ext11;
+
+import com.alibaba.cooma.Extension;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
- * 把一个接口标识成扩展点。
- * <p/>
- * 没有此注释的接口{@link ExtensionLoader}会拒绝接管。
+ * 用于测试：延迟加载的扩展点，实现类在第一次使用时才加载。
  *
  * @author Jerry Lee(oldratlee AT gmail DOT com)
- * @see ExtensionLoader
- * @since 0.1.0
  */
-@Documented
-@Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.TYPE})
-public @interface Extension {
-
+@Extension(value = "impl1", lazy = true)
+public interface LazyExt {
     /**
-     * the default extension name.
-     *
-     * @since 0.1.0
+     * 实现类在静态初始化时登记自己的类名。
      */
-    String value() default "";
+    Set<String> INITIALIZED = new CopyOnWriteArraySet<String>();
 
+    String echo(String s);
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.ext16.impl;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext16.SelfInjectExt;
+
+import java.util.Map;
+
+public class SelfInjectExtImpl1 implements SelfInjectExt, SimpleExt {
+    SimpleExt simpleExt;
+    SelfInjectExt selfInjectExt;
+
+    // 不是自身扩展点，注入
+    public void setSimpleExt(SimpleExt simpleExt) {
+        this.simpleExt = simpleExt;
+    }
+
+    // 自身扩展点，不注入
+    public void setSelfInjectExt(SelfInjectExt selfInjectExt) {
+        this.selfInjectExt = selfInjectExt;
+    }
+
+    public SimpleExt getSimpleExt() {
+        return simpleExt;
+    }
+
+    public SelfInjectExt getSelfInjectExt() {
+        return selfInjectExt;
+    }
+
+    public String echo(String s) {
+        return simpleExt.echo(null, s);
+    }
+
+    public String echo(Map<String, String> config, String s) {
+        return "SelfInjectExtImpl1-echo";
+    }
+
+    public String yell(Map<String, String> config, String s) {
+        return "SelfInjectExtImpl1-yell";
+    }
+
+    public String bang(Map<String, String> config, int i) {
+        return "bang" + i;
+    }
+}
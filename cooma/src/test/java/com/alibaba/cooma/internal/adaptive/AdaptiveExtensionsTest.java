@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.adaptive;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class AdaptiveExtensionsTest {
+    public interface Calc {
+        long add(long a, Map<String, String> config, double b);
+
+        void touch(HashMap<String, String> config, int[] counter);
+
+        String[] names(String[] names, Map<String, String> config);
+
+        int noMap(int i);
+
+        String toString();
+
+        default String describe(Map<String, String> config) {
+            return "default";
+        }
+    }
+
+    public static class CalcImpl implements Calc {
+        final int base;
+
+        CalcImpl(int base) {
+            this.base = base;
+        }
+
+        public long add(long a, Map<String, String> config, double b) {
+            return base + a + (long) b;
+        }
+
+        public void touch(HashMap<String, String> config, int[] counter) {
+            counter[0] += base;
+        }
+
+        public String[] names(String[] names, Map<String, String> config) {
+            return new String[]{names[0] + base};
+        }
+
+        public int noMap(int i) {
+            return i;
+        }
+
+        public String describe(Map<String, String> config) {
+            return "impl" + base;
+        }
+    }
+
+    interface HiddenCalc {
+        int add(Map<String, String> config, int a);
+    }
+
+    static class HiddenCalcImpl implements HiddenCalc {
+        public int add(Map<String, String> config, int a) {
+            return a + 1;
+        }
+    }
+
+    static AdaptiveDispatcher dispatcher(Class<?> type, final Map<String, Object> extensions) {
+        return new AdaptiveDispatcher(type, "one", new AdaptiveDispatcher.Resolver() {
+            public Object getExtension(String name) {
+                Object extension = extensions.get(name);
+                if (extension == null) throw new IllegalStateException("No such extension " + name);
+                return extension;
+            }
+
+            public boolean isCacheable(String name) {
+                return true;
+            }
+
+            public Object getVersion() {
+                return extensions;
+            }
+        });
+    }
+
+    @Test
+    public void test_generated() throws Exception {
+        Map<String, Object> extensions = new HashMap<String, Object>();
+        extensions.put("one", new CalcImpl(1));
+        extensions.put("ten", new CalcImpl(10));
+        assertTrue(AdaptiveClassGenerator.isGeneratable(Calc.class));
+        Calc calc = AdaptiveExtensions.create(Calc.class, dispatcher(Calc.class, extensions));
+        assertTrue(calc.getClass().getName().endsWith("$CoomaAdaptive"));
+
+        HashMap<String, String> ten = new HashMap<String, String>();
+        ten.put(Calc.class.getName(), "ten");
+        assertEquals(4, calc.add(1, null, 2.0));
+        assertEquals(13, calc.add(1, ten, 2.0));
+        assertEquals(13, calc.add(1, ten, 2.0)); // hit inline cache
+        assertEquals(22, calc.add(10, ten, 2.0));
+
+        int[] counter = new int[1];
+        calc.touch(ten, counter);
+        calc.touch(new HashMap<String, String>(), counter);
+        assertEquals(11, counter[0]);
+
+        assertArrayEquals(new String[]{"a10"}, calc.names(new String[]{"a"}, ten));
+        assertEquals("impl10", calc.describe(ten));
+        assertEquals("Adaptive extension of " + Calc.class.getName(), calc.toString());
+        assertFalse(calc.equals(AdaptiveExtensions.create(Calc.class, dispatcher(Calc.class, extensions))));
+
+        try {
+            calc.noMap(1);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            assertThat(expected.getMessage(), containsString("method noMap of adaptive extension"));
+        }
+        try {
+            calc.add(1, Collections.singletonMap(Calc.class.getName(), "none"), 2.0);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("No such extension none", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void test_megamorphic() throws Exception {
+        final Map<String, Object> extensions = new HashMap<String, Object>();
+        for (int i = 0; i < 8; i++) {
+            extensions.put("n" + i, new CalcImpl(i));
+        }
+        final int[] resolved = new int[1];
+        final Object[] version = {new Object()};
+        AdaptiveDispatcher dispatcher = new AdaptiveDispatcher(Calc.class, null, new AdaptiveDispatcher.Resolver() {
+            public Object getExtension(String name) {
+                resolved[0]++;
+                return extensions.get(name);
+            }
+
+            public boolean isCacheable(String name) {
+                return true;
+            }
+
+            public Object getVersion() {
+                return version[0];
+            }
+        });
+
+        // 4个扩展名放得进内联缓存
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(extensions.get("n" + i), dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n" + i), "add"));
+            }
+        }
+        assertEquals(4, resolved[0]);
+
+        // 扩展名更多时：每次调用都通过解析器解析
+        for (int i = 0; i < 8; i++) {
+            assertEquals(extensions.get("n" + i), dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n" + i), "add"));
+        }
+        resolved[0] = 0;
+        dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n0"), "add");
+        dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n0"), "add");
+        assertEquals(2, resolved[0]);
+
+        // 新版本重新从空的内联缓存开始
+        version[0] = new Object();
+        resolved[0] = 0;
+        dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n0"), "add");
+        dispatcher.select(Collections.singletonMap(Calc.class.getName(), "n0"), "add");
+        assertEquals(1, resolved[0]);
+    }
+
+    @Test
+    public void test_proxy() throws Exception {
+        assertFalse(AdaptiveClassGenerator.isGeneratable(HiddenCalc.class));
+
+        HiddenCalc calc = AdaptiveExtensions.create(HiddenCalc.class,
+                dispatcher(HiddenCalc.class, Collections.<String, Object>singletonMap("one", new HiddenCalcImpl())));
+        assertEquals(2, calc.add(null, 1));
+        assertEquals("Adaptive extension of " + HiddenCalc.class.getName(), calc.toString());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.instantiation;
+
+import com.alibaba.cooma.ext1.SimpleExt;
+import com.alibaba.cooma.ext1.impl.SimpleExtImpl1;
+import com.alibaba.cooma.ext3.WrappedExt;
+import com.alibaba.cooma.ext3.impl.Ext3Impl1;
+import com.alibaba.cooma.ext3.impl.Ext3Wrapper1;
+import com.alibaba.cooma.ext7.impl.Ext7Impl;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+public class InstantiatorsTest {
+    private static final InstantiationStrategy[] ALL = {
+            new LambdaInstantiationStrategy(), new MethodHandleInstantiationStrategy(), new ReflectionInstantiationStrategy()};
+
+    @Test
+    public void test_bindConstructor() throws Exception {
+        for (InstantiationStrategy strategy : ALL) {
+            SimpleExt ext = strategy.bindConstructor(SimpleExtImpl1.class).get();
+            assertThat(ext, instanceOf(SimpleExtImpl1.class));
+            assertNotSame(ext, strategy.bindConstructor(SimpleExtImpl1.class).get());
+        }
+    }
+
+    @Test
+    public void test_bindWrapperConstructor() throws Exception {
+        for (InstantiationStrategy strategy : ALL) {
+            Function<WrappedExt, WrappedExt> wrapper = strategy.bindWrapperConstructor(Ext3Wrapper1.class, WrappedExt.class);
+            WrappedExt ext = wrapper.apply(new Ext3Impl1());
+            assertThat(ext, instanceOf(Ext3Wrapper1.class));
+            assertEquals("Ext3Impl1-echo", ext.echo(null, "ha"));
+        }
+    }
+
+    @Test
+    public void test_constructor_NoDefaultConstructor() throws Exception {
+        try {
+            Instantiators.constructor(Ext3Wrapper1.class);
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Fail to bind constructor of class com.alibaba.cooma.ext3.impl.Ext3Wrapper1"));
+        }
+    }
+
+    @Test
+    public void test_constructor_NonPublicClassFallback() throws Exception {
+        assertThat(Instantiators.constructor(PackagePrivateExt.class).get(), instanceOf(PackagePrivateExt.class));
+    }
+
+    @Test
+    public void test_constructor_ExceptionPropagated() throws Exception {
+        for (InstantiationStrategy strategy : ALL) {
+            try {
+                strategy.bindConstructor(ThrowingExt.class).get();
+                fail();
+            } catch (UnsupportedOperationException expected) {
+                assertEquals("intended!", expected.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void test_selectStrategies() throws Exception {
+        assertEquals(3, Instantiators.selectStrategies(null).length);
+        assertEquals(2, Instantiators.selectStrategies("method_handle").length);
+        assertEquals(1, Instantiators.selectStrategies("reflection").length);
+        try {
+            Instantiators.selectStrategies("unknown");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertThat(expected.getMessage(), containsString("Unknown instantiation strategy(unknown)"));
+        }
+    }
+
+    static class PackagePrivateExt extends Ext7Impl {
+        public PackagePrivateExt() {
+        }
+    }
+
+    public static class ThrowingExt extends Ext7Impl {
+        public ThrowingExt() {
+            throw new UnsupportedOperationException("intended!");
+        }
+    }
+}
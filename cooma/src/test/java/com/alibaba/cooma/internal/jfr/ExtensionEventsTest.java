@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2013 Cooma Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alibaba.cooma.internal.jfr;
+
+import com.alibaba.cooma.ExtensionLoader;
+import com.alibaba.demo.cooma.car.Car;
+import com.alibaba.demo.cooma.car.impl.RacingCar;
+import com.alibaba.demo.cooma.wheel.Wheel;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionEventsTest {
+    @Test
+    public void test_noRecording() throws Exception {
+        assertTrue(ExtensionEvents.get() instanceof JfrExtensionEvents);
+        assertNull(ExtensionEvents.get().beginInstantiate());
+        ExtensionEvents.get().endInstantiate(null, Car.class, "racing", RacingCar.class);
+    }
+
+    @Test
+    public void test_recording() throws Exception {
+        File file = File.createTempFile("cooma-events", ".jfr");
+        try {
+            Recording recording = new Recording();
+            try {
+                for (String name : Arrays.asList("ExtensionLoad", "DescriptorRead", "ExtensionInstantiate", "ExtensionInject", "ExtensionWrap")) {
+                    recording.enable("com.alibaba.cooma." + name);
+                }
+                recording.start();
+
+                ExtensionLoader<Car> loader = ExtensionLoader.getExtensionLoader(Car.class);
+                loader.reload();
+                Map<String, String> properties = new HashMap<String, String>();
+                properties.put(Car.class.getName(), "racing");
+                properties.put(Wheel.class.getName(), "wood");
+                loader.getExtension(properties);
+                loader.getExtension("racing", Arrays.asList("run_counter"));
+
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            RecordedEvent load = find(events, "com.alibaba.cooma.ExtensionLoad");
+            assertEquals(Car.class.getName(), load.getClass("extensionPoint").getName());
+            assertEquals(2, load.getInt("extensions"));
+            assertTrue(load.getBoolean("reload"));
+
+            RecordedEvent read = find(events, "com.alibaba.cooma.DescriptorRead");
+            assertTrue(read.getString("url").endsWith("META-INF/extensions/" + Car.class.getName()));
+            assertEquals(3, read.getInt("definitions"));
+
+            RecordedEvent instantiate = find(events, "com.alibaba.cooma.ExtensionInstantiate");
+            assertEquals("racing", instantiate.getString("name"));
+            assertEquals(RacingCar.class.getName(), instantiate.getClass("implementation").getName());
+            assertNotNull(instantiate.getThread());
+            assertFalse(instantiate.getDuration().isNegative());
+
+            RecordedEvent inject = find(events, "com.alibaba.cooma.ExtensionInject");
+            assertEquals(RacingCar.class.getName(), inject.getClass("implementation").getName());
+
+            RecordedEvent wrap = find(events, "com.alibaba.cooma.ExtensionWrap");
+            assertEquals("[run_counter]", wrap.getString("wrappers"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)
+                    && event.getClass("extensionPoint").getName().equals(Car.class.getName())) {
+                found.add(event);
+            }
+        }
+        assertFalse("No event " + name, found.isEmpty());
+        return found.get(0);
+    }
+}